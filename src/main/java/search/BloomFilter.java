@@ -0,0 +1,94 @@
+package search;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Space efficient set of strings that can answer "definitely not contained" or
+ * "probably contained". Used by the {@link Frontier} for crawls that are too
+ * large to keep every url in memory.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Bloom_filter">...</a>
+ */
+public class BloomFilter {
+    private final long[] bits;
+    private final int numberOfBits;
+    private final int numberOfHashes;
+
+    /**
+     * @param pExpectedInsertions number of strings that are expected to be added
+     * @param pFalsePositiveRate  accepted rate of false positives
+     */
+    public BloomFilter(int pExpectedInsertions, double pFalsePositiveRate) {
+        int expected = Math.max(1, pExpectedInsertions);
+        // optimal number of bits and hash functions
+        double size = -expected * Math.log(pFalsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.numberOfBits = (int) Math.max(64, Math.min(Integer.MAX_VALUE - 63, Math.ceil(size)));
+        this.numberOfHashes = Math.max(1, (int) Math.round(numberOfBits / (double) expected * Math.log(2)));
+        this.bits = new long[(numberOfBits + 63) / 64];
+    }
+
+    /**
+     * adds a string to the filter
+     *
+     * @param value string to add
+     * @return true if the string definitely wasn't contained before
+     */
+    public synchronized boolean add(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        boolean changed = false;
+        // double hashing to simulate k independent hash functions
+        for (int i = 0; i < numberOfHashes; i++) {
+            int combined = hash1 + i * hash2;
+            int bit = (combined & Integer.MAX_VALUE) % numberOfBits;
+            long mask = 1L << bit;
+            if ((bits[bit >>> 6] & mask) == 0) {
+                bits[bit >>> 6] |= mask;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @param value string
+     * @return true if the string was probably added before
+     */
+    public synchronized boolean mightContain(String value) {
+        long hash = hash(value);
+        int hash1 = (int) hash;
+        int hash2 = (int) (hash >>> 32);
+        for (int i = 0; i < numberOfHashes; i++) {
+            int combined = hash1 + i * hash2;
+            int bit = (combined & Integer.MAX_VALUE) % numberOfBits;
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * removes all strings from the filter
+     */
+    public synchronized void clear() {
+        Arrays.fill(bits, 0L);
+    }
+
+    /**
+     * 64 bit FNV-1a hash with a final mixing step
+     */
+    private static long hash(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,252 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Query of terms and quoted phrases combined with AND, OR and NOT, e.g.
+ * {@code "blue stilton" OR (gouda AND NOT young)}. Words next to each other
+ * are combined with AND, a leading minus is the same as NOT. Words and
+ * phrases are analyzed like the documents, a word that is only a stopword is
+ * left out, a word that no document contains matches nothing.
+ * <pre>
+ * query   = or
+ * or      = and { "OR" and }
+ * and     = unary { ["AND"] unary }
+ * unary   = ("NOT" | "-") unary | primary
+ * primary = "(" or ")" | '"' words '"' | word
+ * </pre>
+ * The parser is lenient, missing closing parentheses are added and operators
+ * without operands are ignored. Only a negation directly followed by a
+ * closing parenthesis, e.g. {@code (blue -)}, is rejected with an
+ * {@link IllegalArgumentException}, leaving it out would search for the
+ * documents the user wanted to exclude.
+ */
+public sealed interface BooleanQuery {
+
+    /**
+     * matches documents containing the term
+     *
+     * @param termId id of the term {@link TermDictionary}
+     */
+    record Term(int termId) implements BooleanQuery {
+    }
+
+    /**
+     * matches documents containing the terms right after each other
+     *
+     * @param termIds ids of the terms in the order of the phrase
+     */
+    record Phrase(int[] termIds) implements BooleanQuery {
+    }
+
+    /**
+     * matches documents all clauses match
+     *
+     * @param clauses at least two queries
+     */
+    record And(List<BooleanQuery> clauses) implements BooleanQuery {
+    }
+
+    /**
+     * matches documents any of the clauses matches
+     *
+     * @param clauses at least two queries
+     */
+    record Or(List<BooleanQuery> clauses) implements BooleanQuery {
+    }
+
+    /**
+     * matches documents the clause doesn't match
+     *
+     * @param clause negated query
+     */
+    record Not(BooleanQuery clause) implements BooleanQuery {
+    }
+
+    /**
+     * matches no document, e.g. a word that isn't in the dictionary
+     */
+    record Nothing() implements BooleanQuery {
+    }
+
+    /**
+     * parses a query
+     *
+     * @param query query as typed by the user
+     * @return parsed query, {@link Nothing} if there is nothing to search for
+     * @throws IllegalArgumentException if a negation is followed by a closing parenthesis
+     */
+    static BooleanQuery parse(String query) {
+        BooleanQuery parsed = new Parser(query).parseOr();
+        return parsed == null ? new Nothing() : parsed;
+    }
+
+    /**
+     * Recursive descent parser, every parse method returns null if it finds
+     * nothing to search for.
+     */
+    final class Parser {
+        private final String query;
+        private int offset;
+
+        private Parser(String pQuery) {
+            this.query = pQuery;
+        }
+
+        private BooleanQuery parseOr() {
+            List<BooleanQuery> clauses = new ArrayList<>();
+            add(clauses, parseAnd());
+            while (nextIs("OR")) {
+                add(clauses, parseAnd());
+            }
+            return combine(clauses, false);
+        }
+
+        private BooleanQuery parseAnd() {
+            List<BooleanQuery> clauses = new ArrayList<>();
+            add(clauses, parseUnary());
+            while (true) {
+                skipWhitespace();
+                if (offset >= query.length() || query.charAt(offset) == ')' || peekWord().equals("OR")) {
+                    return combine(clauses, true);
+                }
+                nextIs("AND");
+                add(clauses, parseUnary());
+            }
+        }
+
+        private BooleanQuery parseUnary() {
+            return parseUnary(null);
+        }
+
+        /**
+         * @param negation operator right before the clause, null if there is none
+         */
+        private BooleanQuery parseUnary(String negation) {
+            skipWhitespace();
+            if (offset < query.length() && query.charAt(offset) == '-') {
+                offset++;
+                BooleanQuery clause = parseUnary("-");
+                return clause == null ? null : new Not(clause);
+            }
+            if (nextIs("NOT")) {
+                BooleanQuery clause = parseUnary("NOT");
+                return clause == null ? null : new Not(clause);
+            }
+            return parsePrimary(negation);
+        }
+
+        /**
+         * @param negation operator right before the clause, null if there is none
+         */
+        private BooleanQuery parsePrimary(String negation) {
+            skipWhitespace();
+            if (offset >= query.length()) {
+                return null;
+            }
+            char c = query.charAt(offset);
+            if (c == '(') {
+                offset++;
+                BooleanQuery clause = parseOr();
+                skipWhitespace();
+                if (offset < query.length() && query.charAt(offset) == ')') {
+                    offset++;
+                }
+                return clause;
+            }
+            if (c == ')') {
+                if (negation != null) {
+                    throw new IllegalArgumentException("Syntax error at offset " + offset + ": " + negation
+                            + " has no operand before ')' in " + query);
+                }
+                // a closing parenthesis without an opening one
+                offset++;
+                return null;
+            }
+            if (c == '"') {
+                int end = query.indexOf('"', offset + 1);
+                if (end < 0) {
+                    end = query.length();
+                }
+                String phrase = query.substring(offset + 1, end);
+                offset = Math.min(end + 1, query.length());
+                return analyze(phrase);
+            }
+            String word = peekWord();
+            offset += word.length();
+            if (word.equals("AND") || word.equals("OR")) {
+                // an operator without a left operand
+                return null;
+            }
+            return analyze(word);
+        }
+
+        /**
+         * @return terms of a word or phrase as term or phrase query
+         */
+        private static BooleanQuery analyze(String text) {
+            List<String> tokens = WebsiteData.createQueryTokens(text);
+            if (tokens.isEmpty()) {
+                return null;
+            }
+            int[] termIds = new int[tokens.size()];
+            for (int i = 0; i < termIds.length; i++) {
+                termIds[i] = TermDictionary.getInstance().lookup(tokens.get(i));
+                if (termIds[i] == TermDictionary.UNKNOWN) {
+                    return new Nothing();
+                }
+            }
+            return termIds.length == 1 ? new Term(termIds[0]) : new Phrase(termIds);
+        }
+
+        private static void add(List<BooleanQuery> clauses, BooleanQuery clause) {
+            if (clause != null) {
+                clauses.add(clause);
+            }
+        }
+
+        private static BooleanQuery combine(List<BooleanQuery> clauses, boolean and) {
+            if (clauses.isEmpty()) {
+                return null;
+            }
+            if (clauses.size() == 1) {
+                return clauses.get(0);
+            }
+            return and ? new And(List.copyOf(clauses)) : new Or(List.copyOf(clauses));
+        }
+
+        /**
+         * consumes the next word if it is the given operator
+         */
+        private boolean nextIs(String operator) {
+            skipWhitespace();
+            if (peekWord().equals(operator)) {
+                offset += operator.length();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return the word at the offset, up to whitespace, a parenthesis or a quote
+         */
+        private String peekWord() {
+            int end = offset;
+            while (end < query.length()) {
+                char c = query.charAt(end);
+                if (Character.isWhitespace(c) || c == '(' || c == ')' || c == '"') {
+                    break;
+                }
+                end++;
+            }
+            return query.substring(offset, end);
+        }
+
+        private void skipWhitespace() {
+            while (offset < query.length() && Character.isWhitespace(query.charAt(offset))) {
+                offset++;
+            }
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the documents matching a {@link BooleanQuery} over the positional
+ * index of every segment and orders them by the tfidf score of the terms
+ * the query asks for. Every clause becomes an iterator over ascending doc
+ * ids. A conjunction leapfrogs its iterators from the one with the fewest
+ * documents, so the longer lists are only advanced to the doc ids of the
+ * shorter ones and skip most of their documents {@link PositionalPostings}.
+ * A phrase is a conjunction of its terms that also checks their positions.
+ * <p>
+ * A matching document is scored with the weights of the positive terms in
+ * the postings of the segment. The documents come in ascending doc id order,
+ * so one cursor per term walks its postings once. Only the best k are kept,
+ * in a min-heap like {@link TopKSearcher}.
+ */
+final class BooleanSearcher {
+    private static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+    private final IndexSnapshot index;
+    private final BooleanQuery query;
+    private final int[] termIds;
+    private final double[] queryWeights;
+    private final int k;
+
+    /**
+     * @param pIndex snapshot which is searched {@link IndexSnapshot}
+     * @param pQuery parsed query
+     * @param pK     number of documents to find
+     */
+    BooleanSearcher(IndexSnapshot pIndex, BooleanQuery pQuery, int pK) {
+        if (pK < 1) {
+            throw new IllegalArgumentException("At least one document has to be searched for, k=" + pK);
+        }
+        this.index = pIndex;
+        this.query = pQuery;
+        this.k = pK;
+        // the terms that aren't negated weighted with their idf
+        int[] positive = positiveTerms(pQuery, false).stream()
+                .filter(pIndex::contains).mapToInt(Integer::intValue).sorted().distinct().toArray();
+        this.termIds = positive;
+        this.queryWeights = new double[positive.length];
+        for (int i = 0; i < positive.length; i++) {
+            queryWeights[i] = pIndex.getIdf(positive[i]);
+        }
+    }
+
+    /**
+     * @return the best matching documents, ordered {@link TopKSearcher#BY_SCORE}
+     */
+    List<TopKSearcher.Hit> search() {
+        // the worst of the best documents found so far is at the head
+        PriorityQueue<TopKSearcher.Hit> heap = new PriorityQueue<>(Math.min(k, 1024),
+                TopKSearcher.BY_SCORE.reversed());
+        for (IndexSnapshot.Segment segment : index.getSegments()) {
+            DocIterator iterator = iterator(query, segment);
+            PostingsList.Cursor[] cursors = new PostingsList.Cursor[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                PostingsList postings = segment.getReverseIndex().getPostings(termIds[i]);
+                cursors[i] = postings == null ? null : postings.cursor();
+            }
+            for (int docId = iterator.nextDoc(); docId != NO_MORE_DOCS; docId = iterator.nextDoc()) {
+                if (!segment.isLive(docId)) {
+                    continue;
+                }
+                double score = score(cursors, docId);
+                // the url is only looked up for documents that can get into the heap
+                if (heap.size() == k && score < heap.peek().score()) {
+                    continue;
+                }
+                TopKSearcher.Hit hit = new TopKSearcher.Hit(segment.getReverseIndex().getUrl(docId), score);
+                if (heap.size() < k) {
+                    heap.add(hit);
+                } else if (TopKSearcher.BY_SCORE.compare(hit, heap.peek()) < 0) {
+                    heap.poll();
+                    heap.add(hit);
+                }
+            }
+        }
+        List<TopKSearcher.Hit> hits = new ArrayList<>(heap);
+        hits.sort(TopKSearcher.BY_SCORE);
+        return hits;
+    }
+
+    /**
+     * calculates the tfidf score of a document from the weights in the
+     * postings, summed up in query term order like {@link TopKSearcher}
+     *
+     * @param cursors cursor of every positive term in the postings of the segment, null if it has no postings
+     * @param docId   document larger than the one scored before
+     * @return sum of the query weights times the weights of the terms in the document
+     */
+    private double score(PostingsList.Cursor[] cursors, int docId) {
+        double score = 0;
+        for (int i = 0; i < cursors.length; i++) {
+            if (cursors[i] != null && cursors[i].advance(docId) && cursors[i].docId() == docId) {
+                score += queryWeights[i] * cursors[i].weight();
+            }
+        }
+        return score;
+    }
+
+    private static List<Integer> positiveTerms(BooleanQuery clause, boolean negated) {
+        List<Integer> terms = new ArrayList<>();
+        switch (clause) {
+            case BooleanQuery.Term term -> {
+                if (!negated) {
+                    terms.add(term.termId());
+                }
+            }
+            case BooleanQuery.Phrase phrase -> {
+                if (!negated) {
+                    Arrays.stream(phrase.termIds()).forEach(terms::add);
+                }
+            }
+            case BooleanQuery.And and -> and.clauses().forEach(c -> terms.addAll(positiveTerms(c, negated)));
+            case BooleanQuery.Or or -> or.clauses().forEach(c -> terms.addAll(positiveTerms(c, negated)));
+            case BooleanQuery.Not not -> terms.addAll(positiveTerms(not.clause(), !negated));
+            case BooleanQuery.Nothing nothing -> {
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return iterator over the documents of the segment matching the clause
+     */
+    private static DocIterator iterator(BooleanQuery clause, IndexSnapshot.Segment segment) {
+        return switch (clause) {
+            case BooleanQuery.Term term -> {
+                PositionalPostings postings = segment.getPositionalIndex().getPostings(term.termId());
+                yield postings == null ? new EmptyIterator() : new TermIterator(postings);
+            }
+            case BooleanQuery.Phrase phrase -> {
+                TermIterator[] terms = new TermIterator[phrase.termIds().length];
+                for (int i = 0; i < terms.length; i++) {
+                    PositionalPostings postings = segment.getPositionalIndex().getPostings(phrase.termIds()[i]);
+                    if (postings == null) {
+                        yield new EmptyIterator();
+                    }
+                    terms[i] = new TermIterator(postings);
+                }
+                yield new PhraseIterator(terms);
+            }
+            case BooleanQuery.And and -> {
+                List<DocIterator> required = new ArrayList<>();
+                List<DocIterator> excluded = new ArrayList<>();
+                for (BooleanQuery c : and.clauses()) {
+                    if (c instanceof BooleanQuery.Not not) {
+                        excluded.add(iterator(not.clause(), segment));
+                    } else {
+                        required.add(iterator(c, segment));
+                    }
+                }
+                DocIterator matches = required.isEmpty() ? new AllIterator(segment.getNumberOfDocuments())
+                        : required.size() == 1 ? required.get(0) : new ConjunctionIterator(required);
+                yield excluded.isEmpty() ? matches : new ExclusionIterator(matches,
+                        excluded.size() == 1 ? excluded.get(0) : new DisjunctionIterator(excluded));
+            }
+            case BooleanQuery.Or or -> {
+                List<DocIterator> optional = new ArrayList<>();
+                for (BooleanQuery c : or.clauses()) {
+                    optional.add(iterator(c, segment));
+                }
+                yield new DisjunctionIterator(optional);
+            }
+            case BooleanQuery.Not not -> new ExclusionIterator(new AllIterator(segment.getNumberOfDocuments()),
+                    iterator(not.clause(), segment));
+            case BooleanQuery.Nothing nothing -> new EmptyIterator();
+        };
+    }
+
+    /**
+     * Iterator over ascending doc ids, positioned before the first document
+     * until nextDoc or advance is called.
+     */
+    private abstract static class DocIterator {
+        protected int docId = -1;
+
+        /**
+         * @return the next doc id or NO_MORE_DOCS
+         */
+        abstract int nextDoc();
+
+        /**
+         * moves to the first document whose id is at least target, target
+         * has to be larger than the current doc id
+         *
+         * @return its doc id or NO_MORE_DOCS
+         */
+        abstract int advance(int target);
+
+        /**
+         * @return estimated number of documents, the cheapest iterator of a conjunction leads
+         */
+        abstract long cost();
+    }
+
+    private static final class EmptyIterator extends DocIterator {
+        @Override
+        int nextDoc() {
+            return docId = NO_MORE_DOCS;
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = NO_MORE_DOCS;
+        }
+
+        @Override
+        long cost() {
+            return 0;
+        }
+    }
+
+    private static final class AllIterator extends DocIterator {
+        private final int numberOfDocuments;
+
+        private AllIterator(int pNumberOfDocuments) {
+            this.numberOfDocuments = pNumberOfDocuments;
+        }
+
+        @Override
+        int nextDoc() {
+            return docId == NO_MORE_DOCS ? docId : advance(docId + 1);
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = target < numberOfDocuments ? target : NO_MORE_DOCS;
+        }
+
+        @Override
+        long cost() {
+            return numberOfDocuments;
+        }
+    }
+
+    private static final class TermIterator extends DocIterator {
+        private final PositionalPostings.Cursor cursor;
+        private final int size;
+
+        private TermIterator(PositionalPostings postings) {
+            this.cursor = postings.cursor();
+            this.size = postings.size();
+        }
+
+        @Override
+        int nextDoc() {
+            return docId = cursor.next() ? cursor.docId() : NO_MORE_DOCS;
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = cursor.advance(target) ? cursor.docId() : NO_MORE_DOCS;
+        }
+
+        @Override
+        long cost() {
+            return size;
+        }
+    }
+
+    private static class ConjunctionIterator extends DocIterator {
+        // ordered by cost, the first one leads
+        protected final DocIterator[] iterators;
+
+        private ConjunctionIterator(List<? extends DocIterator> pIterators) {
+            this.iterators = pIterators.toArray(new DocIterator[0]);
+            Arrays.sort(iterators, Comparator.comparingLong(DocIterator::cost));
+        }
+
+        @Override
+        int nextDoc() {
+            return docId = align(iterators[0].nextDoc());
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = align(iterators[0].advance(target));
+        }
+
+        /**
+         * advances the other iterators to the candidate of the leading one,
+         * if one of them passes it that doc id is the next candidate
+         */
+        private int align(int candidate) {
+            int i = 1;
+            while (candidate != NO_MORE_DOCS && i < iterators.length) {
+                int other = iterators[i].docId < candidate ? iterators[i].advance(candidate) : iterators[i].docId;
+                if (other == candidate) {
+                    i++;
+                } else {
+                    candidate = iterators[0].advance(other);
+                    i = 1;
+                    continue;
+                }
+                if (i == iterators.length && !matches()) {
+                    candidate = iterators[0].nextDoc();
+                    i = 1;
+                }
+            }
+            return candidate;
+        }
+
+        /**
+         * @return true if the document all iterators are on matches
+         */
+        protected boolean matches() {
+            return true;
+        }
+
+        @Override
+        long cost() {
+            return iterators[0].cost();
+        }
+    }
+
+    /**
+     * Conjunction of the terms of a phrase, which matches a document if the
+     * terms follow each other at some position.
+     */
+    private static final class PhraseIterator extends ConjunctionIterator {
+        // iterator of every term in phrase order
+        private final TermIterator[] terms;
+        private final int[] next;
+
+        private PhraseIterator(TermIterator[] pTerms) {
+            super(Arrays.asList(pTerms));
+            this.terms = pTerms;
+            this.next = new int[pTerms.length];
+        }
+
+        @Override
+        protected boolean matches() {
+            Arrays.fill(next, 0);
+            PositionalPostings.Cursor first = terms[0].cursor;
+            for (int occurrence = 0; occurrence < first.frequency(); occurrence++) {
+                int start = first.position(occurrence);
+                boolean found = true;
+                for (int i = 1; i < terms.length && found; i++) {
+                    // positions are ascending, so every term continues where it stopped for the last start
+                    PositionalPostings.Cursor cursor = terms[i].cursor;
+                    while (next[i] < cursor.frequency() && cursor.position(next[i]) < start + i) {
+                        next[i]++;
+                    }
+                    if (next[i] == cursor.frequency()) {
+                        return false;
+                    }
+                    found = cursor.position(next[i]) == start + i;
+                }
+                if (found) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class DisjunctionIterator extends DocIterator {
+        private final DocIterator[] iterators;
+
+        private DisjunctionIterator(List<DocIterator> pIterators) {
+            this.iterators = pIterators.toArray(new DocIterator[0]);
+        }
+
+        @Override
+        int nextDoc() {
+            return docId == NO_MORE_DOCS ? docId : advance(docId + 1);
+        }
+
+        @Override
+        int advance(int target) {
+            int min = NO_MORE_DOCS;
+            for (DocIterator iterator : iterators) {
+                int other = iterator.docId < target ? iterator.advance(target) : iterator.docId;
+                min = Math.min(min, other);
+            }
+            return docId = min;
+        }
+
+        @Override
+        long cost() {
+            long cost = 0;
+            for (DocIterator iterator : iterators) {
+                cost += iterator.cost();
+            }
+            return cost;
+        }
+    }
+
+    private static final class ExclusionIterator extends DocIterator {
+        private final DocIterator included;
+        private final DocIterator excluded;
+
+        private ExclusionIterator(DocIterator pIncluded, DocIterator pExcluded) {
+            this.included = pIncluded;
+            this.excluded = pExcluded;
+        }
+
+        @Override
+        int nextDoc() {
+            return docId = skipExcluded(included.nextDoc());
+        }
+
+        @Override
+        int advance(int target) {
+            return docId = skipExcluded(included.advance(target));
+        }
+
+        private int skipExcluded(int candidate) {
+            while (candidate != NO_MORE_DOCS) {
+                int other = excluded.docId < candidate ? excluded.advance(candidate) : excluded.docId;
+                if (other != candidate) {
+                    return candidate;
+                }
+                candidate = included.nextDoc();
+            }
+            return candidate;
+        }
+
+        @Override
+        long cost() {
+            return included.cost();
+        }
+    }
+}
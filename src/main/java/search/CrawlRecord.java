@@ -0,0 +1,53 @@
+package search;
+
+/**
+ * Remembers what the crawler saw the last time it fetched a page, so that a
+ * recrawl can send conditional requests and detect unchanged content.
+ */
+public class CrawlRecord {
+    private final String etag;
+    private final String lastModified;
+    private final String contentHash;
+    private final int numberOfLinks;
+
+    /**
+     * @param pEtag          value of the ETag header, may be null
+     * @param pLastModified  value of the Last-Modified header, may be null
+     * @param pContentHash   hash of the response body
+     * @param pNumberOfLinks number of links on the page
+     */
+    public CrawlRecord(String pEtag, String pLastModified, String pContentHash, int pNumberOfLinks) {
+        this.etag = pEtag;
+        this.lastModified = pLastModified;
+        this.contentHash = pContentHash;
+        this.numberOfLinks = pNumberOfLinks;
+    }
+
+    /**
+     * @return ETag of the last fetch or null
+     */
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * @return Last-Modified date of the last fetch or null
+     */
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return hash of the body of the last fetch
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return number of links on the page
+     */
+    public int getNumberOfLinks() {
+        return numberOfLinks;
+    }
+}
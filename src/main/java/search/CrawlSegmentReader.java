@@ -0,0 +1,166 @@
+package search;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Replays a snapshot segment file written by the {@link CrawlSegmentWriter}.
+ * The websites are built from the stored html, so no network access is
+ * needed. If a url was stored more than once, the latest record wins.
+ */
+public class CrawlSegmentReader implements WebsiteSource {
+    private static final Logger logger = Logger.getLogger(CrawlSegmentReader.class.getName());
+    private final Path path;
+    private int numberOfSites;
+    private int numberOfLinks;
+    private int numberOfSkippedSites;
+    private ParallelAnalyzer analyzer = ParallelAnalyzer.common();
+
+    /**
+     * @param pPath path of the segment file
+     */
+    public CrawlSegmentReader(Path pPath) {
+        this.path = pPath;
+    }
+
+    @Override
+    public List<WebsiteData> start() throws IOException {
+        List<WebsiteData> sites = new ArrayList<>();
+        crawl(sites::add);
+        return analyzer.analyze(sites);
+    }
+
+    @Override
+    public void crawl(Consumer<WebsiteData> sink) throws IOException {
+        Map<String, byte[]> pages = readPages();
+        numberOfSites = pages.size();
+        numberOfLinks = 0;
+        for (Map.Entry<String, byte[]> page : pages.entrySet()) {
+            String url = page.getKey();
+            // charset is detected from the html, just like for a http response
+            Document document = Jsoup.parse(new ByteArrayInputStream(page.getValue()), null, url);
+            int links = document.select("a").size();
+            WebsiteData website = Crawler.parse(url, document, false);
+            if (website == null) {
+                numberOfSkippedSites++;
+                logger.warning("Skipping " + url + ": title, header or main element missing");
+                continue;
+            }
+            numberOfLinks += links;
+            sink.accept(website);
+        }
+    }
+
+    /**
+     * reads the raw html of every page in the segment. A torn record at the end
+     * of the file is ignored, records with a wrong checksum are skipped.
+     *
+     * @return map of url to raw html in the order the pages were first stored
+     * @throws IOException if the file isn't a crawl segment
+     */
+    Map<String, byte[]> readPages() throws IOException {
+        Map<String, byte[]> pages = new LinkedHashMap<>();
+        long fileSize = Files.size(path);
+        numberOfSkippedSites = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != CrawlSegmentWriter.MAGIC) {
+                throw new IOException(path + " is not a crawl segment");
+            }
+            int version = in.readInt();
+            if (version != CrawlSegmentWriter.VERSION) {
+                throw new IOException("Unsupported crawl segment version " + version);
+            }
+
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (length < 0 || length > fileSize) {
+                    logger.warning("Ignoring incomplete record at the end of " + path);
+                    break;
+                }
+                byte[] payload;
+                int checksum;
+                try {
+                    checksum = in.readInt();
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    logger.warning("Ignoring incomplete record at the end of " + path);
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    numberOfSkippedSites++;
+                    logger.warning("Skipping record with wrong checksum in " + path);
+                    continue;
+                }
+                readRecord(payload, pages);
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * inflates a record and stores its html under its url
+     */
+    private static void readRecord(byte[] payload, Map<String, byte[]> pages) throws IOException {
+        try (DataInputStream record = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(payload)))) {
+            String url = record.readUTF();
+            // fetch time and headers are kept for reference but not needed for replaying
+            record.readLong();
+            int numberOfHeaders = record.readInt();
+            for (int i = 0; i < numberOfHeaders; i++) {
+                record.readUTF();
+                record.readUTF();
+            }
+            byte[] html = new byte[record.readInt()];
+            record.readFully(html);
+            pages.put(url, html);
+        }
+    }
+
+    /**
+     * sets the analyzer the pages are tokenized with
+     *
+     * @param pAnalyzer analyzer {@link ParallelAnalyzer}
+     */
+    public void setAnalyzer(ParallelAnalyzer pAnalyzer) {
+        this.analyzer = pAnalyzer;
+    }
+
+    @Override
+    public int getNumberOfSites() {
+        return numberOfSites;
+    }
+
+    @Override
+    public int getNumberOfLinks() {
+        return numberOfLinks;
+    }
+
+    @Override
+    public int getNumberOfSkippedSites() {
+        return numberOfSkippedSites;
+    }
+}
@@ -0,0 +1,158 @@
+package search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Appends crawled pages to a snapshot segment file, which can be replayed with
+ * the {@link CrawlSegmentReader} without any network access.
+ * <p>
+ * The file starts with a magic number and a format version. Every page is
+ * stored as one record: the length and CRC32 checksum of the compressed
+ * payload followed by the deflated payload, which contains the url, the fetch
+ * time, the response headers and the raw html. Records are compressed on their
+ * own, so a file can always be appended to and a torn write only loses the
+ * last record. A torn record is cut off when the file is opened again,
+ * otherwise the reader would stop at it and never see the records appended
+ * after it.
+ */
+public class CrawlSegmentWriter implements Closeable {
+    static final int MAGIC = 0x43524c53;
+    static final int VERSION = 1;
+    private final FileChannel channel;
+
+    /**
+     * opens a segment file for appending, a new file is created if it doesn't
+     * exist. Everything after the last complete record with a valid checksum
+     * is truncated.
+     *
+     * @param path path of the segment file
+     * @throws IOException if the file can't be opened or isn't a crawl segment
+     */
+    public CrawlSegmentWriter(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long end = channel.size() < 8 ? 0 : findEnd(path);
+            if (end < channel.size()) {
+                channel.truncate(end);
+            }
+            channel.position(end);
+            if (end == 0) {
+                ByteBuffer header = ByteBuffer.allocate(8).putInt(MAGIC).putInt(VERSION).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * checks the header and reads the records of an existing segment
+     *
+     * @return position after the last complete record with a valid checksum
+     * @throws IOException if the file isn't a crawl segment
+     */
+    private long findEnd(Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        readFully(header, 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a crawl segment");
+        }
+        if (header.getInt(4) != VERSION) {
+            throw new IOException("Unsupported crawl segment version " + header.getInt(4));
+        }
+        long size = channel.size();
+        long position = 8;
+        long end = position;
+        while (position + 8 <= size) {
+            header.clear();
+            readFully(header, position);
+            int length = header.getInt(0);
+            if (length < 0 || length > size - position - 8) {
+                break;
+            }
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, position + 8);
+            CRC32 crc = new CRC32();
+            crc.update(payload.flip());
+            position += 8 + length;
+            // a record with a wrong checksum in the middle is skipped by the reader, one at the end is cut off
+            if ((int) crc.getValue() == header.getInt(4)) {
+                end = position;
+            }
+        }
+        return end;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    /**
+     * appends a page to the segment
+     *
+     * @param url       url of the page
+     * @param fetchTime time of the fetch in milliseconds since the epoch
+     * @param headers   response headers
+     * @param html      raw html as it was received
+     * @throws IOException
+     */
+    public void append(String url, long fetchTime, Map<String, String> headers, byte[] html) throws IOException {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(html.length / 4 + 64);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(compressed))) {
+            out.writeUTF(url);
+            out.writeLong(fetchTime);
+            out.writeInt(headers.size());
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                out.writeUTF(header.getKey());
+                out.writeUTF(header.getValue());
+            }
+            out.writeInt(html.length);
+            out.write(html);
+        }
+        byte[] payload = compressed.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer record = ByteBuffer.allocate(8 + payload.length)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload)
+                .flip();
+        // records of concurrent crawl workers must not interleave
+        synchronized (this) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+    }
+
+    /**
+     * forces all appended records to disk and closes the file
+     *
+     * @throws IOException
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        channel.force(false);
+        channel.close();
+    }
+}
@@ -1,22 +1,24 @@
 package search;
 
 
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.LinkedList;
+import java.util.Collections;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-import jakarta.enterprise.context.ApplicationScoped;
-import opennlp.tools.lemmatizer.LemmatizerME;
-import opennlp.tools.lemmatizer.LemmatizerModel;
-import opennlp.tools.postag.POSModel;
-import opennlp.tools.postag.POSTaggerME;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -27,78 +29,548 @@ import org.jsoup.select.Elements;
  *
  * @author Simon Sattelberger
  */
-public class Crawler {
+public class Crawler implements WebsiteSource {
+    static final String PROXY_HOST = "localhost";
+    static final int PROXY_PORT = 80;
     private String[] seedUrls;
-    private List<String> foundWebsites = new ArrayList<>();
-    private List<WebsiteData> crawledSites = new ArrayList<>();
+    private final Frontier frontier;
+    private List<WebsiteData> crawledSites = Collections.synchronizedList(new ArrayList<>());
     private final int LIMIT = 1024;
-    private int numberOfLinks;
+    private final int maxConcurrency;
+    private final int maxPerHost;
+    private final PageFetcher fetcher;
+    private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final AtomicInteger numberOfLinks = new AtomicInteger();
+    private final AtomicInteger numberOfSkippedSites = new AtomicInteger();
+    private final AtomicInteger numberOfChangedSites = new AtomicInteger();
+    private final AtomicInteger numberOfUnchangedSites = new AtomicInteger();
+    private final Map<String, CrawlRecord> crawlRecords = new ConcurrentHashMap<>();
+    private Map<String, WebsiteData> previousSites = Map.of();
+    private volatile Consumer<WebsiteData> sink;
+    private CrawlSegmentWriter snapshotWriter;
+    private ParallelAnalyzer analyzer = ParallelAnalyzer.common();
     private static final Logger logger = Logger.getLogger(Crawler.class.getName());
+
     public Crawler(String[] pSeedUrls) {
+        this(pSeedUrls, 1, 1, 30000);
+    }
+
+    /**
+     * @param pSeedUrls       urls the crawl starts from
+     * @param pMaxConcurrency maximum number of pages processed at the same time
+     * @param pMaxPerHost     maximum number of concurrent fetches per host
+     * @param pTimeout        deadline in milliseconds for connecting to and reading a single page
+     */
+    public Crawler(String[] pSeedUrls, int pMaxConcurrency, int pMaxPerHost, int pTimeout) {
+        this(pSeedUrls, new Frontier(8192), pMaxConcurrency, pMaxPerHost, pTimeout);
+    }
 
+    /**
+     * @param pSeedUrls       urls the crawl starts from
+     * @param pFrontier       frontier holding the urls to crawl {@link Frontier}
+     * @param pMaxConcurrency maximum number of pages processed at the same time
+     * @param pMaxPerHost     maximum number of concurrent fetches per host
+     * @param pTimeout        deadline in milliseconds for connecting to and reading a single page
+     */
+    public Crawler(String[] pSeedUrls, Frontier pFrontier, int pMaxConcurrency, int pMaxPerHost, int pTimeout) {
+        this(pSeedUrls, pFrontier, new PageFetcher(PROXY_HOST, PROXY_PORT, pTimeout, pTimeout), pMaxConcurrency,
+                pMaxPerHost);
+    }
+
+    /**
+     * @param pSeedUrls       urls the crawl starts from
+     * @param pFrontier       frontier holding the urls to crawl {@link Frontier}
+     * @param pFetcher        fetcher shared by all workers {@link PageFetcher}
+     * @param pMaxConcurrency maximum number of pages processed at the same time
+     * @param pMaxPerHost     maximum number of concurrent fetches per host
+     */
+    public Crawler(String[] pSeedUrls, Frontier pFrontier, PageFetcher pFetcher, int pMaxConcurrency,
+                   int pMaxPerHost) {
         this.seedUrls = pSeedUrls;
+        this.frontier = pFrontier;
+        this.fetcher = pFetcher;
+        this.maxConcurrency = pMaxConcurrency;
+        this.maxPerHost = pMaxPerHost;
     }
 
 
     /**
-     * Starts the crawler
+     * Crawls all pages again. Pages are requested with If-None-Match and
+     * If-Modified-Since headers, and only pages whose content changed are parsed
+     * and tokenized again. Unchanged pages keep their WebsiteData object.
      *
+     * @param pPreviousSites forward index of the last crawl {@link ForwardIndex}
+     * @param concurrent     if true the pages are crawled concurrently
      * @return List of all crawled Websites saved as WebsiteData Object
      * {@link WebsiteData}
      * @throws IOException
      */
-    public List<WebsiteData> start() throws IOException {
-        LinkedList<String> queue = new LinkedList<>();
+    public List<WebsiteData> recrawl(Map<String, WebsiteData> pPreviousSites, boolean concurrent)
+            throws IOException {
+        try {
+            previousSites = pPreviousSites;
+            return concurrent ? startConcurrent() : start();
+        } finally {
+            previousSites = Map.of();
+        }
+    }
 
-        int counter = 0;
+    /**
+     * Crawls concurrently and hands every page to the sink as soon as it is
+     * parsed. Pages aren't tokenized by the crawler, this is left to the consumer.
+     * The sink may block to slow the crawl down.
+     *
+     * @param pSink consumer of the crawled pages
+     * @throws IOException
+     */
+    @Override
+    public void crawl(Consumer<WebsiteData> pSink) throws IOException {
+        try {
+            sink = pSink;
+            crawlConcurrently();
+        } finally {
+            sink = null;
+        }
+    }
+
+    /**
+     * Starts the crawler. The pages are analyzed by the {@link ParallelAnalyzer}
+     * after all of them were fetched.
+     *
+     * @return List of all crawled Websites saved as WebsiteData Object
+     * {@link WebsiteData}
+     * @throws IOException
+     */
+    @Override
+    public List<WebsiteData> start() throws IOException {
+        reset();
+        AtomicInteger pending = new AtomicInteger();
         // adds the seedUrls to the queue
         for (String seedUrl : seedUrls) {
-            queue.add(seedUrl);
-            foundWebsites.add(seedUrl);
+            frontier.offer(seedUrl);
         }
 
         // takes out first Element of the queue and extracts its links
-        while (!queue.isEmpty() && counter < LIMIT) {
-            String url = queue.poll();
-            Document document = Jsoup.connect(url).proxy("localhost", 80).get();
-            Elements links = document.select("a");
-
-            for (Element link : links) {
-                // adds found links to the queue if they haven't been visited
-                if (!foundWebsites.contains(link.attr("href"))) {
-                    foundWebsites.add(link.attr("href"));
-                    queue.add(link.attr("href"));
+        int counter = 0;
+        String url;
+        try {
+            while (counter < LIMIT && (url = frontier.poll()) != null) {
+                crawlPage(url, pending);
+                counter++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return analyzer.analyze(crawledSites);
+    }
+
+    /**
+     * Starts the crawler with maxConcurrency workers running on virtual threads.
+     * At most maxPerHost pages are fetched from the same host at once. The pages
+     * are analyzed by the {@link ParallelAnalyzer} after all of them were fetched.
+     *
+     * @return List of all crawled Websites saved as WebsiteData Object
+     * {@link WebsiteData}
+     * @throws IOException
+     */
+    public List<WebsiteData> startConcurrent() throws IOException {
+        crawlConcurrently();
+        return analyzer.analyze(crawledSites);
+    }
+
+    /**
+     * fetches all pages with maxConcurrency workers without analyzing them. The
+     * crawl ends when the last found url is finished or a worker fails, the
+     * failure is rethrown after all workers stopped.
+     */
+    private void crawlConcurrently() {
+        reset();
+        AtomicInteger counter = new AtomicInteger();
+        // number of urls that were added to the frontier but aren't finished yet
+        AtomicInteger pending = new AtomicInteger();
+        // completed when pending drops to zero or exceptionally when a worker fails
+        CompletableFuture<Void> finished = new CompletableFuture<>();
+        for (String seedUrl : seedUrls) {
+            offer(seedUrl, pending);
+        }
+        if (pending.get() == 0) {
+            return;
+        }
+
+        List<Future<Void>> workers = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < maxConcurrency; i++) {
+                workers.add(executor.submit(() -> work(counter, pending, finished)));
+            }
+            try {
+                finished.get();
+            } catch (ExecutionException e) {
+                // the cause is thrown from the future of the failed worker below
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                // the workers wait for urls that won't come any more
+                executor.shutdownNow();
+            }
+        }
+        for (Future<Void> worker : workers) {
+            try {
+                worker.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof InterruptedException) {
+                    // the crawl was interrupted from outside
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                if (e.getCause() instanceof Error cause) {
+                    throw cause;
+                }
+                throw new IllegalStateException("Crawl worker failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * clears the results of the last crawl
+     */
+    private void reset() {
+        frontier.clear();
+        crawledSites = Collections.synchronizedList(new ArrayList<>());
+        numberOfLinks.set(0);
+        numberOfSkippedSites.set(0);
+        numberOfChangedSites.set(0);
+        numberOfUnchangedSites.set(0);
+    }
+
+    /**
+     * takes urls from the frontier until the crawl is finished. The worker
+     * finishing the last url completes the crawl, a failing one completes it
+     * exceptionally. Workers waiting for an url are interrupted at the end.
+     */
+    private Void work(AtomicInteger counter, AtomicInteger pending, CompletableFuture<Void> finished)
+            throws InterruptedException {
+        try {
+            while (!finished.isDone()) {
+                String url = frontier.take();
+                try {
+                    if (counter.incrementAndGet() <= LIMIT) {
+                        crawlPage(url, pending);
+                    }
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        finished.complete(null);
+                    }
                 }
             }
+        } catch (InterruptedException e) {
+            // the crawl is over
+            if (!finished.isDone()) {
+                finished.completeExceptionally(e);
+                throw e;
+            }
+        } catch (RuntimeException | Error e) {
+            finished.completeExceptionally(e);
+            throw e;
+        }
+        return null;
+    }
+
+    /**
+     * fetches a page, adds its links to the frontier and saves it as WebsiteData.
+     * During a recrawl unchanged pages keep their previous WebsiteData object.
+     *
+     * @param url     url of the page
+     * @param pending counter of unfinished urls
+     * @throws InterruptedException
+     */
+    private void crawlPage(String url, AtomicInteger pending) throws InterruptedException {
+        WebsiteData previous = previousSites.get(url);
+        CrawlRecord record = previous == null ? null : crawlRecords.get(url);
+        FetchResult result = fetchPolitely(url, record);
+        if (result == null) {
+            return;
+        }
+        if (record != null && result.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+            keepWebsite(previous, record, pending);
+            return;
+        }
+
+        String contentHash = result.getContentHash();
+        if (snapshotWriter != null && (record == null || !contentHash.equals(record.getContentHash()))) {
+            writeSnapshot(url, result);
+        }
+        if (record != null && contentHash.equals(record.getContentHash())) {
+            crawlRecords.put(url, new CrawlRecord(result.getHeader("ETag"), result.getHeader("Last-Modified"),
+                    contentHash, record.getNumberOfLinks()));
+            keepWebsite(previous, record, pending);
+            return;
+        }
+        Document document = result.getDocument();
+        Elements links = document.select("a");
+        for (Element link : links) {
+            // adds found links to the queue if they haven't been visited
+            offer(link.absUrl("href"), pending);
+        }
+        crawlRecords.put(url, new CrawlRecord(result.getHeader("ETag"), result.getHeader("Last-Modified"),
+                contentHash, links.size()));
+        addWebsite(url, document);
+    }
+
+    /**
+     * appends a fetched page to the snapshot segment. Failing to write the
+     * snapshot doesn't stop the crawl.
+     */
+    private void writeSnapshot(String url, FetchResult result) {
+        try {
+            snapshotWriter.append(url, System.currentTimeMillis(), result.getHeaders(), result.getBody());
+        } catch (IOException e) {
+            logger.warning("Couldn't write " + url + " to the snapshot: " + e.getMessage());
+        }
+    }
 
-            // parsing the document and creating WebsiteData Object
+    /**
+     * keeps the WebsiteData of a page that didn't change since the last crawl
+     */
+    private void keepWebsite(WebsiteData previous, CrawlRecord record, AtomicInteger pending) {
+        for (String link : previous.getLinks()) {
+            offer(link, pending);
+        }
+        emit(previous);
+        numberOfLinks.addAndGet(record.getNumberOfLinks());
+        numberOfUnchangedSites.incrementAndGet();
+    }
+
+    /**
+     * adds an url to the frontier. The pending counter is increased before the url
+     * becomes visible to other workers, so it can't drop to zero too early.
+     */
+    private void offer(String url, AtomicInteger pending) {
+        pending.incrementAndGet();
+        if (!frontier.offer(url)) {
+            pending.decrementAndGet();
+        }
+    }
+
+    /**
+     * fetches a page while holding one of the permits of its host
+     *
+     * @param url    url of the page
+     * @param record record of the last fetch or null
+     * @return result or null if the page couldn't be fetched
+     * @throws InterruptedException
+     */
+    private FetchResult fetchPolitely(String url, CrawlRecord record) throws InterruptedException {
+        Semaphore permits = hostPermits.computeIfAbsent(hostKey(url), key -> new Semaphore(maxPerHost));
+        permits.acquire();
+        try {
+            return fetch(url, record);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * fetches a page through the proxy. If a record of the last fetch is given the
+     * request is conditional. Failed and timed out fetches are logged and counted
+     * as skipped.
+     *
+     * @param url    url of the page
+     * @param record record of the last fetch or null
+     * @return result or null if the page couldn't be fetched
+     * @throws InterruptedException
+     */
+    private FetchResult fetch(String url, CrawlRecord record) throws InterruptedException {
+        try {
+            FetchResult result = fetcher.fetch(url, record, snapshotWriter != null);
+            if (result.getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new IOException("HTTP status " + result.getStatusCode());
+            }
+            if (result.getDocument() == null && result.getStatusCode() != HttpURLConnection.HTTP_NOT_MODIFIED) {
+                throw new IOException("HTTP status " + result.getStatusCode() + " without a page");
+            }
+            return result;
+        } catch (IOException e) {
+            numberOfSkippedSites.incrementAndGet();
+            logger.warning("Skipping " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
 
-            String title = document.selectFirst("title").text();
-            String header = document.selectFirst("header").text();
-            Element content = document.selectFirst("main");
-            List<String> outgoingLinks = document.select("a").eachAttr("href");
+    /**
+     * parses a fetched document and adds it to the crawled sites
+     *
+     * @param url      url of the document
+     * @param document fetched document
+     */
+    private void addWebsite(String url, Document document) {
+        Elements links = document.select("a");
+        WebsiteData website = parse(url, document, false);
+        if (website == null) {
+            numberOfSkippedSites.incrementAndGet();
+            logger.warning("Skipping " + url + ": title, header or main element missing");
+            return;
+        }
+        emit(website);
+        numberOfLinks.addAndGet(links.size());
+        if (previousSites.containsKey(url)) {
+            numberOfChangedSites.incrementAndGet();
+        }
+    }
 
-            content.select("a").remove();
-            WebsiteData website = new WebsiteData(url, title, header, content.text(), outgoingLinks);
+    /**
+     * hands a page to the sink or adds it to the crawled sites
+     */
+    private void emit(WebsiteData website) {
+        Consumer<WebsiteData> currentSink = sink;
+        if (currentSink != null) {
+            currentSink.accept(website);
+        } else {
             crawledSites.add(website);
-            numberOfLinks = numberOfLinks + links.size();
-            counter++;
         }
-        return crawledSites;
+    }
+
+    /**
+     * fetches and parses a single page outside of a crawl, e.g. to update it in the index
+     *
+     * @param url normalized url of the page
+     * @return the analyzed page or null if it is gone or has no title, header or main element
+     * @throws IOException          if the page couldn't be fetched
+     * @throws InterruptedException
+     */
+    public WebsiteData fetchPage(String url) throws IOException, InterruptedException {
+        FetchResult result = fetcher.fetch(url, null, false);
+        int statusCode = result.getStatusCode();
+        if (statusCode == HttpURLConnection.HTTP_NOT_FOUND || statusCode == HttpURLConnection.HTTP_GONE) {
+            return null;
+        }
+        if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST || result.getDocument() == null) {
+            throw new IOException("HTTP status " + statusCode + " for " + url);
+        }
+        return parse(url, result.getDocument(), true);
+    }
+
+    /**
+     * parsing the document and creating WebsiteData Object
+     *
+     * @param url      url of the document
+     * @param document parsed html document
+     * @param analyze  if true the content is tokenized right away
+     * @return WebsiteData object or null if title, header or main is missing
+     */
+    static WebsiteData parse(String url, Document document, boolean analyze) {
+        Element title = document.selectFirst("title");
+        Element header = document.selectFirst("header");
+        Element content = document.selectFirst("main");
+        if (title == null || header == null || content == null) {
+            return null;
+        }
+        List<String> outgoingLinks = new ArrayList<>();
+        for (Element link : document.select("a")) {
+            String normalizedLink = UrlNormalizer.normalize(link.absUrl("href"));
+            if (normalizedLink != null) {
+                outgoingLinks.add(normalizedLink);
+            }
+        }
+
+        content.select("a").remove();
+        return new WebsiteData(url, title.text(), header.text(), content.text(), outgoingLinks, analyze);
+    }
+
+    /**
+     * politeness is applied per network (cheesy1 to cheesy6), which is the last
+     * label of the host name
+     *
+     * @param url url
+     * @return key of the host group
+     */
+    static String hostKey(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            if (host == null) {
+                return url;
+            }
+            return host.substring(host.lastIndexOf('.') + 1);
+        } catch (IllegalArgumentException e) {
+            return url;
+        }
+    }
+
+    /**
+     * sets the segment every fetched page is appended to
+     *
+     * @param pSnapshotWriter writer of the snapshot segment or null to disable snapshots
+     *                        {@link CrawlSegmentWriter}
+     */
+    public void setSnapshotWriter(CrawlSegmentWriter pSnapshotWriter) {
+        this.snapshotWriter = pSnapshotWriter;
+    }
+
+    /**
+     * sets the analyzer the crawled pages are tokenized with
+     *
+     * @param pAnalyzer analyzer {@link ParallelAnalyzer}
+     */
+    public void setAnalyzer(ParallelAnalyzer pAnalyzer) {
+        this.analyzer = pAnalyzer;
+    }
+
+    /**
+     * @return fetcher of this crawler, e.g. to read its counters
+     */
+    public PageFetcher getFetcher() {
+        return fetcher;
     }
 
     /**
      * @return number of all crawled links
      */
+    @Override
     public int getNumberOfLinks() {
-        return numberOfLinks;
+        return numberOfLinks.get();
     }
 
     /**
-     * @return number of found sites
+     * @return number of found sites, an estimate if {@link #isNumberOfSitesApproximate()}
      */
+    @Override
     public int getNumberOfSites() {
-        return foundWebsites.size();
+        return frontier.getNumberOfDistinctUrls();
+    }
+
+    /**
+     * @return true if the frontier remembers found urls in a bloom filter
+     * and the number of sites is a lower bound {@link Frontier#isApproximate()}
+     */
+    public boolean isNumberOfSitesApproximate() {
+        return frontier.isApproximate();
+    }
+
+    /**
+     * @return number of sites that couldn't be fetched or parsed
+     */
+    @Override
+    public int getNumberOfSkippedSites() {
+        return numberOfSkippedSites.get();
+    }
+
+    /**
+     * @return number of sites whose content changed during the last recrawl
+     */
+    public int getNumberOfChangedSites() {
+        return numberOfChangedSites.get();
+    }
+
+    /**
+     * @return number of sites that were unchanged during the last recrawl
+     */
+    public int getNumberOfUnchangedSites() {
+        return numberOfUnchangedSites.get();
     }
 
 }
@@ -1,16 +1,28 @@
 package search;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.inject.Inject;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Path("/search")
 public class ExampleResource {
+    // version of the index snapshot a response was created from
+    static final String INDEX_VERSION_HEADER = "X-Index-Version";
+    // false if the search stopped early and the results may miss better documents
+    static final String EXACT_HEADER = "X-Result-Exact";
+    // query with misspelled words corrected, only set for fuzzy searches that corrected a word
+    static final String DID_YOU_MEAN_HEADER = "X-Did-You-Mean";
+
+    @Inject
+    Main main;
 
     public static void main(String[] args) {
         System.out.println("Hello World");
@@ -19,44 +31,190 @@ public class ExampleResource {
     @GET
     @Path("/query/")
     @Produces(MediaType.TEXT_PLAIN)
-    public String search(@QueryParam("word") String word, @QueryParam("algorithm") String algo) {
+    public Response search(@QueryParam("word") String word, @QueryParam("algorithm") String algo,
+                           @QueryParam("limit") @DefaultValue("30") int limit,
+                           @QueryParam("fuzzy") @DefaultValue("false") boolean fuzzy) {
+        if (limit < 1) {
+            throw new BadRequestException("limit has to be at least 1");
+        }
+        // the whole request reads one snapshot, even if a new one is published meanwhile
+        IndexSnapshot index = Main.index.snapshot();
+        ResultCache cache = Main.resultCache;
+        ResultCache.Result result;
+        if (cache == null) {
+            result = search(word, algo, limit, fuzzy, index);
+        } else {
+            // boolean queries depend on their operators, the other rankings only on the terms
+            List<String> terms = "boolean".equals(algo)
+                    ? List.of(String.join(" ", word.trim().split("\\s+"))) : WebsiteData.createQueryTokens(word);
+            result = cache.get(new ResultCache.Key(algo, terms, limit, fuzzy), index.getVersion(),
+                    () -> search(word, algo, limit, fuzzy, index));
+        }
+        Response.ResponseBuilder response = Response.ok(result.body())
+                .header(INDEX_VERSION_HEADER, index.getVersion()).header(EXACT_HEADER, result.exact());
+        if (result.suggestion() != null) {
+            response.header(DID_YOU_MEAN_HEADER, result.suggestion());
+        }
+        return response.build();
+    }
+
+    /**
+     * searches the snapshot and serializes the found websites
+     */
+    private ResultCache.Result search(String word, String algo, int limit, boolean fuzzy, IndexSnapshot index) {
         List<String> results = new ArrayList<>();
         List<String> websiteData = new ArrayList<>();
-        Map<String, WebsiteData> forwardIndexMap = Main.forwardIndexMap;
         ObjectMapper objectMapper = new ObjectMapper();
+        boolean exact = true;
+        String suggestion = null;
         try {
             results = switch (algo) {
-                case "tfidf" -> SearchQuery.search(word, forwardIndexMap, Main.reverseIndexMap);
-                case "pagerank" -> SearchQuery.searchPageRank(word, forwardIndexMap, Main.reverseIndexMap);
-                case "cosine" -> SearchQuery.searchCosine(word, forwardIndexMap, Main.reverseIndexMap);
+                case "tfidf" -> {
+                    // misspelled words are only looked up for the tfidf ranking
+                    SearchResult result = fuzzy
+                            ? SearchQuery.searchFuzzy(word, index, limit, main.impactMaxPostings)
+                            : SearchQuery.searchImpactOrdered(word, index, limit, main.impactMaxPostings);
+                    exact = result.exact();
+                    suggestion = result.suggestion();
+                    yield result.urls();
+                }
+                case "pagerank" -> SearchQuery.searchPageRank(word, index, limit);
+                case "cosine" -> SearchQuery.searchCosine(word, index, limit);
+                case "boolean" -> {
+                    try {
+                        yield SearchQuery.searchBoolean(word, index, limit);
+                    } catch (IllegalArgumentException e) {
+                        // a query the parser rejects
+                        throw new BadRequestException(e.getMessage());
+                    }
+                }
                 default -> results;
             };
             for (String result : results) {
 
-                websiteData.add(objectMapper.writeValueAsString(forwardIndexMap.get(result)));
+                websiteData.add(objectMapper.writeValueAsString(index.getWebsite(result)));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+        return new ResultCache.Result(websiteData.toString(), exact, suggestion);
+    }
 
-        return websiteData.toString();
+    @GET
+    @Path("/suggest")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response suggest(@QueryParam("prefix") @DefaultValue("") String prefix,
+                            @QueryParam("limit") @DefaultValue("10") int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("limit has to be at least 1");
+        }
+        IndexSnapshot index = Main.index.snapshot();
+        try {
+            String completions = new ObjectMapper().writeValueAsString(SearchQuery.suggest(prefix, index, limit));
+            return Response.ok(completions).header(INDEX_VERSION_HEADER, index.getVersion()).build();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 
     @GET
     @Path("/all")
     @Produces(MediaType.TEXT_PLAIN)
-    public String getAll() {
+    public Response getAll() {
         List<String> websiteData = new ArrayList<>();
         ObjectMapper objectMapper = new ObjectMapper();
+        IndexSnapshot index = Main.index.snapshot();
         try {
-            for (String entry : Main.forwardIndexMap.keySet()) {
+            for (WebsiteData website : index.getWebsites().values()) {
 
-                websiteData.add(objectMapper.writeValueAsString(Main.forwardIndexMap.get(entry)));
+                websiteData.add(objectMapper.writeValueAsString(website));
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
-        return websiteData.toString();
+        return Response.ok(websiteData.toString()).header(INDEX_VERSION_HEADER, index.getVersion()).build();
+    }
+
+    @POST
+    @Path("/recrawl")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String recrawl() {
+        try {
+            boolean changed = main.recrawl();
+            return "changed: " + Main.crawler.getNumberOfChangedSites()
+                    + ", unchanged: " + Main.crawler.getNumberOfUnchangedSites()
+                    + ", index updated: " + changed;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @PUT
+    @Path("/documents")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String updateDocument(@QueryParam("url") String url) {
+        try {
+            return main.updateDocument(url) ? "updated: " + url : "deleted: " + url;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @DELETE
+    @Path("/documents")
+    @Produces(MediaType.TEXT_PLAIN)
+    public String deleteDocument(@QueryParam("url") String url) {
+        return "deleted: " + main.deleteDocument(url);
+    }
+
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public String stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        Crawler crawler = Main.crawler;
+        if (crawler != null) {
+            PageFetcher fetcher = crawler.getFetcher();
+            stats.put("fetches", fetcher.getNumberOfFetches());
+            stats.put("failedFetches", fetcher.getNumberOfFailedFetches());
+            stats.put("averageFetchMillis", fetcher.getAverageFetchMillis());
+            stats.put("bytesTransferred", fetcher.getBytesTransferred());
+            stats.put("bytesDecoded", fetcher.getBytesDecoded());
+        }
+        IndexSnapshot index = Main.index.snapshot();
+        stats.put("indexVersion", index.getVersion());
+        stats.put("documents", index.getNumberOfDocuments());
+        stats.put("deletedDocuments", index.getNumberOfDeletedDocuments());
+        stats.put("segments", index.getSegments().size());
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        stats.put("lemmaDictionarySize", analyzer.getDictionary().size());
+        stats.put("lemmaDictionaryHits", analyzer.getDictionaryHits());
+        stats.put("lemmaDictionaryMisses", analyzer.getDictionaryMisses());
+        ResultCache resultCache = Main.resultCache;
+        if (resultCache != null) {
+            stats.put("resultCacheSize", resultCache.size());
+            stats.put("resultCacheCapacity", resultCache.getCapacity());
+            stats.put("resultCacheHits", resultCache.getHits());
+            stats.put("resultCacheMisses", resultCache.getMisses());
+            stats.put("resultCacheCoalesced", resultCache.getCoalesced());
+            stats.put("resultCacheEvictions", resultCache.getEvictions());
+            stats.put("resultCacheInvalidations", resultCache.getInvalidations());
+            stats.put("resultCacheHitRate", resultCache.getHitRate());
+        }
+        LemmaCache lemmaCache = analyzer.getLemmaCache();
+        if (lemmaCache != null) {
+            stats.put("lemmaCacheSize", lemmaCache.size());
+            stats.put("lemmaCacheCapacity", lemmaCache.getCapacity());
+            stats.put("lemmaCacheHits", lemmaCache.getHits());
+            stats.put("lemmaCacheMisses", lemmaCache.getMisses());
+            stats.put("lemmaCacheEvictions", lemmaCache.getEvictions());
+            stats.put("lemmaCacheHitRate", lemmaCache.getHitRate());
+        }
+        try {
+            return new ObjectMapper().writeValueAsString(stats);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
     }
 }
@@ -0,0 +1,80 @@
+package search;
+
+import java.util.Map;
+
+import org.jsoup.nodes.Document;
+
+/**
+ * Result of fetching a page with the {@link PageFetcher}.
+ */
+public class FetchResult {
+    private final int statusCode;
+    private final Map<String, String> headers;
+    private final Document document;
+    private final String contentHash;
+    private final byte[] body;
+
+    /**
+     * @param pStatusCode  http status code
+     * @param pHeaders     response headers, only the first value of each header
+     * @param pDocument    parsed body or null if the response had no body
+     * @param pContentHash hash of the decoded body or null if the response had no body
+     * @param pBody        decoded body if it was captured, otherwise null
+     */
+    public FetchResult(int pStatusCode, Map<String, String> pHeaders, Document pDocument, String pContentHash,
+                       byte[] pBody) {
+        this.statusCode = pStatusCode;
+        this.headers = pHeaders;
+        this.document = pDocument;
+        this.contentHash = pContentHash;
+        this.body = pBody;
+    }
+
+    /**
+     * @return http status code
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return response headers
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @param name name of the header, case insensitive
+     * @return first value of the header or null
+     */
+    public String getHeader(String name) {
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return parsed document or null
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * @return hex encoded SHA-256 hash of the decoded body or null
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    /**
+     * @return decoded body or null if it wasn't captured
+     */
+    public byte[] getBody() {
+        return body;
+    }
+}
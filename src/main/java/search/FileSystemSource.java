@@ -0,0 +1,167 @@
+package search;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Reads the websites straight from a directory tree laid out like the
+ * webserver, i.e. {@code <root>/<host>/<path>/index.html} is the page
+ * {@code http://<host>/<path>}. Alternative to the {@link Crawler} that needs
+ * neither the webserver nor the proxy.
+ * <p>
+ * Files are memory mapped and parsed in parallel. Links are resolved against
+ * the url of the page, just like for a crawled page.
+ */
+public class FileSystemSource implements WebsiteSource {
+    private static final Logger logger = Logger.getLogger(FileSystemSource.class.getName());
+    private final Path root;
+    private final AtomicInteger numberOfLinks = new AtomicInteger();
+    private final AtomicInteger numberOfSkippedSites = new AtomicInteger();
+    private int numberOfSites;
+    private ParallelAnalyzer analyzer = ParallelAnalyzer.common();
+
+    /**
+     * @param pRoot directory containing one directory per host
+     */
+    public FileSystemSource(Path pRoot) {
+        this.root = pRoot;
+    }
+
+    @Override
+    public List<WebsiteData> start() throws IOException {
+        List<WebsiteData> sites = new ArrayList<>();
+        crawl(sites::add);
+        return analyzer.analyze(sites);
+    }
+
+    /**
+     * parses all pages in parallel and hands them to the sink ordered by url
+     */
+    @Override
+    public void crawl(Consumer<WebsiteData> sink) throws IOException {
+        numberOfLinks.set(0);
+        numberOfSkippedSites.set(0);
+        List<Path> files = findPages();
+        numberOfSites = files.size();
+        try {
+            files.parallelStream()
+                    .map(this::read)
+                    .filter(Objects::nonNull)
+                    .forEachOrdered(sink);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @return all html files below the root, ordered by their url
+     * @throws IOException
+     */
+    private List<Path> findPages() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            List<Path> files = new ArrayList<>(paths
+                    .filter(path -> path.getFileName().toString().endsWith(".html"))
+                    .filter(path -> root.relativize(path).getNameCount() > 1)
+                    .filter(this::isVisible)
+                    .filter(Files::isRegularFile)
+                    .toList());
+            files.sort(Comparator.comparing(this::toUrl));
+            return Collections.unmodifiableList(files);
+        }
+    }
+
+    /**
+     * hidden directories like .well-known don't contain websites
+     */
+    private boolean isVisible(Path path) {
+        for (Path part : root.relativize(path)) {
+            if (part.toString().startsWith(".")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * maps a file to the url the webserver serves it under
+     *
+     * @param file html file below the root
+     * @return normalized url
+     */
+    String toUrl(Path file) {
+        Path relative = root.relativize(file);
+        StringBuilder url = new StringBuilder("http://").append(relative.getName(0));
+        for (int i = 1; i < relative.getNameCount(); i++) {
+            url.append('/').append(relative.getName(i));
+        }
+        return UrlNormalizer.normalize(url.toString());
+    }
+
+    /**
+     * memory maps a file and parses it
+     *
+     * @param file html file
+     * @return WebsiteData object or null if the page misses title, header or main
+     */
+    private WebsiteData read(Path file) {
+        String url = toUrl(file);
+        Document document;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            // charset is detected from the html, just like for a http response
+            document = Jsoup.parse(new ByteBufferInputStream(buffer), null, url);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        int links = document.select("a").size();
+        WebsiteData website = Crawler.parse(url, document, false);
+        if (website == null) {
+            numberOfSkippedSites.incrementAndGet();
+            logger.warning("Skipping " + file + ": title, header or main element missing");
+            return null;
+        }
+        numberOfLinks.addAndGet(links);
+        return website;
+    }
+
+    /**
+     * sets the analyzer the pages are tokenized with
+     *
+     * @param pAnalyzer analyzer {@link ParallelAnalyzer}
+     */
+    public void setAnalyzer(ParallelAnalyzer pAnalyzer) {
+        this.analyzer = pAnalyzer;
+    }
+
+    @Override
+    public int getNumberOfSites() {
+        return numberOfSites;
+    }
+
+    @Override
+    public int getNumberOfLinks() {
+        return numberOfLinks.get();
+    }
+
+    @Override
+    public int getNumberOfSkippedSites() {
+        return numberOfSkippedSites.get();
+    }
+}
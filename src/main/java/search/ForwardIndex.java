@@ -2,8 +2,6 @@ package search;
 
 import jakarta.enterprise.context.ApplicationScoped;
 
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -20,8 +18,8 @@ import java.util.TreeMap;
 public class ForwardIndex {
     private Map<String, WebsiteData> websiteDataMap = new TreeMap<>();
     private final double DAMPING_FACTOR = 0.85;
-    private static double min = 1;
-    private static double max = 0;
+    private double min = 1;
+    private double max = 0;
 
     /**
      * adds multiple entries to the forward index
@@ -45,39 +43,51 @@ public class ForwardIndex {
 
     /**
      * calculates all vectors from a given reverse index and adds them to the
-     * websiteData objects{@link WebsiteData}
+     * websiteData objects{@link WebsiteData}. The vectors are sparse, a
+     * document only gets components for the terms it contains.
      *
      * @param reverseIndex reverseIndex {@link ReverseIndex}
      */
-    public void calculateVector(Map<String, Map<String, Double>> reverseIndex) {
-        int counter = 0;
-        Map<String, double[]> vectorMap = new HashMap<>();
-        // initilizing the vectorMap with zeroes
-        for (String token : reverseIndex.keySet()) {
-            for (String document : reverseIndex.get(token).keySet()) {
-                if (!vectorMap.containsKey(document)) {
-                    double[] vector = new double[reverseIndex.keySet().size()];
-                    Arrays.fill(vector, 0.0);
-                    vectorMap.put(document, vector);
-                }
+    public void calculateVector(ReverseIndex reverseIndex) {
+        // counting the terms of every document to allocate its vector once
+        int[] sizes = new int[reverseIndex.getNumberOfDocuments()];
+        for (int termId = 0; termId < reverseIndex.getDimension(); termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            if (documents == null) {
+                continue;
             }
+            PostingsList.Cursor cursor = documents.cursor();
+            while (cursor.next()) {
+                sizes[cursor.docId()]++;
+            }
+        }
+        int[][] termIds = new int[sizes.length][];
+        float[][] weights = new float[sizes.length][];
+        for (int docId = 0; docId < sizes.length; docId++) {
+            termIds[docId] = new int[sizes[docId]];
+            weights[docId] = new float[sizes[docId]];
         }
 
-        // adding values to vector
-        for (String token : reverseIndex.keySet()) {
-            for (String document : reverseIndex.get(token).keySet()) {
-                double tfidf = reverseIndex.get(token).get(document);
-                // if vectormap contains the document, get the List/Vector and add the score for
-                // the token
-                vectorMap.get(document)[counter] = tfidf;
+        // adding values to vector, the term ids are visited in ascending order
+        int[] filled = new int[sizes.length];
+        for (int termId = 0; termId < reverseIndex.getDimension(); termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            if (documents == null) {
+                continue;
+            }
+            double idf = reverseIndex.getIdf(termId);
+            PostingsList.Cursor cursor = documents.cursor();
+            while (cursor.next()) {
+                int docId = cursor.docId();
+                termIds[docId][filled[docId]] = termId;
+                weights[docId][filled[docId]++] = (float) (cursor.weight() * idf);
             }
-            counter++;
         }
         // saving the vectors to the websiteData objects
-        for (String url : vectorMap.keySet()) {
-            websiteDataMap.get(url).setVector(normalize(vectorMap.get(url)));
+        for (int docId = 0; docId < sizes.length; docId++) {
+            websiteDataMap.get(reverseIndex.getUrl(docId))
+                    .setVector(new SparseVector(termIds[docId], weights[docId]).normalize());
         }
-
     }
 
     /***
@@ -106,17 +116,7 @@ public class ForwardIndex {
      * {@link PageGradingUtil}
      */
     public void calculatePageRankDamped() {
-        Map<String, Double> rankMap = PageGradingUtil.calculatePageRankDamped(websiteDataMap, DAMPING_FACTOR);
-        for (String url : rankMap.keySet()) {
-            double pageRank = rankMap.get(url);
-            if (pageRank > max) {
-                max = pageRank;
-            }
-            if (pageRank < min) {
-                min = pageRank;
-            }
-            websiteDataMap.get(url).setPageRank(pageRank);
-        }
+        setPageRanks(PageGradingUtil.calculatePageRankDamped(websiteDataMap, DAMPING_FACTOR));
     }
 
     /**
@@ -124,7 +124,17 @@ public class ForwardIndex {
      * {@link PageGradingUtil}
      */
     public void calculatePageRank() {
-        Map<String, Double> rankMap = PageGradingUtil.calculatePageRank(websiteDataMap);
+        setPageRanks(PageGradingUtil.calculatePageRank(websiteDataMap));
+    }
+
+    /**
+     * sets the pagerank of every website and the range of the pageranks
+     *
+     * @param rankMap map that maps the pagerank value to url
+     */
+    void setPageRanks(Map<String, Double> rankMap) {
+        min = 1;
+        max = 0;
         for (String url : rankMap.keySet()) {
             double pageRank = rankMap.get(url);
             if (pageRank > max) {
@@ -147,14 +157,14 @@ public class ForwardIndex {
     /**
      * @return minimum of alle Pageranks
      */
-    public static double getMin() {
+    public double getMin() {
         return min;
     }
 
     /**
      * @return maximum of alle Pageranks
      */
-    public static double getMax() {
+    public double getMax() {
         return max;
     }
 }
@@ -0,0 +1,325 @@
+package search;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Sorted terms of an index snapshot with a weight per term, front coded into
+ * a single char array. Terms are stored in blocks of {@value #BLOCK_SIZE},
+ * the first term of a block in full and every other term as the number of
+ * leading chars it shares with the previous term plus the rest of it. A
+ * lookup searches the first terms of the blocks binary and decodes a single
+ * block, so the terms starting with a prefix are a range of ordinals found
+ * without a String object per term.
+ */
+public final class FrontCodedTerms {
+    static final int BLOCK_SIZE = 16;
+    private final char[] data;
+    private final int[] blockOffsets;
+    // term id and weight by ordinal, the position of the term in sorted order
+    private final int[] termIds;
+    private final int[] weights;
+
+    private FrontCodedTerms(char[] pData, int[] pBlockOffsets, int[] pTermIds, int[] pWeights) {
+        this.data = pData;
+        this.blockOffsets = pBlockOffsets;
+        this.termIds = pTermIds;
+        this.weights = pWeights;
+    }
+
+    /**
+     * sorts and encodes the terms a live document contains, weighted by the
+     * number of documents containing them
+     *
+     * @param documentFrequency number of live documents containing a term by term id
+     * @return terms of the documents
+     */
+    public static FrontCodedTerms of(int[] documentFrequency) {
+        int[] termIds = sort(IntStream.range(0, documentFrequency.length)
+                .filter(termId -> documentFrequency[termId] > 0).toArray());
+        int[] weights = new int[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            weights[i] = documentFrequency[termIds[i]];
+        }
+        return of(termIds, weights);
+    }
+
+    /**
+     * @param termIds ids of terms {@link TermDictionary}
+     * @return the ids ordered by their terms
+     */
+    static int[] sort(int[] termIds) {
+        TermDictionary dictionary = TermDictionary.getInstance();
+        return Arrays.stream(termIds).boxed().sorted(Comparator.comparing(dictionary::getTerm))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @param termIds ids of distinct terms, sorted by their terms
+     * @param weights weight of every term
+     * @return encoded terms
+     */
+    static FrontCodedTerms of(int[] termIds, int[] weights) {
+        TermDictionary dictionary = TermDictionary.getInstance();
+        char[] data = new char[64];
+        int length = 0;
+        int[] blockOffsets = new int[(termIds.length + BLOCK_SIZE - 1) / BLOCK_SIZE];
+        String previous = "";
+        for (int i = 0; i < termIds.length; i++) {
+            String term = dictionary.getTerm(termIds[i]);
+            int shared = 0;
+            if (i % BLOCK_SIZE == 0) {
+                blockOffsets[i / BLOCK_SIZE] = length;
+            } else {
+                int max = Math.min(term.length(), previous.length());
+                while (shared < max && term.charAt(shared) == previous.charAt(shared)) {
+                    shared++;
+                }
+            }
+            if (length + term.length() + 2 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + term.length() + 2));
+            }
+            if (i % BLOCK_SIZE != 0) {
+                data[length++] = (char) shared;
+            }
+            data[length++] = (char) (term.length() - shared);
+            term.getChars(shared, term.length(), data, length);
+            length += term.length() - shared;
+            previous = term;
+        }
+        return new FrontCodedTerms(Arrays.copyOf(data, length), blockOffsets, termIds.clone(), weights.clone());
+    }
+
+    /**
+     * @return number of terms
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * @param ordinal position of a term in sorted order
+     * @return the term
+     */
+    public String getTerm(int ordinal) {
+        Cursor cursor = new Cursor(ordinal);
+        return new String(cursor.term, 0, cursor.length);
+    }
+
+    /**
+     * @param ordinal position of a term in sorted order
+     * @return id of the term {@link TermDictionary}
+     */
+    public int getTermId(int ordinal) {
+        return termIds[ordinal];
+    }
+
+    /**
+     * @param ordinal position of a term in sorted order
+     * @return weight of the term
+     */
+    public int getWeight(int ordinal) {
+        return weights[ordinal];
+    }
+
+    /**
+     * @param key any string
+     * @return ordinal of the first term that isn't smaller than the key, size if there is none
+     */
+    public int ceiling(String key) {
+        // last block whose first term isn't larger than the key
+        int low = 0;
+        int high = blockOffsets.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int offset = blockOffsets[middle];
+            if (compare(data, offset + 1, data[offset], key) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (high < 0) {
+            return 0;
+        }
+        Cursor cursor = new Cursor(high * BLOCK_SIZE);
+        while (compare(cursor.term, 0, cursor.length, key) < 0) {
+            if (!cursor.next()) {
+                return termIds.length;
+            }
+        }
+        return cursor.ordinal;
+    }
+
+    /**
+     * finds the terms with the highest weights that start with the prefix
+     *
+     * @param prefix start of the terms
+     * @param k      maximum number of terms
+     * @return terms ordered by weight, equal weights in sorted order
+     */
+    public List<String> complete(String prefix, int k) {
+        int from = ceiling(prefix);
+        int to = prefix.isEmpty() ? termIds.length : ceiling(successor(prefix));
+        // binary heap of ordinals with the worst of the best k at the root
+        int[] heap = new int[Math.min(k, to - from)];
+        int size = 0;
+        for (int ordinal = from; ordinal < to; ordinal++) {
+            if (size < heap.length) {
+                int child = size++;
+                while (child > 0 && isBetter(heap[(child - 1) / 2], ordinal)) {
+                    heap[child] = heap[(child - 1) / 2];
+                    child = (child - 1) / 2;
+                }
+                heap[child] = ordinal;
+            } else if (isBetter(ordinal, heap[0])) {
+                siftDown(heap, size, ordinal);
+            }
+        }
+        String[] best = new String[size];
+        for (int i = size - 1; i >= 0; i--) {
+            best[i] = getTerm(heap[0]);
+            siftDown(heap, i, heap[i]);
+        }
+        return List.of(best);
+    }
+
+    private void siftDown(int[] heap, int size, int ordinal) {
+        int parent = 0;
+        while (2 * parent + 1 < size) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && isBetter(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!isBetter(ordinal, heap[child])) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = ordinal;
+    }
+
+    private boolean isBetter(int ordinal, int other) {
+        return weights[ordinal] > weights[other] || weights[ordinal] == weights[other] && ordinal < other;
+    }
+
+    /**
+     * @return the smallest string larger than every string starting with the prefix
+     */
+    static String successor(String prefix) {
+        int end = prefix.length();
+        while (end > 0 && prefix.charAt(end - 1) == Character.MAX_VALUE) {
+            end--;
+        }
+        if (end == 0) {
+            // every string starting with the prefix is behind all terms
+            return String.valueOf(Character.MAX_VALUE).repeat(prefix.length() + 1);
+        }
+        return prefix.substring(0, end - 1) + (char) (prefix.charAt(end - 1) + 1);
+    }
+
+    private static int compare(char[] chars, int offset, int length, String key) {
+        int max = Math.min(length, key.length());
+        for (int i = 0; i < max; i++) {
+            int difference = chars[offset + i] - key.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return length - key.length();
+    }
+
+    /**
+     * @return number of bytes the terms, ids and weights take
+     */
+    public long getSizeInBytes() {
+        return (long) data.length * Character.BYTES
+                + (long) (blockOffsets.length + termIds.length + weights.length) * Integer.BYTES;
+    }
+
+    /**
+     * @param ordinal position of the first term to read
+     * @return cursor on the term, or after the last term if ordinal is size
+     */
+    public Cursor cursor(int ordinal) {
+        return new Cursor(ordinal);
+    }
+
+    /**
+     * Decodes the terms one after another into a reused buffer, starting at
+     * the block of the first term.
+     */
+    public final class Cursor {
+        private char[] term = new char[32];
+        private int length;
+        private int ordinal;
+        private int offset;
+
+        private Cursor(int pOrdinal) {
+            if (pOrdinal >= termIds.length) {
+                ordinal = termIds.length;
+                return;
+            }
+            int block = pOrdinal / BLOCK_SIZE;
+            ordinal = block * BLOCK_SIZE;
+            offset = blockOffsets[block];
+            read(0);
+            while (ordinal < pOrdinal) {
+                next();
+            }
+        }
+
+        /**
+         * moves to the next term
+         *
+         * @return false if there is no term left
+         */
+        public boolean next() {
+            if (ordinal + 1 >= termIds.length) {
+                ordinal = termIds.length;
+                return false;
+            }
+            ordinal++;
+            read(ordinal % BLOCK_SIZE == 0 ? 0 : data[offset++]);
+            return true;
+        }
+
+        /**
+         * @return ordinal of the current term, size once all terms are read
+         */
+        public int ordinal() {
+            return ordinal;
+        }
+
+        /**
+         * @return number of chars of the current term
+         */
+        public int length() {
+            return length;
+        }
+
+        /**
+         * @param index position of a char
+         * @return char of the current term
+         */
+        public char charAt(int index) {
+            return term[index];
+        }
+
+        /**
+         * keeps the shared chars of the previous term and appends the stored ones
+         */
+        private void read(int shared) {
+            int suffix = data[offset++];
+            if (shared + suffix > term.length) {
+                term = Arrays.copyOf(term, Math.max(term.length * 2, shared + suffix));
+            }
+            System.arraycopy(data, offset, term, shared, suffix);
+            offset += suffix;
+            length = shared + suffix;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package search;
+
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Crawl frontier. Keeps track of every url that was already found and holds the
+ * urls that still have to be crawled in a bounded queue. Urls are normalized
+ * with the {@link UrlNormalizer} before they are checked, so different spellings
+ * of a page are only crawled once. A url dropped because the queue is full
+ * is forgotten again, so it is crawled if it is found once more.
+ * <p>
+ * With a {@link BloomFilter} the counts are estimates: a new url the filter
+ * falsely reports as found is counted as a duplicate instead of a distinct
+ * url, see {@link #isApproximate()}.
+ */
+public class Frontier {
+    private static final double FALSE_POSITIVE_RATE = 0.001;
+    private final BlockingQueue<String> queue;
+    private final Set<String> seenUrls;
+    private final BloomFilter bloomFilter;
+    // urls the bloom filter can't forget, they are treated as not found
+    private final Set<String> droppedUrls = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger numberOfDistinctUrls = new AtomicInteger();
+    private final AtomicInteger numberOfDroppedUrls = new AtomicInteger();
+    private final AtomicInteger numberOfDuplicateUrls = new AtomicInteger();
+
+    /**
+     * creates a frontier that remembers found urls in a hash set
+     *
+     * @param pCapacity maximum number of urls waiting in the queue
+     */
+    public Frontier(int pCapacity) {
+        this(pCapacity, false, 0);
+    }
+
+    /**
+     * @param pCapacity     maximum number of urls waiting in the queue
+     * @param pBloomFilter  if true found urls are remembered in a {@link BloomFilter}
+     *                      instead of a hash set. Uses much less memory, but a small
+     *                      fraction of new urls is falsely treated as already found.
+     * @param pExpectedUrls number of urls the bloom filter is sized for
+     */
+    public Frontier(int pCapacity, boolean pBloomFilter, int pExpectedUrls) {
+        this.queue = new ArrayBlockingQueue<>(pCapacity);
+        this.seenUrls = pBloomFilter ? null : ConcurrentHashMap.newKeySet();
+        this.bloomFilter = pBloomFilter ? new BloomFilter(pExpectedUrls, FALSE_POSITIVE_RATE) : null;
+    }
+
+    /**
+     * normalizes a url and adds it to the queue if it hasn't been found before.
+     * When the queue is full the url is dropped and forgotten, so offering it
+     * again later adds it.
+     *
+     * @param url url to add
+     * @return true if the url was added to the queue
+     */
+    public boolean offer(String url) {
+        String normalizedUrl = UrlNormalizer.normalize(url);
+        if (normalizedUrl == null) {
+            return false;
+        }
+        if (!markSeen(normalizedUrl)) {
+            numberOfDuplicateUrls.incrementAndGet();
+            return false;
+        }
+        numberOfDistinctUrls.incrementAndGet();
+        if (!queue.offer(normalizedUrl)) {
+            unmarkSeen(normalizedUrl);
+            numberOfDistinctUrls.decrementAndGet();
+            numberOfDroppedUrls.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean markSeen(String normalizedUrl) {
+        if (bloomFilter != null) {
+            return bloomFilter.add(normalizedUrl) || droppedUrls.remove(normalizedUrl);
+        }
+        return seenUrls.add(normalizedUrl);
+    }
+
+    private void unmarkSeen(String normalizedUrl) {
+        if (bloomFilter != null) {
+            droppedUrls.add(normalizedUrl);
+        } else {
+            seenUrls.remove(normalizedUrl);
+        }
+    }
+
+    /**
+     * @return next url to crawl or null if the queue is empty
+     */
+    public String poll() {
+        return queue.poll();
+    }
+
+    /**
+     * waits until an url to crawl is available
+     *
+     * @return next url
+     * @throws InterruptedException
+     */
+    public String take() throws InterruptedException {
+        return queue.take();
+    }
+
+    /**
+     * waits for the next url to crawl
+     *
+     * @param timeout how long to wait
+     * @param unit    unit of timeout
+     * @return next url or null if none became available in time
+     * @throws InterruptedException
+     */
+    public String poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    /**
+     * forgets all found urls and empties the queue
+     */
+    public void clear() {
+        queue.clear();
+        if (bloomFilter != null) {
+            bloomFilter.clear();
+        } else {
+            seenUrls.clear();
+        }
+        droppedUrls.clear();
+        numberOfDistinctUrls.set(0);
+        numberOfDroppedUrls.set(0);
+        numberOfDuplicateUrls.set(0);
+    }
+
+    /**
+     * @return true if no url is waiting in the queue
+     */
+    public boolean isEmpty() {
+        return queue.isEmpty();
+    }
+
+    /**
+     * @return true if found urls are remembered in a bloom filter, so the
+     * numbers of distinct and duplicate urls are estimates
+     */
+    public boolean isApproximate() {
+        return bloomFilter != null;
+    }
+
+    /**
+     * @return number of distinct urls that were found, with a bloom filter a
+     * lower bound that misses the new urls it falsely reported as found
+     */
+    public int getNumberOfDistinctUrls() {
+        return numberOfDistinctUrls.get();
+    }
+
+    /**
+     * @return number of times an url was rejected because it was found
+     * before, with a bloom filter an upper bound that includes its false positives
+     */
+    public int getNumberOfDuplicateUrls() {
+        return numberOfDuplicateUrls.get();
+    }
+
+    /**
+     * @return number of times an url was dropped because the queue was full
+     */
+    public int getNumberOfDroppedUrls() {
+        return numberOfDroppedUrls.get();
+    }
+}
@@ -0,0 +1,128 @@
+package search;
+
+/**
+ * Postings of a {@link ReverseIndex} split into tiers by impact, the weight
+ * of a term in a document. The first tier of a term holds the documents with
+ * weights above half of its largest weight, the next one those above a
+ * quarter and so on, the last tier takes the rest. Within a tier the
+ * documents are ordered by doc id and stored as a {@link PostingsList}.
+ * <p>
+ * A query reads the tiers with the highest impacts first, see
+ * {@link ImpactSearcher}, so it can stop long before it has read all
+ * postings of terms most documents contain.
+ */
+public final class ImpactIndex {
+    static final int MAX_TIERS = 8;
+    private static final PostingsList[] NO_TIERS = new PostingsList[0];
+    private static final float[] NO_IMPACTS = new float[0];
+    // tiers by term id, ordered by descending impact
+    private final PostingsList[][] tiers;
+    // largest weight in each tier by term id
+    private final float[][] impacts;
+
+    private ImpactIndex(PostingsList[][] pTiers, float[][] pImpacts) {
+        this.tiers = pTiers;
+        this.impacts = pImpacts;
+    }
+
+    /**
+     * splits the postings of every term into tiers in one pass over them,
+     * their doc id order is kept within every tier
+     *
+     * @param reverseIndex reverse index {@link ReverseIndex}
+     * @return impact ordered copy of the postings
+     */
+    public static ImpactIndex of(ReverseIndex reverseIndex) {
+        PostingsList[][] tiers = new PostingsList[reverseIndex.getDimension()][];
+        float[][] impacts = new float[tiers.length][];
+        for (int termId = 0; termId < tiers.length; termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            if (documents == null) {
+                tiers[termId] = NO_TIERS;
+                impacts[termId] = NO_IMPACTS;
+                continue;
+            }
+            float max = 0;
+            PostingsList.Cursor cursor = documents.cursor();
+            while (cursor.next()) {
+                max = Math.max(max, cursor.weight());
+            }
+            PostingsList.Builder[] builders = new PostingsList.Builder[MAX_TIERS];
+            float[] tierImpacts = new float[MAX_TIERS];
+            int numberOfTiers = 0;
+            cursor = documents.cursor();
+            while (cursor.next()) {
+                int tier = tierOf(cursor.weight(), max);
+                if (builders[tier] == null) {
+                    builders[tier] = new PostingsList.Builder();
+                    numberOfTiers++;
+                }
+                builders[tier].add(cursor.docId(), cursor.weight());
+                tierImpacts[tier] = Math.max(tierImpacts[tier], cursor.weight());
+            }
+            // empty tiers are left out
+            tiers[termId] = new PostingsList[numberOfTiers];
+            impacts[termId] = new float[numberOfTiers];
+            int i = 0;
+            for (int tier = 0; tier < MAX_TIERS; tier++) {
+                if (builders[tier] != null) {
+                    tiers[termId][i] = builders[tier].build();
+                    impacts[termId][i++] = tierImpacts[tier];
+                }
+            }
+        }
+        return new ImpactIndex(tiers, impacts);
+    }
+
+    /**
+     * @return tier of a weight, the weights of tier i are at most max / 2^i
+     */
+    private static int tierOf(float weight, float max) {
+        int tier = 0;
+        float bound = max / 2;
+        while (tier < MAX_TIERS - 1 && weight <= bound) {
+            tier++;
+            bound /= 2;
+        }
+        return tier;
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return number of tiers of the term, 0 if no document contains it
+     */
+    public int getNumberOfTiers(int termId) {
+        return termId >= 0 && termId < tiers.length ? tiers[termId].length : 0;
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @param tier   number of the tier, 0 has the highest impacts
+     * @return documents of the tier ordered by doc id with their weights
+     */
+    public PostingsList getTier(int termId, int tier) {
+        return tiers[termId][tier];
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @param tier   number of the tier, 0 has the highest impacts
+     * @return largest weight in the tier
+     */
+    public float getImpact(int termId, int tier) {
+        return impacts[termId][tier];
+    }
+
+    /**
+     * @return size of all tiers in bytes
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (PostingsList[] termTiers : tiers) {
+            for (PostingsList tier : termTiers) {
+                size += tier.sizeInBytes();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,417 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds the k documents with the highest tfidf score, score at a time over
+ * the tiers of an {@link ImpactIndex}. The tier with the highest query weight
+ * times impact is read next and its weights are added to the accumulators of
+ * its documents. A document is in one tier of a term only, so the impacts of
+ * the next tiers of the terms it wasn't found for yet bound what it can still
+ * gain. Once the worst of the k best accumulators is ahead of what any other
+ * document can reach, no tier left can change the top k and the search
+ * stops. The k documents are scored exactly at the end, the weights of the
+ * terms they weren't found for are looked up in the tiers that weren't read.
+ * <p>
+ * The accumulators are kept for the documents found only, see
+ * {@link Accumulators}, so a query doesn't allocate anything of the size of
+ * a segment.
+ * <p>
+ * With a budget of postings the search may stop earlier, the result is then
+ * the best k by the weights read so far and marked as approximate, their
+ * scores only count the weights read.
+ *
+ * @see <a href="https://doi.org/10.1145/1148170.1148235">score at a time</a>
+ */
+final class ImpactSearcher {
+    // terms a document was found for are tracked in the bits of a long, the
+    // highest bit marks documents that were found at all
+    private static final int TRACKED_TERMS = Long.SIZE - 1;
+    private static final long FOUND = Long.MIN_VALUE;
+    private final IndexSnapshot index;
+    private final int[] termIds;
+    private final double[] queryWeights;
+    private final int k;
+    private final long maxPostings;
+    private long numberOfPostings;
+    private boolean exact = true;
+
+    /**
+     * @param pIndex        snapshot which is searched {@link IndexSnapshot}
+     * @param pTermIds      distinct ids of the query terms
+     * @param pQueryWeights weight of every query term
+     * @param pK            number of documents to find
+     * @param pMaxPostings  number of postings read per segment before the search stops, 0 for no limit
+     */
+    ImpactSearcher(IndexSnapshot pIndex, int[] pTermIds, double[] pQueryWeights, int pK, long pMaxPostings) {
+        if (pK < 1) {
+            throw new IllegalArgumentException("At least one document has to be searched for, k=" + pK);
+        }
+        this.index = pIndex;
+        this.termIds = pTermIds;
+        this.queryWeights = pQueryWeights;
+        this.k = pK;
+        this.maxPostings = pMaxPostings > 0 ? pMaxPostings : Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the best documents containing at least one query term, ordered {@link TopKSearcher#BY_SCORE}
+     */
+    List<TopKSearcher.Hit> search() {
+        List<TopKSearcher.Hit> hits = new ArrayList<>();
+        // the best k of every segment contain the best k of the snapshot
+        for (IndexSnapshot.Segment segment : index.getSegments()) {
+            searchSegment(segment, hits);
+        }
+        hits.sort(TopKSearcher.BY_SCORE);
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    /**
+     * @return false if the last search stopped at the budget before the top k were certain
+     */
+    boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * @return number of postings read by the last search
+     */
+    long getNumberOfPostings() {
+        return numberOfPostings;
+    }
+
+    private void searchSegment(IndexSnapshot.Segment segment, List<TopKSearcher.Hit> hits) {
+        ImpactIndex impacts = segment.getImpactIndex();
+        Accumulators accumulators = new Accumulators(termIds.length);
+        // bound of the next tier of every term, 0 once all of its tiers are read
+        double[] bounds = new double[termIds.length];
+        int numberOfLiveTouched = 0;
+        // next tier to read of every query term
+        int[] nextTier = new int[termIds.length];
+        long segmentPostings = 0;
+        double maxAccumulator = 0;
+        int[] best;
+        int[] ahead = new int[0];
+
+        while (true) {
+            // the tier with the highest bound is read next, the sum of all bounds is what a document can still gain
+            int term = -1;
+            double termBound = -1;
+            double remaining = 0;
+            for (int i = 0; i < termIds.length; i++) {
+                bounds[i] = 0;
+                if (nextTier[i] < impacts.getNumberOfTiers(termIds[i])) {
+                    bounds[i] = queryWeights[i] * impacts.getImpact(termIds[i], nextTier[i]);
+                    remaining += bounds[i];
+                    if (bounds[i] > termBound) {
+                        term = i;
+                        termBound = bounds[i];
+                    }
+                }
+            }
+            if (term < 0) {
+                best = selectBest(accumulators, null, accumulators.size(), segment);
+                break;
+            }
+            // only documents ahead of the documents not seen yet can be the top k
+            if (numberOfLiveTouched >= k && maxAccumulator > remaining) {
+                if (ahead.length < accumulators.size()) {
+                    ahead = new int[Math.max(accumulators.size(), 2 * ahead.length)];
+                }
+                int numberOfAhead = 0;
+                for (int slot = 0; slot < accumulators.size(); slot++) {
+                    if (accumulators.getScore(slot) > remaining + TopKSearcher.SLACK
+                            && segment.isLive(accumulators.getDocId(slot))) {
+                        ahead[numberOfAhead++] = slot;
+                    }
+                }
+                if (numberOfAhead >= k) {
+                    best = selectBest(accumulators, ahead, numberOfAhead, segment);
+                    if (isDecided(best, accumulators, segment, bounds, remaining)) {
+                        break;
+                    }
+                }
+            }
+            if (segmentPostings >= maxPostings) {
+                exact = false;
+                best = selectBest(accumulators, null, accumulators.size(), segment);
+                break;
+            }
+
+            PostingsList.Cursor cursor = impacts.getTier(termIds[term], nextTier[term]++).cursor();
+            long termBit = term < TRACKED_TERMS ? FOUND | 1L << term : FOUND;
+            while (cursor.next()) {
+                int slot = accumulators.slot(cursor.docId());
+                if (accumulators.getFoundTerms(slot) == 0 && segment.isLive(cursor.docId())) {
+                    numberOfLiveTouched++;
+                }
+                accumulators.add(slot, term, termBit, queryWeights[term], cursor.weight());
+                maxAccumulator = Math.max(maxAccumulator, accumulators.getScore(slot));
+                segmentPostings++;
+            }
+        }
+        numberOfPostings += segmentPostings;
+        if (exact) {
+            addUnreadWeights(best, accumulators, impacts, nextTier);
+        }
+        for (int slot : best) {
+            int docId = accumulators.getDocId(slot);
+            hits.add(new TopKSearcher.Hit(segment.getReverseIndex().getUrl(docId),
+                    accumulators.getExactScore(slot, queryWeights)));
+        }
+    }
+
+    /**
+     * looks up the weights the best documents have in the tiers that weren't
+     * read, so they are scored over all query terms. The tiers are walked
+     * once per term in doc id order of the documents that miss the term.
+     */
+    private void addUnreadWeights(int[] best, Accumulators accumulators, ImpactIndex impacts, int[] nextTier) {
+        long[] missing = new long[best.length];
+        for (int term = 0; term < termIds.length; term++) {
+            int numberOfMissing = 0;
+            for (int slot : best) {
+                if (accumulators.getWeight(slot, term) == 0) {
+                    // doc id in the high bits, so sorting orders the slots by doc id
+                    missing[numberOfMissing++] = (long) accumulators.getDocId(slot) << 32 | slot;
+                }
+            }
+            if (numberOfMissing == 0) {
+                continue;
+            }
+            Arrays.sort(missing, 0, numberOfMissing);
+            for (int tier = nextTier[term]; tier < impacts.getNumberOfTiers(termIds[term]); tier++) {
+                PostingsList.Cursor cursor = impacts.getTier(termIds[term], tier).cursor();
+                for (int i = 0; i < numberOfMissing; i++) {
+                    int docId = (int) (missing[i] >>> 32);
+                    if (!cursor.advance(docId)) {
+                        break;
+                    }
+                    if (cursor.docId() == docId) {
+                        accumulators.setWeight((int) missing[i], term, cursor.weight());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param slots slots to select from, null for all slots
+     * @return slots of the k live documents with the highest accumulators,
+     * equal accumulators by doc id
+     */
+    private int[] selectBest(Accumulators accumulators, int[] slots, int numberOfSlots,
+                             IndexSnapshot.Segment segment) {
+        // binary heap of slots with the worst document at the root
+        int[] heap = new int[Math.min(k, numberOfSlots)];
+        int size = 0;
+        for (int i = 0; i < numberOfSlots; i++) {
+            int slot = slots == null ? i : slots[i];
+            if (!segment.isLive(accumulators.getDocId(slot))) {
+                continue;
+            }
+            if (size < heap.length) {
+                int child = size++;
+                while (child > 0 && isBetter(heap[(child - 1) / 2], slot, accumulators)) {
+                    heap[child] = heap[(child - 1) / 2];
+                    child = (child - 1) / 2;
+                }
+                heap[child] = slot;
+            } else if (isBetter(slot, heap[0], accumulators)) {
+                siftDown(heap, size, slot, accumulators);
+            }
+        }
+        // takes the worst document out of the heap until it is empty
+        int[] best = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            best[i] = heap[0];
+            siftDown(heap, i, heap[i], accumulators);
+        }
+        return best;
+    }
+
+    /**
+     * puts a slot at the root of the heap and moves it down to its place
+     */
+    private static void siftDown(int[] heap, int size, int slot, Accumulators accumulators) {
+        int parent = 0;
+        while (2 * parent + 1 < size) {
+            int child = 2 * parent + 1;
+            if (child + 1 < size && isBetter(heap[child], heap[child + 1], accumulators)) {
+                child++;
+            }
+            if (!isBetter(slot, heap[child], accumulators)) {
+                break;
+            }
+            heap[parent] = heap[child];
+            parent = child;
+        }
+        heap[parent] = slot;
+    }
+
+    private static boolean isBetter(int slot, int other, Accumulators accumulators) {
+        double score = accumulators.getScore(slot);
+        double otherScore = accumulators.getScore(other);
+        return score > otherScore || score == otherScore && accumulators.getDocId(slot) < accumulators.getDocId(other);
+    }
+
+    /**
+     * the top k are decided if the worst of them is ahead of every other
+     * document, even if that one still gains the bounds of all terms it wasn't
+     * found for. Documents not seen yet can gain the whole remaining bound.
+     */
+    private boolean isDecided(int[] best, Accumulators accumulators, IndexSnapshot.Segment segment, double[] bounds,
+                              double remaining) {
+        int worst = best[best.length - 1];
+        double worstScore = accumulators.getScore(worst);
+        if (worstScore <= remaining + TopKSearcher.SLACK) {
+            return false;
+        }
+        for (int slot = 0; slot < accumulators.size(); slot++) {
+            double score = accumulators.getScore(slot);
+            // every document that isn't better than the worst of the top k is outside of them
+            if (slot == worst || isBetter(slot, worst, accumulators) || !segment.isLive(accumulators.getDocId(slot))
+                    || score + remaining + TopKSearcher.SLACK < worstScore) {
+                continue;
+            }
+            double reachable = score;
+            long foundTerms = accumulators.getFoundTerms(slot);
+            for (int term = 0; term < termIds.length; term++) {
+                if (term >= TRACKED_TERMS || (foundTerms & 1L << term) == 0) {
+                    reachable += bounds[term];
+                }
+            }
+            // a document that can't gain anything more has its final score and is behind the worst already
+            if (reachable != score && reachable + TopKSearcher.SLACK >= worstScore) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Accumulators of the documents a segment search found so far, kept in
+     * slots in the order the documents were found. An open addressing table
+     * maps doc ids to slots, so the memory grows with the number of documents
+     * found instead of the number of documents in the segment. Every slot
+     * also keeps the weight of each query term read from the postings, the
+     * exact score is summed from them in query term order.
+     */
+    private static final class Accumulators {
+        private final int numberOfTerms;
+        // slot + 1 by hash of the doc id, 0 for free entries
+        private int[] table = new int[64];
+        private int[] docIds = new int[16];
+        private double[] scores = new double[16];
+        private long[] foundTerms = new long[16];
+        private float[] weights;
+        private int size;
+
+        Accumulators(int pNumberOfTerms) {
+            this.numberOfTerms = pNumberOfTerms;
+            this.weights = new float[docIds.length * pNumberOfTerms];
+        }
+
+        /**
+         * @return slot of a document, a new slot with no terms found if the document wasn't found before
+         */
+        int slot(int docId) {
+            int mask = table.length - 1;
+            // multiplying by an odd number spreads neighbouring doc ids without collisions
+            int i = docId * 0x9E3779B9 & mask;
+            while (table[i] != 0) {
+                if (docIds[table[i] - 1] == docId) {
+                    return table[i] - 1;
+                }
+                i = i + 1 & mask;
+            }
+            if (size == docIds.length) {
+                docIds = Arrays.copyOf(docIds, 2 * size);
+                scores = Arrays.copyOf(scores, 2 * size);
+                foundTerms = Arrays.copyOf(foundTerms, 2 * size);
+                weights = Arrays.copyOf(weights, 2 * size * numberOfTerms);
+            }
+            docIds[size] = docId;
+            table[i] = ++size;
+            if (2 * size > table.length) {
+                rehash();
+            }
+            return size - 1;
+        }
+
+        private void rehash() {
+            table = new int[2 * table.length];
+            int mask = table.length - 1;
+            for (int slot = 0; slot < size; slot++) {
+                int i = docIds[slot] * 0x9E3779B9 & mask;
+                while (table[i] != 0) {
+                    i = i + 1 & mask;
+                }
+                table[i] = slot + 1;
+            }
+        }
+
+        /**
+         * adds the weight of a term read from a tier
+         */
+        void add(int slot, int term, long termBit, double queryWeight, float weight) {
+            scores[slot] += queryWeight * weight;
+            foundTerms[slot] |= termBit;
+            weights[slot * numberOfTerms + term] = weight;
+        }
+
+        /**
+         * @return number of slots, every document found has one of the slots below
+         */
+        int size() {
+            return size;
+        }
+
+        int getDocId(int slot) {
+            return docIds[slot];
+        }
+
+        /**
+         * @return sum of the query weights times the weights read so far
+         */
+        double getScore(int slot) {
+            return scores[slot];
+        }
+
+        /**
+         * @return bits of the terms the document was found for, 0 if it wasn't found
+         */
+        long getFoundTerms(int slot) {
+            return foundTerms[slot];
+        }
+
+        /**
+         * @return weight of a term in the document, 0 if it wasn't read
+         */
+        float getWeight(int slot, int term) {
+            return weights[slot * numberOfTerms + term];
+        }
+
+        void setWeight(int slot, int term, float weight) {
+            weights[slot * numberOfTerms + term] = weight;
+        }
+
+        /**
+         * @return sum of the query weights times the weights of the document,
+         * in query term order like {@link TopKSearcher}
+         */
+        double getExactScore(int slot, double[] queryWeights) {
+            double score = 0;
+            for (int term = 0; term < numberOfTerms; term++) {
+                float weight = weights[slot * numberOfTerms + term];
+                if (weight > 0) {
+                    score += queryWeights[term] * weight;
+                }
+            }
+            return score;
+        }
+    }
+}
@@ -0,0 +1,553 @@
+package search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary file holding a complete index, so a restart can serve searches
+ * without crawling and analyzing the pages again.
+ * <p>
+ * The file starts with a header: a magic number, the format version, the
+ * number of documents and terms and a table with the offset, length and
+ * CRC32 checksum of every section, followed by the checksum of the header
+ * itself. The sections are
+ * <ol>
+ * <li>the terms by term id</li>
+ * <li>the postings: a directory with the position of every list followed by
+ * the varint encoded doc ids and the float tf scores</li>
+ * <li>the normalized document vectors: a table with the position of every
+ * vector followed by the vectors by doc id</li>
+ * <li>the pagerank by doc id</li>
+ * <li>the stored fields: a table with the position of every document
+ * followed by url, title, header, body, links and term ids by doc id</li>
+ * </ol>
+ * The file is opened with {@link FileChannel#map}. The postings lists are
+ * views of the mapped file, so they stay off the heap and are paged in by the
+ * operating system when a query reads them. Opening only decodes the urls,
+ * the other stored fields and the vectors of a document are decoded when they
+ * are first used, e.g. when the document is part of a result.
+ * <p>
+ * The header and the small sections are checked against their checksums
+ * when the file is opened. The postings, vectors and stored fields make up
+ * almost the whole file, checking them would read every page of it, so they
+ * are checked by {@link #verify()}, which the caller can run in the
+ * background. A damaged file is rejected with an {@link IOException} so the
+ * caller can rebuild the index.
+ */
+public final class IndexSegment {
+    static final int MAGIC = 0x53494458;
+    static final int VERSION = 3;
+    private static final int TERMS = 0;
+    private static final int POSTINGS = 1;
+    private static final int VECTORS = 2;
+    private static final int PAGE_RANKS = 3;
+    private static final int STORED_FIELDS = 4;
+    private static final int NUMBER_OF_SECTIONS = 5;
+    // magic, version, documents, terms, per section offset, length and checksum, header checksum
+    private static final int HEADER_SIZE = 4 * Integer.BYTES + NUMBER_OF_SECTIONS * (2 * Long.BYTES + Integer.BYTES)
+            + Integer.BYTES;
+    // bytes of a postings directory entry: documents, doc ids offset, doc ids length, weights offset
+    private static final int DIRECTORY_ENTRY_SIZE = 4 * Integer.BYTES;
+
+    // sections checked by verify, the others are checked when the file is opened
+    private static final int[] LARGE_SECTIONS = {POSTINGS, VECTORS, STORED_FIELDS};
+
+    private final Path path;
+    private final MappedByteBuffer file;
+    private final ForwardIndex forwardIndex;
+    private final ReverseIndex reverseIndex;
+
+    private IndexSegment(Path pPath, MappedByteBuffer pFile, ForwardIndex pForwardIndex,
+                         ReverseIndex pReverseIndex) {
+        this.path = pPath;
+        this.file = pFile;
+        this.forwardIndex = pForwardIndex;
+        this.reverseIndex = pReverseIndex;
+    }
+
+    /**
+     * writes an index whose vectors and pageranks are calculated. The file is
+     * written next to the target and moved over it when it is complete, so a
+     * crash while writing leaves the previous file intact.
+     *
+     * @param path         path of the index file
+     * @param forwardIndex forward index {@link ForwardIndex}
+     * @param reverseIndex reverse index built from the forward index {@link ReverseIndex}
+     * @throws IOException
+     */
+    public static void write(Path path, ForwardIndex forwardIndex, ReverseIndex reverseIndex) throws IOException {
+        Map<String, WebsiteData> websites = forwardIndex.getForwardIndex();
+        int numberOfDocuments = reverseIndex.getNumberOfDocuments();
+        int dimension = reverseIndex.getDimension();
+        WebsiteData[] documents = new WebsiteData[numberOfDocuments];
+        for (int docId = 0; docId < numberOfDocuments; docId++) {
+            documents[docId] = websites.get(reverseIndex.getUrl(docId));
+        }
+
+        byte[][] sections = new byte[NUMBER_OF_SECTIONS][];
+        sections[TERMS] = writeTerms(dimension);
+        sections[POSTINGS] = writePostings(reverseIndex);
+        sections[VECTORS] = writeVectors(documents);
+        sections[PAGE_RANKS] = writePageRanks(documents);
+        sections[STORED_FIELDS] = writeStoredFields(documents);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                .putInt(MAGIC)
+                .putInt(VERSION)
+                .putInt(numberOfDocuments)
+                .putInt(dimension);
+        long offset = align(HEADER_SIZE);
+        for (byte[] section : sections) {
+            CRC32 crc = new CRC32();
+            crc.update(section);
+            header.putLong(offset).putLong(section.length).putInt((int) crc.getValue());
+            offset = align(offset + section.length);
+        }
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(header.array(), 0, header.position());
+        header.putInt((int) headerCrc.getValue()).flip();
+
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            offset = align(HEADER_SIZE);
+            for (byte[] section : sections) {
+                writeFully(channel, ByteBuffer.wrap(section), offset);
+                offset = align(offset + section.length);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * maps an index file and checks its header and the checksums of its small
+     * sections. The terms of the file are added to the {@link TermDictionary},
+     * if the dictionary already gave them other ids, postings, vectors and
+     * term ids of the documents are translated to the ids of the dictionary.
+     *
+     * @param path path of the index file
+     * @return the index, its vectors and pageranks are already calculated
+     * @throws IOException if the file can't be read, has another version or is damaged
+     */
+    public static IndexSegment open(Path path) throws IOException {
+        MappedByteBuffer file;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is not an index segment");
+            }
+            // the mapping stays valid after the channel is closed
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (file.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not an index segment");
+        }
+        int version = file.getInt(Integer.BYTES);
+        if (version != VERSION) {
+            throw new IOException("Unsupported index segment version " + version);
+        }
+        CRC32 headerCrc = new CRC32();
+        headerCrc.update(file.slice(0, HEADER_SIZE - Integer.BYTES));
+        if ((int) headerCrc.getValue() != file.getInt(HEADER_SIZE - Integer.BYTES)) {
+            throw new IOException("Wrong header checksum in " + path);
+        }
+        int numberOfDocuments = file.getInt(2 * Integer.BYTES);
+        int dimension = file.getInt(3 * Integer.BYTES);
+
+        ByteBuffer[] sections = new ByteBuffer[NUMBER_OF_SECTIONS];
+        for (int i = 0; i < NUMBER_OF_SECTIONS; i++) {
+            sections[i] = section(file, i, path);
+        }
+        verify(file, sections[TERMS], TERMS, path);
+        verify(file, sections[PAGE_RANKS], PAGE_RANKS, path);
+
+        try {
+            int[] termIds = readTerms(sections[TERMS], dimension);
+            String[] urls = new String[numberOfDocuments];
+            List<WebsiteData> documents = readStoredFields(sections[STORED_FIELDS], sections[VECTORS], urls, termIds);
+            double[] pageRanks = new double[numberOfDocuments];
+            sections[PAGE_RANKS].asDoubleBuffer().get(pageRanks);
+            Map<String, Double> rankMap = new HashMap<>();
+            for (int docId = 0; docId < numberOfDocuments; docId++) {
+                rankMap.put(urls[docId], pageRanks[docId]);
+            }
+
+            ForwardIndex forwardIndex = new ForwardIndex();
+            forwardIndex.addEntries(documents);
+            forwardIndex.setPageRanks(rankMap);
+            ReverseIndex reverseIndex = new ReverseIndex(readPostings(sections[POSTINGS], termIds), urls);
+            return new IndexSegment(path, file, forwardIndex, reverseIndex);
+        } catch (RuntimeException e) {
+            // a section with a valid checksum but inconsistent content, e.g. written by a buggy build
+            throw new IOException("Damaged index segment " + path, e);
+        }
+    }
+
+    /**
+     * checks the postings, vectors and stored fields against their checksums.
+     * Reads the whole file, so it should run in the background after the
+     * index is published.
+     *
+     * @throws IOException if one of the sections is damaged
+     */
+    public void verify() throws IOException {
+        for (int i : LARGE_SECTIONS) {
+            verify(file, section(file, i, path), i, path);
+        }
+    }
+
+    /**
+     * @return view of a section, its position is checked against the size of the file
+     */
+    private static ByteBuffer section(MappedByteBuffer file, int section, Path path) throws IOException {
+        int entry = 4 * Integer.BYTES + section * (2 * Long.BYTES + Integer.BYTES);
+        long offset = file.getLong(entry);
+        long length = file.getLong(entry + Long.BYTES);
+        if (offset < HEADER_SIZE || length < 0 || offset + length > file.capacity()) {
+            throw new IOException("Section " + section + " lies outside of " + path);
+        }
+        return file.slice((int) offset, (int) length);
+    }
+
+    private static void verify(MappedByteBuffer file, ByteBuffer content, int section, Path path) throws IOException {
+        int entry = 4 * Integer.BYTES + section * (2 * Long.BYTES + Integer.BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(content.duplicate());
+        if ((int) crc.getValue() != file.getInt(entry + 2 * Long.BYTES)) {
+            throw new IOException("Wrong checksum of section " + section + " in " + path);
+        }
+    }
+
+    /**
+     * @return forward index with vectors and pageranks
+     */
+    public ForwardIndex getForwardIndex() {
+        return forwardIndex;
+    }
+
+    /**
+     * @return reverse index whose postings are views of the mapped file
+     */
+    public ReverseIndex getReverseIndex() {
+        return reverseIndex;
+    }
+
+    /**
+     * @return size of the mapped file
+     */
+    public long getSizeInBytes() {
+        return file.capacity();
+    }
+
+    private static byte[] writeTerms(int dimension) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        TermDictionary dictionary = TermDictionary.getInstance();
+        for (int termId = 0; termId < dimension; termId++) {
+            writeString(out, dictionary.getTerm(termId));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @return ids the terms of the file have in the {@link TermDictionary}, by term id of the file
+     */
+    private static int[] readTerms(ByteBuffer section, int dimension) {
+        TermDictionary dictionary = TermDictionary.getInstance();
+        int[] termIds = new int[dimension];
+        for (int termId = 0; termId < dimension; termId++) {
+            termIds[termId] = dictionary.getId(readString(section));
+        }
+        return termIds;
+    }
+
+    private static byte[] writePostings(ReverseIndex reverseIndex) throws IOException {
+        int dimension = reverseIndex.getDimension();
+        ByteArrayOutputStream docIds = new ByteArrayOutputStream();
+        ByteArrayOutputStream weights = new ByteArrayOutputStream();
+        DataOutputStream weightsOut = new DataOutputStream(weights);
+        ByteBuffer directory = ByteBuffer.allocate(dimension * DIRECTORY_ENTRY_SIZE);
+        for (int termId = 0; termId < dimension; termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            if (documents == null) {
+                directory.putInt(0).putInt(0).putInt(0).putInt(0);
+                continue;
+            }
+            ByteBuffer encodedDocIds = documents.getDocIds();
+            FloatBuffer documentWeights = documents.getWeights();
+            directory.putInt(documents.size())
+                    .putInt(docIds.size())
+                    .putInt(encodedDocIds.remaining())
+                    .putInt(weights.size());
+            byte[] encoded = new byte[encodedDocIds.remaining()];
+            encodedDocIds.get(encoded);
+            docIds.write(encoded);
+            while (documentWeights.hasRemaining()) {
+                weightsOut.writeFloat(documentWeights.get());
+            }
+        }
+        weightsOut.flush();
+
+        // the weights follow the doc ids at a position divisible by the size of a float
+        int weightsStart = directory.capacity() + (int) align(docIds.size());
+        ByteBuffer section = ByteBuffer.allocate(weightsStart + weights.size());
+        section.put(directory.array());
+        section.put(docIds.toByteArray());
+        section.position(weightsStart);
+        section.put(weights.toByteArray());
+        return section.array();
+    }
+
+    private static PostingsList[] readPostings(ByteBuffer section, int[] termIds) {
+        int dimension = termIds.length;
+        int docIdsStart = dimension * DIRECTORY_ENTRY_SIZE;
+        int maxDocIdsEnd = docIdsStart;
+        for (int termId = 0; termId < dimension; termId++) {
+            int entry = termId * DIRECTORY_ENTRY_SIZE;
+            maxDocIdsEnd = Math.max(maxDocIdsEnd,
+                    docIdsStart + section.getInt(entry + Integer.BYTES) + section.getInt(entry + 2 * Integer.BYTES));
+        }
+        int weightsStart = docIdsStart + (int) align(maxDocIdsEnd - docIdsStart);
+
+        PostingsList[] postings = new PostingsList[TermDictionary.getInstance().size()];
+        for (int termId = 0; termId < dimension; termId++) {
+            int entry = termId * DIRECTORY_ENTRY_SIZE;
+            int size = section.getInt(entry);
+            if (size == 0) {
+                continue;
+            }
+            ByteBuffer docIds = section.slice(docIdsStart + section.getInt(entry + Integer.BYTES),
+                    section.getInt(entry + 2 * Integer.BYTES));
+            FloatBuffer weights = section.slice(weightsStart + section.getInt(entry + 3 * Integer.BYTES),
+                    size * Float.BYTES).asFloatBuffer();
+            postings[termIds[termId]] = new PostingsList(docIds, weights);
+        }
+        return postings;
+    }
+
+    private static byte[] writeVectors(WebsiteData[] documents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] offsets = new int[documents.length];
+        for (int docId = 0; docId < documents.length; docId++) {
+            offsets[docId] = out.size();
+            SparseVector vector = documents[docId].getVector();
+            int size = vector == null ? 0 : vector.size();
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(vector.getTermId(i));
+            }
+            for (int i = 0; i < size; i++) {
+                out.writeFloat(vector.getWeight(i));
+            }
+        }
+        out.flush();
+        return withOffsets(offsets, bytes);
+    }
+
+    /**
+     * decodes the vector of a document
+     *
+     * @param section vectors section
+     * @param docId   id of the document
+     * @param termIds ids the terms of the file have in the {@link TermDictionary}
+     * @return vector with the ids of the dictionary
+     */
+    private static SparseVector readVector(ByteBuffer section, int docId, int[] termIds) {
+        ByteBuffer in = document(section, docId);
+        int size = in.getInt();
+        long[] components = new long[size];
+        int[] ids = new int[size];
+        float[] weights = new float[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            ids[i] = termIds[in.getInt()];
+            sorted &= i == 0 || ids[i] > ids[i - 1];
+        }
+        for (int i = 0; i < size; i++) {
+            weights[i] = in.getFloat();
+        }
+        if (!sorted) {
+            // the dictionary gave the terms other ids, the components are sorted by the new ones
+            for (int i = 0; i < size; i++) {
+                components[i] = (long) ids[i] << 32 | Float.floatToRawIntBits(weights[i]) & 0xffffffffL;
+            }
+            Arrays.sort(components);
+            for (int i = 0; i < size; i++) {
+                ids[i] = (int) (components[i] >>> 32);
+                weights[i] = Float.intBitsToFloat((int) components[i]);
+            }
+        }
+        return new SparseVector(ids, weights);
+    }
+
+    private static byte[] writePageRanks(WebsiteData[] documents) {
+        ByteBuffer pageRanks = ByteBuffer.allocate(documents.length * Double.BYTES);
+        for (WebsiteData website : documents) {
+            pageRanks.putDouble(website.getPageRank());
+        }
+        return pageRanks.array();
+    }
+
+    private static byte[] writeStoredFields(WebsiteData[] documents) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] offsets = new int[documents.length];
+        for (int docId = 0; docId < documents.length; docId++) {
+            WebsiteData website = documents[docId];
+            offsets[docId] = out.size();
+            writeString(out, website.url);
+            writeString(out, website.getTitle());
+            writeString(out, website.getHeader());
+            writeString(out, website.getBody());
+            List<String> links = website.getOutgoingLinks();
+            out.writeInt(links.size());
+            for (String link : links) {
+                writeString(out, link);
+            }
+            int[] terms = website.getTerms();
+            out.writeInt(terms.length);
+            for (int termId : terms) {
+                out.writeInt(termId);
+            }
+        }
+        out.flush();
+        return withOffsets(offsets, bytes);
+    }
+
+    /**
+     * reads the urls and creates documents whose other fields are decoded on first use
+     */
+    private static List<WebsiteData> readStoredFields(ByteBuffer section, ByteBuffer vectors, String[] urls,
+                                                      int[] termIds) {
+        List<WebsiteData> documents = new ArrayList<>(urls.length);
+        for (int docId = 0; docId < urls.length; docId++) {
+            urls[docId] = readString(document(section, docId));
+            documents.add(new WebsiteData(urls[docId], new StoredDocument(section, vectors, docId, termIds)));
+        }
+        return documents;
+    }
+
+    /**
+     * @return table with the position of every document followed by the documents
+     */
+    private static byte[] withOffsets(int[] offsets, ByteArrayOutputStream documents) {
+        int tableSize = offsets.length * Integer.BYTES;
+        ByteBuffer section = ByteBuffer.allocate(tableSize + documents.size());
+        for (int offset : offsets) {
+            section.putInt(tableSize + offset);
+        }
+        section.put(documents.toByteArray());
+        return section.array();
+    }
+
+    /**
+     * @return view of a section positioned at the start of a document, views are not shared between threads
+     */
+    private static ByteBuffer document(ByteBuffer section, int docId) {
+        return section.duplicate().position(section.getInt(docId * Integer.BYTES));
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * @return the next position divisible by 8 from position
+     */
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+    /**
+     * fields of a document that stay in the mapped file until they are used
+     */
+    private static final class StoredDocument implements WebsiteData.Stored {
+        private final ByteBuffer storedFields;
+        private final ByteBuffer vectors;
+        private final int docId;
+        private final int[] termIds;
+
+        StoredDocument(ByteBuffer pStoredFields, ByteBuffer pVectors, int pDocId, int[] pTermIds) {
+            this.storedFields = pStoredFields;
+            this.vectors = pVectors;
+            this.docId = pDocId;
+            this.termIds = pTermIds;
+        }
+
+        @Override
+        public WebsiteData.Content content() {
+            ByteBuffer in = document(storedFields, docId);
+            readString(in);
+            String title = readString(in);
+            String header = readString(in);
+            String body = readString(in);
+            int numberOfLinks = in.getInt();
+            List<String> links = new ArrayList<>(numberOfLinks);
+            for (int i = 0; i < numberOfLinks; i++) {
+                links.add(readString(in));
+            }
+            return new WebsiteData.Content(title, header, body, links);
+        }
+
+        @Override
+        public int[] terms() {
+            ByteBuffer in = document(storedFields, docId);
+            // url, title, header and body, then the links
+            for (int i = 0; i < 4; i++) {
+                skipString(in);
+            }
+            int numberOfLinks = in.getInt();
+            for (int i = 0; i < numberOfLinks; i++) {
+                skipString(in);
+            }
+            int[] terms = new int[in.getInt()];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = termIds[in.getInt()];
+            }
+            return terms;
+        }
+
+        @Override
+        public SparseVector vector() {
+            return readVector(vectors, docId, termIds);
+        }
+    }
+}
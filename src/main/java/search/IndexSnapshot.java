@@ -0,0 +1,435 @@
+package search;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable state of the index at one point in time. A query takes the
+ * current snapshot once and reads only from it, so it sees the same documents
+ * and statistics from start to end while the {@link SegmentedIndex} publishes
+ * newer snapshots. Segments are shared between snapshots, a change creates
+ * new segment objects instead of modifying the old ones.
+ */
+public final class IndexSnapshot {
+    private final long version;
+    private final List<Segment> segments;
+    private final int[] documentFrequency;
+    private final int numberOfDocuments;
+    private final double minPageRank;
+    private final double maxPageRank;
+    private final FrontCodedTerms sortedTerms;
+
+    /**
+     * @param pVersion           increases with every published snapshot
+     * @param pSegments          segments, not changed afterwards
+     * @param pDocumentFrequency number of live documents containing a term by term id, not changed afterwards
+     * @param pSortedTerms       terms with a document frequency above 0 {@link FrontCodedTerms}
+     * @param pMinPageRank       lowest pagerank of the last full build
+     * @param pMaxPageRank       highest pagerank of the last full build
+     */
+    IndexSnapshot(long pVersion, List<Segment> pSegments, int[] pDocumentFrequency, FrontCodedTerms pSortedTerms,
+                  double pMinPageRank, double pMaxPageRank) {
+        this.version = pVersion;
+        this.segments = List.copyOf(pSegments);
+        this.documentFrequency = pDocumentFrequency;
+        this.sortedTerms = pSortedTerms;
+        int count = 0;
+        for (Segment segment : segments) {
+            count += segment.getNumberOfLiveDocuments();
+        }
+        this.numberOfDocuments = count;
+        this.minPageRank = pMinPageRank;
+        this.maxPageRank = pMaxPageRank;
+    }
+
+    /**
+     * creates a snapshot of a single segment, e.g. to search an index that
+     * was built in one go
+     *
+     * @param websites     forward index {@link ForwardIndex}
+     * @param reverseIndex reverse index built from the forward index {@link ReverseIndex}
+     * @return snapshot with version 0
+     */
+    public static IndexSnapshot of(Map<String, WebsiteData> websites, ReverseIndex reverseIndex) {
+        int[] documentFrequency = new int[reverseIndex.getDimension()];
+        for (int termId = 0; termId < documentFrequency.length; termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            documentFrequency[termId] = documents == null ? 0 : documents.size();
+        }
+        WebsiteData[] documents = new WebsiteData[reverseIndex.getNumberOfDocuments()];
+        double[] pageRanks = new double[documents.length];
+        double[] norms = new double[documents.length];
+        double min = 1;
+        double max = 0;
+        for (int docId = 0; docId < documents.length; docId++) {
+            documents[docId] = websites.get(reverseIndex.getUrl(docId));
+            pageRanks[docId] = documents[docId].getPageRank();
+            norms[docId] = reverseIndex.getNorm(docId);
+            min = Math.min(min, pageRanks[docId]);
+            max = Math.max(max, pageRanks[docId]);
+        }
+        Segment segment = new Segment(0, reverseIndex, documents, pageRanks, norms);
+        return new IndexSnapshot(0, List.of(segment), documentFrequency, FrontCodedTerms.of(documentFrequency),
+                min, max);
+    }
+
+    /**
+     * @return version of the snapshot, a newer snapshot has a higher version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return idf score of the term over all live documents, 0 for terms no document contains
+     */
+    public double getIdf(int termId) {
+        if (!contains(termId)) {
+            return 0;
+        }
+        return Math.log((double) numberOfDocuments / documentFrequency[termId]);
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return number of live documents containing the term
+     */
+    public int getDocumentFrequency(int termId) {
+        return contains(termId) ? documentFrequency[termId] : 0;
+    }
+
+    /**
+     * @return terms of the live documents in sorted order, weighted by their
+     * document frequency, built before the snapshot is published
+     */
+    public FrontCodedTerms getSortedTerms() {
+        return sortedTerms;
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return true if a live document contains the term
+     */
+    public boolean contains(int termId) {
+        return termId >= 0 && termId < documentFrequency.length && documentFrequency[termId] > 0;
+    }
+
+    /**
+     * @return the segments
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * @param url url of a document
+     * @return live version of the document or null
+     */
+    public WebsiteData getWebsite(String url) {
+        for (Segment segment : segments) {
+            int docId = segment.getReverseIndex().getDocId(url);
+            if (docId >= 0 && segment.isLive(docId)) {
+                return segment.getWebsite(docId);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return live documents by url
+     */
+    public Map<String, WebsiteData> getWebsites() {
+        Map<String, WebsiteData> websites = new TreeMap<>();
+        for (Segment segment : segments) {
+            for (int docId = 0; docId < segment.getNumberOfDocuments(); docId++) {
+                if (segment.isLive(docId)) {
+                    websites.put(segment.getReverseIndex().getUrl(docId), segment.getWebsite(docId));
+                }
+            }
+        }
+        return Collections.unmodifiableMap(websites);
+    }
+
+    /**
+     * @return number of live documents
+     */
+    public int getNumberOfDocuments() {
+        return numberOfDocuments;
+    }
+
+    /**
+     * @return number of documents that are deleted but not yet merged away
+     */
+    public int getNumberOfDeletedDocuments() {
+        int deleted = 0;
+        for (Segment segment : segments) {
+            deleted += segment.getNumberOfDocuments() - segment.getNumberOfLiveDocuments();
+        }
+        return deleted;
+    }
+
+    /**
+     * @return lowest pagerank
+     */
+    public double getMinPageRank() {
+        return minPageRank;
+    }
+
+    /**
+     * @return highest pagerank
+     */
+    public double getMaxPageRank() {
+        return maxPageRank;
+    }
+
+    /**
+     * A reverse index of some documents with the pagerank and the length of
+     * the tfidf vector of each of them. Documents deleted since the segment
+     * was created are cleared in its live docs. Deleting a document creates a
+     * copy of the segment with the same id.
+     * <p>
+     * For every term the segment keeps the largest weight in its postings,
+     * with and without dividing by the vector length, which bounds the score
+     * a term can add to any document of the segment {@link TopKSearcher}.
+     */
+    public static final class Segment {
+        private final long id;
+        private final ReverseIndex reverseIndex;
+        private final WebsiteData[] websites;
+        private final double[] pageRanks;
+        private final double[] norms;
+        private final float[] maxWeights;
+        private final double[] maxNormalizedWeights;
+        private final double maxPageRank;
+        private final SearchStructures searchStructures;
+        private final BitSet liveDocs;
+        private final int numberOfLiveDocuments;
+
+        /**
+         * creates a segment whose documents are all live
+         */
+        Segment(long pId, ReverseIndex pReverseIndex, WebsiteData[] pWebsites, double[] pPageRanks,
+                double[] pNorms) {
+            this.id = pId;
+            this.reverseIndex = pReverseIndex;
+            this.websites = pWebsites;
+            this.pageRanks = pPageRanks;
+            this.norms = pNorms;
+            this.maxWeights = new float[pReverseIndex.getDimension()];
+            for (int termId = 0; termId < maxWeights.length; termId++) {
+                PostingsList documents = pReverseIndex.getPostings(termId);
+                if (documents == null) {
+                    continue;
+                }
+                PostingsList.Cursor cursor = documents.cursor();
+                while (cursor.next()) {
+                    maxWeights[termId] = Math.max(maxWeights[termId], cursor.weight());
+                }
+            }
+            this.maxNormalizedWeights = maxNormalizedWeights(pReverseIndex, pNorms);
+            double max = 0;
+            for (double pageRank : pPageRanks) {
+                max = Math.max(max, pageRank);
+            }
+            this.maxPageRank = max;
+            this.searchStructures = new SearchStructures();
+            this.liveDocs = allLive(pWebsites.length);
+            this.numberOfLiveDocuments = pWebsites.length;
+        }
+
+        private Segment(Segment segment, BitSet pLiveDocs, double[] pNorms, double[] pMaxNormalizedWeights) {
+            this.id = segment.id;
+            this.reverseIndex = segment.reverseIndex;
+            this.websites = segment.websites;
+            this.pageRanks = segment.pageRanks;
+            this.norms = pNorms;
+            this.maxWeights = segment.maxWeights;
+            this.maxNormalizedWeights = pMaxNormalizedWeights;
+            this.maxPageRank = segment.maxPageRank;
+            this.searchStructures = segment.searchStructures;
+            this.liveDocs = pLiveDocs;
+            this.numberOfLiveDocuments = pLiveDocs.cardinality();
+        }
+
+        /**
+         * @return largest weight divided by the vector length of the document by term id
+         */
+        private static double[] maxNormalizedWeights(ReverseIndex reverseIndex, double[] norms) {
+            double[] maxNormalizedWeights = new double[reverseIndex.getDimension()];
+            for (int termId = 0; termId < maxNormalizedWeights.length; termId++) {
+                PostingsList documents = reverseIndex.getPostings(termId);
+                if (documents == null) {
+                    continue;
+                }
+                PostingsList.Cursor cursor = documents.cursor();
+                while (cursor.next()) {
+                    double norm = norms[cursor.docId()];
+                    if (norm != 0) {
+                        maxNormalizedWeights[termId] = Math.max(maxNormalizedWeights[termId],
+                                cursor.weight() / norm);
+                    }
+                }
+            }
+            return maxNormalizedWeights;
+        }
+
+        private static BitSet allLive(int numberOfDocuments) {
+            BitSet liveDocs = new BitSet(numberOfDocuments);
+            liveDocs.set(0, numberOfDocuments);
+            return liveDocs;
+        }
+
+        /**
+         * @param docIds ids of documents of the segment
+         * @return copy of the segment in which the documents are deleted
+         */
+        Segment withDeleted(int... docIds) {
+            BitSet copy = (BitSet) liveDocs.clone();
+            for (int docId : docIds) {
+                copy.clear(docId);
+            }
+            return new Segment(this, copy, norms, maxNormalizedWeights);
+        }
+
+        /**
+         * @param pNorms euclidean length of the tfidf vector by doc id for the current idf scores
+         * @return copy of the segment with the new vector lengths
+         */
+        Segment withNorms(double[] pNorms) {
+            return new Segment(this, liveDocs, pNorms, maxNormalizedWeights(reverseIndex, pNorms));
+        }
+
+        /**
+         * @param refreshed copy of the segment, possibly older, with new vector lengths
+         * @return copy of the segment with the vector lengths of the other copy
+         */
+        Segment withNormsOf(Segment refreshed) {
+            return new Segment(this, liveDocs, refreshed.norms, refreshed.maxNormalizedWeights);
+        }
+
+        /**
+         * @return id of the segment, the same for all copies of it
+         */
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return reverse index of the segment, doc ids are local to the segment
+         */
+        public ReverseIndex getReverseIndex() {
+            return reverseIndex;
+        }
+
+        /**
+         * @return postings of the segment ordered by impact {@link ImpactIndex}, built by the first query needing them
+         */
+        public ImpactIndex getImpactIndex() {
+            ImpactIndex impactIndex = searchStructures.impactIndex;
+            if (impactIndex == null) {
+                // racing threads build equal copies
+                impactIndex = ImpactIndex.of(reverseIndex);
+                searchStructures.impactIndex = impactIndex;
+            }
+            return impactIndex;
+        }
+
+        /**
+         * @return positions of the terms in the documents of the segment
+         * {@link PositionalIndex}, built by the first query needing them
+         */
+        public PositionalIndex getPositionalIndex() {
+            PositionalIndex positionalIndex = searchStructures.positionalIndex;
+            if (positionalIndex == null) {
+                // racing threads build equal copies
+                positionalIndex = PositionalIndex.of(websites, reverseIndex.getDimension());
+                searchStructures.positionalIndex = positionalIndex;
+            }
+            return positionalIndex;
+        }
+
+        /**
+         * @param docId id of a document of the segment
+         * @return false if the document was deleted
+         */
+        public boolean isLive(int docId) {
+            return liveDocs.get(docId);
+        }
+
+        /**
+         * @param docId id of a document of the segment
+         * @return the document
+         */
+        public WebsiteData getWebsite(int docId) {
+            return websites[docId];
+        }
+
+        /**
+         * @param docId id of a document of the segment
+         * @return pagerank of the document
+         */
+        public double getPageRank(int docId) {
+            return pageRanks[docId];
+        }
+
+        /**
+         * @param docId id of a document of the segment
+         * @return euclidean length of the tfidf vector of the document for the idf scores when the
+         * lengths of the segment were last calculated {@link MergePolicy}
+         */
+        public double getNorm(int docId) {
+            return norms[docId];
+        }
+
+        /**
+         * @param termId id of a term {@link TermDictionary}
+         * @return largest weight of the term in a document of the segment, 0 if it contains no such document
+         */
+        public float getMaxWeight(int termId) {
+            return termId < maxWeights.length ? maxWeights[termId] : 0;
+        }
+
+        /**
+         * @param termId id of a term {@link TermDictionary}
+         * @return largest weight of the term divided by the vector length of the document
+         */
+        public double getMaxNormalizedWeight(int termId) {
+            return termId < maxNormalizedWeights.length ? maxNormalizedWeights[termId] : 0;
+        }
+
+        /**
+         * @return highest pagerank of a document of the segment
+         */
+        public double getMaxPageRank() {
+            return maxPageRank;
+        }
+
+        /**
+         * @return number of documents including the deleted ones
+         */
+        public int getNumberOfDocuments() {
+            return websites.length;
+        }
+
+        /**
+         * @return number of documents that aren't deleted
+         */
+        public int getNumberOfLiveDocuments() {
+            return numberOfLiveDocuments;
+        }
+
+        /**
+         * indexes only some queries search, shared by all copies of a segment
+         * and built on first use, so publishing a segment or loading one from
+         * disk doesn't build them
+         */
+        private static final class SearchStructures {
+            private volatile ImpactIndex impactIndex;
+            private volatile PositionalIndex positionalIndex;
+        }
+    }
+}
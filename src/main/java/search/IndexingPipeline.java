@@ -0,0 +1,250 @@
+package search;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams crawled pages into the index while the crawl is still running. The
+ * pipeline consists of three stages connected by bounded queues:
+ * <ol>
+ * <li>the {@link WebsiteSource}, e.g. the {@link Crawler}, fetches and parses pages</li>
+ * <li>analyzer workers tokenize the pages</li>
+ * <li>a single indexer collects the pages and at most every refresh interval
+ * adds the pages that arrived since the last refresh to the
+ * {@link SegmentedIndex} as a new segment, so they become searchable without
+ * indexing the earlier pages again</li>
+ * </ol>
+ * The passes over all pages, i.e. the reverse index with the vectors and the
+ * pagerank, run once when the source is finished and the complete index is
+ * handed to the {@link Publisher}.
+ * <p>
+ * If the source or a stage fails the crawl is cancelled and the failure is
+ * thrown from {@link #run(WebsiteSource, SegmentedIndex, Publisher)}, instead
+ * of leaving the crawler blocked on a queue nobody takes from any more. The
+ * pages indexed so far are never published as the complete index.
+ */
+public class IndexingPipeline {
+
+    /**
+     * receives the complete index once the source is finished
+     */
+    @FunctionalInterface
+    public interface Publisher {
+        /**
+         * @param forwardIndex forward index containing every page of the source {@link ForwardIndex}
+         * @param reverseIndex reverse index built from the forward index {@link ReverseIndex}
+         */
+        void publish(ForwardIndex forwardIndex, ReverseIndex reverseIndex);
+    }
+
+    // marks the end of the stream in a queue
+    private static final WebsiteData END_OF_STREAM = new WebsiteData("", "", "", "", List.of(), false);
+    private static final Logger logger = Logger.getLogger(IndexingPipeline.class.getName());
+    private final BlockingQueue<WebsiteData> parsedPages;
+    private final BlockingQueue<WebsiteData> analyzedPages;
+    private final int analyzerThreads;
+    private final long refreshInterval;
+    private volatile boolean running;
+    // first failure of the source, the analyzers or the indexer
+    private volatile Throwable failure;
+    // thread feeding the pipeline, interrupted when a stage fails, guarded by this
+    private Thread feeder;
+
+    /**
+     * @param pQueueCapacity   capacity of the queues between the stages
+     * @param pAnalyzerThreads number of threads tokenizing pages
+     * @param pRefreshInterval minimum time in milliseconds between two segments added to the index
+     */
+    public IndexingPipeline(int pQueueCapacity, int pAnalyzerThreads, long pRefreshInterval) {
+        this.parsedPages = new ArrayBlockingQueue<>(pQueueCapacity);
+        this.analyzedPages = new ArrayBlockingQueue<>(pQueueCapacity);
+        this.analyzerThreads = pAnalyzerThreads;
+        this.refreshInterval = pRefreshInterval;
+    }
+
+    /**
+     * starts the pipeline in the background
+     *
+     * @param source    source feeding the pipeline {@link WebsiteSource}
+     * @param index     index the pages are added to while crawling {@link SegmentedIndex}
+     * @param publisher receives the complete index
+     * @return thread running the pipeline
+     */
+    public Thread start(WebsiteSource source, SegmentedIndex index, Publisher publisher) {
+        running = true;
+        return Thread.ofPlatform().name("indexing-pipeline").daemon(true).start(() -> {
+            try {
+                run(source, index, publisher);
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.SEVERE, "Indexing pipeline failed", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                running = false;
+            }
+        });
+    }
+
+    /**
+     * runs the pipeline until every crawled page is indexed
+     *
+     * @param source    source feeding the pipeline {@link WebsiteSource}
+     * @param index     index the pages are added to while crawling {@link SegmentedIndex}
+     * @param publisher receives the complete index
+     * @throws IOException          if the source or a stage of the pipeline failed
+     * @throws InterruptedException
+     */
+    public void run(WebsiteSource source, SegmentedIndex index, Publisher publisher)
+            throws IOException, InterruptedException {
+        synchronized (this) {
+            failure = null;
+            feeder = Thread.currentThread();
+        }
+        ExecutorService analyzers = Executors.newFixedThreadPool(analyzerThreads);
+        Thread indexer = Thread.ofPlatform().name("indexer").daemon(true).start(() -> index(index, publisher));
+        try {
+            for (int i = 0; i < analyzerThreads; i++) {
+                analyzers.submit(this::analyze);
+            }
+            try {
+                source.crawl(this::put);
+            } catch (IOException | RuntimeException e) {
+                // the end markers would let the indexer publish the pages crawled so far as complete
+                fail(e);
+            } finally {
+                // every analyzer stops after taking one end marker, after a failure they are shut down instead
+                for (int i = 0; i < analyzerThreads && failure == null; i++) {
+                    parsedPages.put(END_OF_STREAM);
+                }
+            }
+            if (failure == null) {
+                indexer.join();
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            if (failure == null) {
+                throw e;
+            }
+        } finally {
+            synchronized (this) {
+                feeder = null;
+            }
+            analyzers.shutdownNow();
+            indexer.interrupt();
+        }
+        if (failure != null) {
+            // the interrupt only cancelled the crawl
+            Thread.interrupted();
+            throw new IOException("Indexing pipeline failed", failure);
+        }
+    }
+
+    /**
+     * @return true while the pipeline is running
+     */
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * first stage, hands a crawled page to the analyzers
+     *
+     * @throws IllegalStateException if a later stage failed, which stops the source
+     */
+    private void put(WebsiteData website) {
+        try {
+            if (failure == null) {
+                parsedPages.put(website);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IllegalStateException("Indexing pipeline failed", failure);
+        }
+    }
+
+    /**
+     * records the first failure of a stage and cancels the crawl
+     */
+    private void fail(Throwable e) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+            if (feeder != null) {
+                feeder.interrupt();
+            }
+        }
+        logger.log(Level.SEVERE, "Indexing pipeline failed", e);
+    }
+
+    /**
+     * second stage, tokenizes pages until the end marker is taken
+     */
+    private Void analyze() throws InterruptedException {
+        try {
+            WebsiteData website;
+            while ((website = parsedPages.take()) != END_OF_STREAM) {
+                website.analyze();
+                analyzedPages.put(website);
+            }
+        } catch (RuntimeException | Error e) {
+            fail(e);
+            throw e;
+        } finally {
+            analyzedPages.put(END_OF_STREAM);
+        }
+        return null;
+    }
+
+    /**
+     * third stage, adds the analyzed pages to the index as a new segment at
+     * most every refreshInterval milliseconds and publishes the complete
+     * index once every analyzer is finished
+     */
+    private void index(SegmentedIndex index, Publisher publisher) {
+        List<WebsiteData> indexedPages = new ArrayList<>();
+        int finishedAnalyzers = 0;
+        int addedPages = 0;
+        long lastRefresh = 0;
+        try {
+            while (finishedAnalyzers < analyzerThreads) {
+                WebsiteData website = analyzedPages.poll(refreshInterval, TimeUnit.MILLISECONDS);
+                if (website == END_OF_STREAM) {
+                    finishedAnalyzers++;
+                } else if (website != null) {
+                    indexedPages.add(website);
+                }
+                long now = System.currentTimeMillis();
+                if (indexedPages.size() > addedPages && now - lastRefresh >= refreshInterval) {
+                    // only the new pages are indexed, the segments of the earlier ones are kept
+                    index.update(indexedPages.subList(addedPages, indexedPages.size()));
+                    logger.info("Added " + (indexedPages.size() - addedPages) + " pages to the index");
+                    addedPages = indexedPages.size();
+                    lastRefresh = now;
+                }
+            }
+            if (failure != null) {
+                // the analyzers were shut down, the pages are only part of the source
+                return;
+            }
+            ForwardIndex forwardIndex = new ForwardIndex();
+            forwardIndex.addEntries(indexedPages);
+            publisher.publish(forwardIndex, ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex()));
+            logger.info("Published complete index with " + indexedPages.size() + " pages");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error e) {
+            fail(e);
+        }
+    }
+}
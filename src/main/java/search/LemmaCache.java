@@ -0,0 +1,171 @@
+package search;
+
+import java.io.Serial;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread safe cache of the lemma of a token. Once the cache is full
+ * the least recently used token is evicted, so the cache follows the
+ * vocabulary when new documents or queries bring new tokens.
+ * <p>
+ * A lookup moves the token to the end of the access order, so even hits
+ * change the cache. The tokens are spread over stripes by their hash, every
+ * stripe is a small LRU cache with its own lock and an equal share of the
+ * capacity. Query threads only wait for each other if their tokens fall into
+ * the same stripe. The evicted token is the least recently used one of its
+ * stripe, which is close to the least recently used one of the whole cache.
+ */
+public class LemmaCache {
+    // a stripe holds at least this many tokens, smaller stripes would evict recently used tokens too often
+    private static final int MIN_STRIPE_CAPACITY = 64;
+    private static final int MAX_STRIPES = 16;
+    private final int capacity;
+    private final Stripe[] stripes;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * creates a cache with up to 16 stripes of at least 64 tokens
+     *
+     * @param pCapacity maximum number of cached tokens
+     */
+    public LemmaCache(int pCapacity) {
+        this(pCapacity, Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, pCapacity / MIN_STRIPE_CAPACITY))));
+    }
+
+    /**
+     * @param pCapacity maximum number of cached tokens
+     * @param pStripes  number of stripes, a power of two not above the capacity
+     */
+    public LemmaCache(int pCapacity, int pStripes) {
+        if (pCapacity < 1) {
+            throw new IllegalArgumentException("The cache has to hold at least one token, capacity=" + pCapacity);
+        }
+        if (pStripes < 1 || pStripes > pCapacity || Integer.bitCount(pStripes) != 1) {
+            throw new IllegalArgumentException("The number of stripes has to be a power of two not above the capacity, stripes="
+                    + pStripes);
+        }
+        this.capacity = pCapacity;
+        this.stripes = new Stripe[pStripes];
+        for (int i = 0; i < pStripes; i++) {
+            // the first stripes take the remainder, so the capacities add up to the capacity of the cache
+            stripes[i] = new Stripe(pCapacity / pStripes + (i < pCapacity % pStripes ? 1 : 0));
+        }
+    }
+
+    private Stripe stripe(String token) {
+        int hash = token.hashCode();
+        return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+    }
+
+    /**
+     * @param token token
+     * @return cached lemma or null
+     */
+    String get(String token) {
+        Stripe stripe = stripe(token);
+        String lemma;
+        synchronized (stripe) {
+            lemma = stripe.get(token);
+        }
+        if (lemma == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return lemma;
+    }
+
+    /**
+     * caches the lemma of a token, evicting the least recently used token of its stripe if the stripe is full
+     */
+    void put(String token, String lemma) {
+        Stripe stripe = stripe(token);
+        synchronized (stripe) {
+            stripe.putIfAbsent(token, lemma);
+        }
+    }
+
+    /**
+     * @return number of cached tokens
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return maximum number of cached tokens
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of stripes the tokens are spread over
+     */
+    public int getStripes() {
+        return stripes.length;
+    }
+
+    /**
+     * @return number of tokens found in the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of tokens not found in the cache
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of tokens evicted to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return share of the lookups that were found in the cache
+     */
+    public double getHitRate() {
+        long lookups = hits.sum() + misses.sum();
+        return lookups == 0 ? 0 : (double) hits.sum() / lookups;
+    }
+
+    /**
+     * access ordered part of the cache, the eldest entry is the least
+     * recently used one, guarded by itself
+     */
+    private final class Stripe extends LinkedHashMap<String, String> {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        private final int stripeCapacity;
+
+        private Stripe(int pCapacity) {
+            super(16, 0.75f, true);
+            this.stripeCapacity = pCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            if (size() > stripeCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
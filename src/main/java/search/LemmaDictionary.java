@@ -0,0 +1,82 @@
+package search;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable token to lemma dictionary of the indexed corpus. It is built from
+ * the analyzed websites without running the language models again: the lemmas
+ * of a website are in the same order as the tokens of its content, so each
+ * token is mapped to the lemma it was given most often.
+ */
+public final class LemmaDictionary {
+    private final Map<String, String> lemmas;
+
+    private LemmaDictionary(Map<String, String> pLemmas) {
+        this.lemmas = pLemmas;
+    }
+
+    /**
+     * @return dictionary without any tokens
+     */
+    static LemmaDictionary empty() {
+        return new LemmaDictionary(Map.of());
+    }
+
+    /**
+     * builds the dictionary from analyzed websites
+     *
+     * @param websites analyzed websites {@link WebsiteData}
+     * @param analyzer analyzer the websites were tokenized with {@link TextAnalyzer}
+     * @return dictionary of all tokens of the websites
+     */
+    public static LemmaDictionary build(Collection<WebsiteData> websites, TextAnalyzer analyzer) {
+        Map<String, Map<String, Integer>> counts = new HashMap<>();
+        for (WebsiteData website : websites) {
+            List<String> lemmas = website.getTokenList();
+            if (lemmas == null) {
+                continue;
+            }
+            List<String> tokens = analyzer.tokenize(website.getCompleteContent());
+            if (tokens.size() != lemmas.size()) {
+                // analyzed with a different tokenizer, the lemmas can't be matched
+                continue;
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                counts.computeIfAbsent(tokens.get(i), token -> new HashMap<>()).merge(lemmas.get(i), 1, Integer::sum);
+            }
+        }
+
+        Map<String, String> lemmas = new HashMap<>(counts.size() * 2);
+        for (Map.Entry<String, Map<String, Integer>> token : counts.entrySet()) {
+            String best = null;
+            int bestCount = 0;
+            for (Map.Entry<String, Integer> lemma : token.getValue().entrySet()) {
+                // ties are broken by the lemma itself so the result doesn't depend on the order
+                if (lemma.getValue() > bestCount || lemma.getValue() == bestCount && lemma.getKey().compareTo(best) < 0) {
+                    best = lemma.getKey();
+                    bestCount = lemma.getValue();
+                }
+            }
+            lemmas.put(token.getKey(), best);
+        }
+        return new LemmaDictionary(lemmas);
+    }
+
+    /**
+     * @param token token
+     * @return lemma of the token or null if the token isn't part of the corpus
+     */
+    String get(String token) {
+        return lemmas.get(token);
+    }
+
+    /**
+     * @return number of tokens in the dictionary
+     */
+    public int size() {
+        return lemmas.size();
+    }
+}
@@ -0,0 +1,159 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Accepts the terms within a maximum edit distance of a word, counting an
+ * insertion, a deletion, a substitution and a transposition of two neighbour
+ * chars as one edit each. The state after reading a prefix is the row of
+ * edit distances between the prefix and every prefix of the word. Once every
+ * distance of a row is above the maximum no term with that prefix can be
+ * accepted any more.
+ * <p>
+ * The automaton walks the sorted terms {@link FrontCodedTerms}. A term reuses
+ * the rows of the prefix it shares with the previous term, and at a prefix
+ * no term can be accepted with, the walk seeks to the first term after all
+ * terms with that prefix, so only a small part of the terms is read.
+ *
+ * @see <a href="https://en.wikipedia.org/wiki/Levenshtein_automaton">Levenshtein automaton</a>
+ */
+public final class LevenshteinAutomaton {
+    private final String word;
+    private final int maxDistance;
+
+    /**
+     * @param pWord        word the terms are compared to
+     * @param pMaxDistance maximum number of edits
+     */
+    public LevenshteinAutomaton(String pWord, int pMaxDistance) {
+        this.word = pWord;
+        this.maxDistance = pMaxDistance;
+    }
+
+    /**
+     * @param length length of a word
+     * @return number of edits allowed for the word, short words allow none
+     * and long words two
+     */
+    public static int maxDistance(int length) {
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+
+    /**
+     * finds the terms the automaton accepts
+     *
+     * @param terms sorted terms
+     * @return accepted terms in sorted order
+     */
+    public List<Match> match(FrontCodedTerms terms) {
+        List<Match> matches = new ArrayList<>();
+        int n = word.length();
+        // row of distances after every char of the current term, row 0 is the empty prefix
+        int[][] rows = new int[16][];
+        rows[0] = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            rows[0][j] = j;
+        }
+        char[] previous = new char[16];
+        // number of leading chars of the previous term whose rows are computed
+        int validDepth = 0;
+        FrontCodedTerms.Cursor cursor = terms.cursor(0);
+        while (cursor.ordinal() < terms.size()) {
+            int length = cursor.length();
+            if (length >= rows.length) {
+                rows = Arrays.copyOf(rows, Math.max(rows.length * 2, length + 1));
+                previous = Arrays.copyOf(previous, rows.length);
+            }
+            int depth = 0;
+            while (depth < validDepth && depth < length && previous[depth] == cursor.charAt(depth)) {
+                depth++;
+            }
+            boolean dead = false;
+            while (depth < length && !dead) {
+                previous[depth] = cursor.charAt(depth);
+                depth++;
+                if (rows[depth] == null) {
+                    rows[depth] = new int[n + 1];
+                }
+                dead = step(rows, depth, previous);
+            }
+            validDepth = depth;
+            if (dead) {
+                // no term starting with the prefix up to the depth is accepted, the ones in the same block
+                // are stepped over, a prefix reaching into the next block is searched for its end
+                while (cursor.next() && cursor.ordinal() % FrontCodedTerms.BLOCK_SIZE != 0
+                        && startsWith(cursor, previous, depth)) {
+                }
+                if (cursor.ordinal() < terms.size() && startsWith(cursor, previous, depth)) {
+                    String prefix = new String(previous, 0, depth);
+                    cursor = terms.cursor(terms.ceiling(FrontCodedTerms.successor(prefix)));
+                }
+                continue;
+            }
+            // the distance to the whole word is only computed if the lengths differ by at most the maximum
+            if (Math.abs(length - n) <= maxDistance && rows[length][n] <= maxDistance) {
+                matches.add(new Match(cursor.ordinal(), rows[length][n]));
+            }
+            cursor.next();
+        }
+        return matches;
+    }
+
+    private static boolean startsWith(FrontCodedTerms.Cursor cursor, char[] prefix, int length) {
+        if (cursor.length() < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (cursor.charAt(i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * computes the row after the char at depth - 1 of the term. Only the
+     * distances to prefixes of the word whose length differs by at most the
+     * maximum are computed, the others are above it anyway. The distances
+     * next to that band are set to the maximum + 1, so distances up to the
+     * maximum are exact and all others stay above it.
+     *
+     * @return true if every distance of the row is above the maximum
+     */
+    private boolean step(int[][] rows, int depth, char[] term) {
+        int[] above = rows[depth - 1];
+        int[] row = rows[depth];
+        char c = term[depth - 1];
+        int low = Math.max(1, depth - maxDistance);
+        int high = Math.min(row.length - 1, depth + maxDistance);
+        row[0] = depth;
+        if (low > 1) {
+            row[low - 1] = maxDistance + 1;
+        }
+        if (high < row.length - 1) {
+            row[high + 1] = maxDistance + 1;
+        }
+        int min = row[0];
+        for (int j = low; j <= high; j++) {
+            int distance = Math.min(Math.min(above[j], row[j - 1]) + 1,
+                    above[j - 1] + (c == word.charAt(j - 1) ? 0 : 1));
+            if (depth > 1 && j > 1 && c == word.charAt(j - 2) && term[depth - 2] == word.charAt(j - 1)) {
+                distance = Math.min(distance, rows[depth - 2][j - 2] + 1);
+            }
+            row[j] = distance;
+            min = Math.min(min, distance);
+        }
+        return min > maxDistance;
+    }
+
+    /**
+     * an accepted term
+     *
+     * @param ordinal  position of the term in the sorted terms
+     * @param distance number of edits between the word and the term
+     */
+    public record Match(int ordinal, int distance) {
+    }
+}
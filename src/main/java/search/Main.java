@@ -1,12 +1,23 @@
 package search;
 
+import io.quarkus.runtime.ShutdownEvent;
 import io.quarkus.runtime.StartupEvent;
 import jakarta.enterprise.context.ApplicationScoped;
 import jakarta.enterprise.event.Observes;
 import jakarta.inject.Inject;
+import org.eclipse.microprofile.config.inject.ConfigProperty;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 @ApplicationScoped
@@ -25,25 +36,337 @@ public class Main {
             "http://edam24.cheesy4",
             "http://cheddar24.cheesy6"};
 
-    public static Map<String, WebsiteData> forwardIndexMap;
-    public static Map<String, Map<String, Double>> reverseIndexMap;
+    // queries search the latest snapshot of the index, publishing a new index doesn't block them
+    public static SegmentedIndex index = new SegmentedIndex(new MergePolicy(8, 0.3));
     public static Crawler crawler;
-    ForwardIndex forwardIndex;
+    // results of recent queries, null if caching is disabled
+    public static volatile ResultCache resultCache;
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+    IndexingPipeline pipeline;
+    CrawlSegmentWriter snapshotWriter;
+    ParallelAnalyzer parallelAnalyzer;
+
+    @ConfigProperty(name = "index.source", defaultValue = "crawl")
+    String source;
+    @ConfigProperty(name = "crawler.snapshot.path")
+    Optional<String> snapshotPath;
+    @ConfigProperty(name = "index.filesystem.root", defaultValue = "webserver/www")
+    String filesystemRoot;
+    @ConfigProperty(name = "index.path")
+    Optional<String> indexPath;
+
+    @ConfigProperty(name = "crawler.concurrent", defaultValue = "true")
+    boolean concurrentCrawl;
+    @ConfigProperty(name = "crawler.max-concurrency", defaultValue = "32")
+    int maxConcurrency;
+    @ConfigProperty(name = "crawler.max-per-host", defaultValue = "8")
+    int maxPerHost;
+    @ConfigProperty(name = "crawler.timeout", defaultValue = "5000")
+    int timeout;
+    @ConfigProperty(name = "crawler.connect-timeout", defaultValue = "2000")
+    int connectTimeout;
+    @ConfigProperty(name = "crawler.frontier.capacity", defaultValue = "8192")
+    int frontierCapacity;
+    @ConfigProperty(name = "crawler.frontier.bloom-filter", defaultValue = "false")
+    boolean bloomFilter;
+    @ConfigProperty(name = "crawler.frontier.expected-urls", defaultValue = "100000")
+    int expectedUrls;
+    @ConfigProperty(name = "index.analyzer.parallelism", defaultValue = "0")
+    int analyzerParallelism;
+    @ConfigProperty(name = "index.analyzer.lemma-cache-size", defaultValue = "0")
+    int lemmaCacheSize;
+    @ConfigProperty(name = "index.analyzer.lemma-dictionary", defaultValue = "true")
+    boolean lemmaDictionary;
+    @ConfigProperty(name = "index.pipeline.enabled", defaultValue = "true")
+    boolean streamingPipeline;
+    @ConfigProperty(name = "index.pipeline.queue-capacity", defaultValue = "256")
+    int queueCapacity;
+    @ConfigProperty(name = "index.pipeline.analyzer-threads", defaultValue = "2")
+    int analyzerThreads;
+    @ConfigProperty(name = "index.pipeline.refresh-interval", defaultValue = "2000")
+    long refreshInterval;
+    @ConfigProperty(name = "index.merge.max-segments", defaultValue = "8")
+    int maxSegments;
+    @ConfigProperty(name = "index.merge.max-deleted-ratio", defaultValue = "0.3")
+    double maxDeletedRatio;
+    @ConfigProperty(name = "index.merge.max-norm-drift", defaultValue = "0.1")
+    double maxNormDrift;
+    @ConfigProperty(name = "search.impact.max-postings", defaultValue = "0")
+    long impactMaxPostings;
+    @ConfigProperty(name = "search.cache.size", defaultValue = "1024")
+    int resultCacheSize;
 
     void onStart(@Observes StartupEvent ev) throws IOException {
 
         final Logger LOGGER = Logger.getLogger("ListenerBean");
-        crawler = new Crawler(seedUrls);
-        forwardIndex = new ForwardIndex();
-        forwardIndex.addEntries(crawler.start());
-        forwardIndexMap = forwardIndex.getForwardIndex();
-        LOGGER.info(String.valueOf(forwardIndexMap.size()));
-        reverseIndexMap = ReverseIndex.getReverseIndex(forwardIndexMap);
-        forwardIndex.calculateVector(reverseIndexMap);
-        forwardIndex.calculatePageRankDamped();
+        // loads the language models before the first page or query needs them
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        if (lemmaCacheSize > 0) {
+            analyzer.setLemmaCache(new LemmaCache(lemmaCacheSize));
+        }
+        index.close();
+        index = new SegmentedIndex(new MergePolicy(maxSegments, maxDeletedRatio, maxNormDrift));
+        // created with the index, its versions start over
+        resultCache = resultCacheSize > 0 ? new ResultCache(resultCacheSize) : null;
+        parallelAnalyzer = new ParallelAnalyzer(analyzerParallelism > 0
+                ? analyzerParallelism : Runtime.getRuntime().availableProcessors());
+        WebsiteSource websiteSource = createSource();
+        if (indexPath.isPresent() && Files.exists(Path.of(indexPath.get()))) {
+            try {
+                long start = System.currentTimeMillis();
+                IndexSegment segment = IndexSegment.open(Path.of(indexPath.get()));
+                publishSegment(segment);
+                System.out.println("You can now start searching, loaded " + index.snapshot().getNumberOfDocuments() + " pages from "
+                        + indexPath.get() + " in " + (System.currentTimeMillis() - start) + " ms. ");
+                // the large sections are checked while the index is already searchable
+                Thread.ofPlatform().name("index-verifier").daemon(true).start(() -> verifySegment(segment, websiteSource));
+                return;
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Rebuilding the index, " + indexPath.get() + " can't be used", e);
+            }
+        }
+        buildIndex(websiteSource);
+        LOGGER.info(String.valueOf(index.snapshot().getNumberOfDocuments()));
+    }
+
+    /**
+     * builds the index from a source, step by step in the background if the
+     * streaming pipeline is enabled
+     *
+     * @param websiteSource source of the pages {@link WebsiteSource}
+     */
+    private void buildIndex(WebsiteSource websiteSource) throws IOException {
+        if (streamingPipeline) {
+            // crawled pages are added to the index while the crawl is running
+            pipeline = new IndexingPipeline(queueCapacity, analyzerThreads, refreshInterval);
+            pipeline.start(websiteSource, index, this::publish);
+            System.out.println("You can now start searching, pages are indexed in the background. ");
+            return;
+        }
+        buildIndex(websiteSource == crawler && concurrentCrawl ? crawler.startConcurrent() : websiteSource.start());
 
         System.out.println("You can now start searching. ");
-        System.out.println("Pages index: " + crawler.getNumberOfSites());
+        // with a bloom filter frontier the crawler can only estimate the number of pages it found
+        boolean approximate = websiteSource == crawler && crawler.isNumberOfSitesApproximate();
+        System.out.println("Pages index: " + (approximate ? "about " : "") + websiteSource.getNumberOfSites());
+        System.out.println("Pages skipped: " + websiteSource.getNumberOfSkippedSites());
+    }
+
+    /**
+     * checks the large sections of an index file that is already searchable
+     * and rebuilds the index from the source if the file is damaged
+     *
+     * @param segment       published index file {@link IndexSegment}
+     * @param websiteSource source the index is rebuilt from {@link WebsiteSource}
+     */
+    private void verifySegment(IndexSegment segment, WebsiteSource websiteSource) {
+        try {
+            segment.verify();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Rebuilding the index, " + indexPath.get() + " can't be used", e);
+            try {
+                buildIndex(websiteSource);
+            } catch (IOException | RuntimeException rebuildFailure) {
+                logger.log(Level.SEVERE, "Rebuilding the index failed", rebuildFailure);
+            }
+        }
+    }
+
+    void onStop(@Observes ShutdownEvent ev) throws IOException {
+        if (snapshotWriter != null) {
+            snapshotWriter.close();
+        }
+        if (parallelAnalyzer != null) {
+            parallelAnalyzer.close();
+        }
+        index.close();
+    }
+
+    /**
+     * creates the source of the websites configured with index.source
+     *
+     * @return crawler, replay of a snapshot or directory of websites {@link WebsiteSource}
+     * @throws IOException
+     */
+    private WebsiteSource createSource() throws IOException {
+        switch (source) {
+            case "crawl" -> {
+                Frontier frontier = new Frontier(frontierCapacity, bloomFilter, expectedUrls);
+                PageFetcher fetcher = new PageFetcher(Crawler.PROXY_HOST, Crawler.PROXY_PORT, connectTimeout,
+                        timeout);
+                crawler = new Crawler(seedUrls, frontier, fetcher, maxConcurrency, maxPerHost);
+                crawler.setAnalyzer(parallelAnalyzer);
+                if (snapshotPath.isPresent()) {
+                    snapshotWriter = new CrawlSegmentWriter(Path.of(snapshotPath.get()));
+                    crawler.setSnapshotWriter(snapshotWriter);
+                }
+                return crawler;
+            }
+            case "snapshot" -> {
+                String path = snapshotPath.orElseThrow(() ->
+                        new IllegalStateException("crawler.snapshot.path has to be set to replay a snapshot"));
+                CrawlSegmentReader reader = new CrawlSegmentReader(Path.of(path));
+                reader.setAnalyzer(parallelAnalyzer);
+                return reader;
+            }
+            case "filesystem" -> {
+                FileSystemSource fileSystemSource = new FileSystemSource(Path.of(filesystemRoot));
+                fileSystemSource.setAnalyzer(parallelAnalyzer);
+                return fileSystemSource;
+            }
+            default -> throw new IllegalArgumentException("Unknown index source " + source);
+        }
+    }
+
+    /**
+     * crawls all pages again with conditional requests. Changed and new pages
+     * are updated and vanished pages deleted in the current index. The index is
+     * only rebuilt if the links of a page changed, because the pageranks are
+     * calculated over the whole link graph.
+     *
+     * @return true if the index changed
+     * @throws IOException
+     */
+    public synchronized boolean recrawl() throws IOException {
+        if (crawler == null) {
+            throw new IllegalStateException("Recrawling needs index.source=crawl");
+        }
+        if (pipeline != null && pipeline.isRunning()) {
+            throw new IllegalStateException("The initial crawl is still running");
+        }
+        Map<String, WebsiteData> previousSites = new HashMap<>(index.snapshot().getWebsites());
+        List<WebsiteData> sites = crawler.recrawl(previousSites, concurrentCrawl);
+        // unchanged pages keep their previous WebsiteData object
+        List<WebsiteData> changedSites = new ArrayList<>();
+        Set<String> vanishedUrls = new HashSet<>(previousSites.keySet());
+        boolean linksChanged = false;
+        for (WebsiteData site : sites) {
+            vanishedUrls.remove(site.getUrl());
+            WebsiteData previous = previousSites.get(site.getUrl());
+            if (previous != site) {
+                changedSites.add(site);
+                linksChanged |= previous != null && !previous.getLinks().equals(site.getLinks());
+            }
+        }
+        if (linksChanged) {
+            buildIndex(sites);
+            return true;
+        }
+        // like single updates, new pages get the lowest pagerank and the others keep theirs
+        index.update(changedSites);
+        for (String url : vanishedUrls) {
+            index.delete(url);
+        }
+        return !changedSites.isEmpty() || !vanishedUrls.isEmpty();
+    }
+
+    /**
+     * fetches a single page again and adds or updates it in the index. Only a
+     * small segment is built for the page, the rest of the index is kept. A
+     * page that can't be fetched or parsed anymore is deleted.
+     *
+     * @param url url of the page
+     * @return true if the page was added or updated, false if it was deleted
+     * @throws IOException
+     */
+    public boolean updateDocument(String url) throws IOException {
+        if (crawler == null) {
+            throw new IllegalStateException("Updating pages needs index.source=crawl");
+        }
+        String normalizedUrl = UrlNormalizer.normalize(url);
+        if (normalizedUrl == null) {
+            throw new IllegalArgumentException("Not a http url: " + url);
+        }
+        WebsiteData website;
+        try {
+            website = crawler.fetchPage(normalizedUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching " + normalizedUrl, e);
+        }
+        if (website == null) {
+            index.delete(normalizedUrl);
+            return false;
+        }
+        index.update(List.of(website));
+        return true;
+    }
+
+    /**
+     * deletes a page from the index
+     *
+     * @param url url of the page
+     * @return true if the index contained the page
+     */
+    public boolean deleteDocument(String url) {
+        String normalizedUrl = UrlNormalizer.normalize(url);
+        return normalizedUrl != null && index.delete(normalizedUrl);
+    }
+
+    /**
+     * builds forward index, reverse index, vectors and pagerank from crawled sites
+     *
+     * @param sites crawled sites
+     */
+    private void buildIndex(List<WebsiteData> sites) {
+        ForwardIndex newForwardIndex = new ForwardIndex();
+        newForwardIndex.addEntries(sites);
+        publish(newForwardIndex, ReverseIndex.getReverseIndex(newForwardIndex.getForwardIndex()));
+    }
+
+    /**
+     * calculates vectors and pagerank of a new index and makes it searchable.
+     * Everything is calculated before the index is swapped, queries keep
+     * searching the previous snapshot meanwhile.
+     *
+     * @param newForwardIndex forward index containing every page of the source {@link ForwardIndex}
+     * @param newReverseIndex reverse index built from the forward index {@link ReverseIndex}
+     */
+    void publish(ForwardIndex newForwardIndex, ReverseIndex newReverseIndex) {
+        // the pages may still be documents of the current snapshot, e.g. pages a
+        // recrawl kept or pages the pipeline added, vectors and pageranks are set on copies
+        ForwardIndex documents = new ForwardIndex();
+        for (WebsiteData website : newForwardIndex.getForwardIndex().values()) {
+            documents.addEntry(website.copy());
+        }
+        documents.calculateVector(newReverseIndex);
+        documents.calculatePageRankDamped();
+        index.reset(documents, newReverseIndex);
+        writeIndex(documents, newReverseIndex);
+        updateLemmaDictionary(documents);
+    }
+
+    private void writeIndex(ForwardIndex newForwardIndex, ReverseIndex newReverseIndex) {
+        if (indexPath.isPresent()) {
+            try {
+                IndexSegment.write(Path.of(indexPath.get()), newForwardIndex, newReverseIndex);
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Writing the index to " + indexPath.get() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * makes an index read from disk searchable, its vectors and pagerank are
+     * already calculated
+     *
+     * @param segment index file {@link IndexSegment}
+     */
+    void publishSegment(IndexSegment segment) {
+        index.reset(segment.getForwardIndex(), segment.getReverseIndex());
+        if (lemmaDictionary) {
+            // building the dictionary reads the content of every document, which is decoded on first use
+            Thread.ofPlatform().name("lemma-dictionary").daemon(true)
+                    .start(() -> updateLemmaDictionary(segment.getForwardIndex()));
+        }
+    }
+
+    private void updateLemmaDictionary(ForwardIndex newForwardIndex) {
+        if (lemmaDictionary) {
+            // queries made only of known tokens don't need the language models
+            TextAnalyzer analyzer = TextAnalyzer.getInstance();
+            analyzer.setDictionary(LemmaDictionary.build(newForwardIndex.getForwardIndex().values(), analyzer));
+        }
     }
 
 }
@@ -0,0 +1,85 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Decides which segments of a {@link SegmentedIndex} are merged. Every update
+ * adds a small segment, so once there are more than maxSegments segments the
+ * smallest ones are merged into one, which leaves the large segments alone
+ * most of the time. A segment whose share of deleted documents exceeds
+ * maxDeletedRatio is rewritten to drop them.
+ * <p>
+ * The lengths of the tfidf vectors of a segment are kept from when they
+ * were calculated while updates and deletes change the idf scores. Once the
+ * documents added and deleted since then exceed maxNormDrift of the index,
+ * they are calculated again in the background like a merge.
+ */
+public class MergePolicy {
+    private final int maxSegments;
+    private final double maxDeletedRatio;
+    private final double maxNormDrift;
+
+    /**
+     * creates a policy that recalculates vector lengths once a tenth of the index changed
+     *
+     * @param pMaxSegments     number of segments an index may have before small ones are merged
+     * @param pMaxDeletedRatio share of deleted documents at which a segment is rewritten
+     */
+    public MergePolicy(int pMaxSegments, double pMaxDeletedRatio) {
+        this(pMaxSegments, pMaxDeletedRatio, 0.1);
+    }
+
+    /**
+     * @param pMaxSegments     number of segments an index may have before small ones are merged
+     * @param pMaxDeletedRatio share of deleted documents at which a segment is rewritten
+     * @param pMaxNormDrift    share of the documents that may be added or deleted before the
+     *                         vector lengths of a segment are calculated again
+     */
+    public MergePolicy(int pMaxSegments, double pMaxDeletedRatio, double pMaxNormDrift) {
+        if (pMaxSegments < 1) {
+            throw new IllegalArgumentException("An index needs at least one segment");
+        }
+        this.maxSegments = pMaxSegments;
+        this.maxDeletedRatio = pMaxDeletedRatio;
+        this.maxNormDrift = pMaxNormDrift;
+    }
+
+    /**
+     * @param segments segments of an index
+     * @return segments to merge into one or an empty list if nothing has to be merged
+     */
+    public List<IndexSnapshot.Segment> findMerge(List<IndexSnapshot.Segment> segments) {
+        List<IndexSnapshot.Segment> candidates = new ArrayList<>();
+        if (segments.size() > maxSegments) {
+            List<IndexSnapshot.Segment> bySize = new ArrayList<>(segments);
+            bySize.sort(Comparator.comparingInt(IndexSnapshot.Segment::getNumberOfLiveDocuments));
+            candidates.addAll(bySize.subList(0, Math.max(2, segments.size() - maxSegments + 1)));
+        }
+        for (IndexSnapshot.Segment segment : segments) {
+            int deleted = segment.getNumberOfDocuments() - segment.getNumberOfLiveDocuments();
+            if (deleted > 0 && deleted >= maxDeletedRatio * segment.getNumberOfDocuments()
+                    && !candidates.contains(segment)) {
+                candidates.add(segment);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @param changedDocuments  documents added or deleted since the vector lengths of a segment were calculated
+     * @param numberOfDocuments number of live documents of the index
+     * @return true if the vector lengths have to be calculated again
+     */
+    public boolean needsNewNorms(long changedDocuments, int numberOfDocuments) {
+        return changedDocuments > maxNormDrift * numberOfDocuments;
+    }
+
+    /**
+     * @return number of segments an index may have before small ones are merged
+     */
+    public int getMaxSegments() {
+        return maxSegments;
+    }
+}
@@ -0,0 +1,295 @@
+package search;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+/**
+ * Fetches pages through the proxy with one shared {@link HttpClient}, so
+ * connections are kept alive and reused instead of being opened for every
+ * page. Bodies are requested compressed and streamed straight into the html
+ * parser while their hash is calculated.
+ */
+public class PageFetcher {
+    private final HttpClient client;
+    private final Duration readTimeout;
+    private final LongAdder numberOfFetches = new LongAdder();
+    private final LongAdder numberOfFailedFetches = new LongAdder();
+    private final LongAdder fetchNanos = new LongAdder();
+    private final LongAdder bytesTransferred = new LongAdder();
+    private final LongAdder bytesDecoded = new LongAdder();
+
+    /**
+     * @param proxyHost      host of the proxy
+     * @param proxyPort      port of the proxy
+     * @param connectTimeout timeout in milliseconds for opening a connection
+     * @param readTimeout    timeout in milliseconds for receiving the whole response including its body
+     */
+    public PageFetcher(String proxyHost, int proxyPort, int connectTimeout, int readTimeout) {
+        // HTTP/2 is negotiated where the server supports it, otherwise pooled
+        // HTTP/1.1 keep-alive connections are used
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .proxy(ProxySelector.of(new InetSocketAddress(proxyHost, proxyPort)))
+                .connectTimeout(Duration.ofMillis(connectTimeout))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+        this.readTimeout = Duration.ofMillis(readTimeout);
+    }
+
+    /**
+     * fetches and parses a page
+     *
+     * @param url          url of the page
+     * @param record       record of the last fetch, if given the request is conditional
+     * @param captureBody  if true the decoded body is kept in the result
+     * @return result of the fetch
+     * @throws IOException          if the page couldn't be fetched
+     * @throws InterruptedException
+     */
+    public FetchResult fetch(String url, CrawlRecord record, boolean captureBody)
+            throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(url))
+                .timeout(readTimeout)
+                .header("Accept-Encoding", "gzip, deflate")
+                .GET();
+        if (record != null && record.getEtag() != null) {
+            request.header("If-None-Match", record.getEtag());
+        }
+        if (record != null && record.getLastModified() != null) {
+            request.header("If-Modified-Since", record.getLastModified());
+        }
+
+        long start = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            // the request timeout only covers the headers, the body is closed once the rest of the deadline is over
+            InputStream body = response.body();
+            AtomicBoolean timedOut = new AtomicBoolean();
+            long remaining = readTimeout.toNanos() - (System.nanoTime() - start);
+            CompletableFuture<Void> deadline = CompletableFuture.runAsync(() -> {
+                timedOut.set(true);
+                closeQuietly(body);
+            }, CompletableFuture.delayedExecutor(Math.max(remaining, 0), TimeUnit.NANOSECONDS));
+            try (body) {
+                FetchResult result = read(url, response, body, captureBody);
+                numberOfFetches.increment();
+                return result;
+            } catch (IOException e) {
+                if (timedOut.get()) {
+                    throw new HttpTimeoutException("body not read within " + readTimeout.toMillis() + " ms");
+                }
+                throw e;
+            } finally {
+                deadline.cancel(false);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            numberOfFailedFetches.increment();
+            throw e instanceof IOException ioException ? ioException : new IOException(e);
+        } finally {
+            fetchNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * decodes and parses the body of a response
+     */
+    private FetchResult read(String url, HttpResponse<InputStream> response, InputStream body, boolean captureBody)
+            throws IOException {
+        Map<String, String> headers = firstValues(response.headers());
+        int status = response.statusCode();
+        if (status >= 300) {
+            // not modified or an error, the body isn't needed
+            body.transferTo(OutputStream.nullOutputStream());
+            return new FetchResult(status, headers, null, null, null);
+        }
+
+        MessageDigest digest = sha256();
+        ByteArrayOutputStream captured = captureBody ? new ByteArrayOutputStream() : null;
+        InputStream in = new CountingInputStream(body, bytesTransferred);
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("").toLowerCase(Locale.ENGLISH);
+        if (encoding.equals("gzip")) {
+            in = new GZIPInputStream(in);
+        } else if (encoding.equals("deflate")) {
+            in = new InflaterInputStream(in);
+        }
+        in = new CountingInputStream(new DigestInputStream(in, digest), bytesDecoded, captured);
+
+        // the parser closes the stream, which reads the rest the parser didn't need
+        Document document = Jsoup.parse(in, charset(response.headers()), url);
+        in.close();
+        String contentHash = HexFormat.of().formatHex(digest.digest());
+        return new FetchResult(status, headers, document, contentHash, captured == null ? null : captured.toByteArray());
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // a blocked read fails anyway
+        }
+    }
+
+    private static Map<String, String> firstValues(HttpHeaders httpHeaders) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> header : httpHeaders.map().entrySet()) {
+            if (!header.getValue().isEmpty() && !header.getKey().startsWith(":")) {
+                headers.put(header.getKey(), header.getValue().get(0));
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * @return charset of the Content-Type header or null to let the parser detect it
+     */
+    private static String charset(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        int index = contentType.toLowerCase(Locale.ENGLISH).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + "charset=".length()).split(";")[0].strip();
+        return charset.replace("\"", "");
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return number of successful fetches
+     */
+    public long getNumberOfFetches() {
+        return numberOfFetches.sum();
+    }
+
+    /**
+     * @return number of fetches that failed or timed out
+     */
+    public long getNumberOfFailedFetches() {
+        return numberOfFailedFetches.sum();
+    }
+
+    /**
+     * @return average time in milliseconds from sending a request until its body is read
+     */
+    public double getAverageFetchMillis() {
+        long fetches = numberOfFetches.sum() + numberOfFailedFetches.sum();
+        return fetches == 0 ? 0 : fetchNanos.sum() / 1_000_000.0 / fetches;
+    }
+
+    /**
+     * @return number of body bytes received over the network
+     */
+    public long getBytesTransferred() {
+        return bytesTransferred.sum();
+    }
+
+    /**
+     * @return number of body bytes after decompression
+     */
+    public long getBytesDecoded() {
+        return bytesDecoded.sum();
+    }
+
+    /**
+     * counts the bytes read from a stream and optionally copies them. Closing
+     * the stream reads it to its end first, so every byte is counted.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final LongAdder counter;
+        private final OutputStream copy;
+        private boolean closed;
+
+        CountingInputStream(InputStream in, LongAdder pCounter) {
+            this(in, pCounter, null);
+        }
+
+        CountingInputStream(InputStream in, LongAdder pCounter, OutputStream pCopy) {
+            super(in);
+            this.counter = pCounter;
+            this.copy = pCopy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                counter.increment();
+                if (copy != null) {
+                    copy.write(b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int count = super.read(bytes, offset, length);
+            if (count > 0) {
+                counter.add(count);
+                if (copy != null) {
+                    copy.write(bytes, offset, count);
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // skipped bytes have to pass through the digest and the copy as well
+            byte[] buffer = new byte[(int) Math.min(n, 8192)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                byte[] buffer = new byte[8192];
+                while (read(buffer, 0, buffer.length) >= 0) {
+                    // reads the rest of the stream
+                }
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
@@ -145,4 +145,27 @@ public final class PageGradingUtil {
         }
         return result;
     }
+
+    /**
+     * calculates the cosine similarity of two sparse vectors
+     *
+     * @param vector1 vector1
+     * @param vector2 vector 2
+     * @return cosine similarity
+     * @see <a href="https://en.wikipedia.org/wiki/Cosine_similarity">...</a>
+     */
+    public static double cosineSimilarity(final SparseVector vector1, final SparseVector vector2) {
+        return vector1.dot(vector2) / (vector1.norm() * vector2.norm());
+    }
+
+    /**
+     * calculates the cosine similarity of two sparse vectors when they are normalized
+     *
+     * @param vector1
+     * @param vector2
+     * @return cosine similarity
+     */
+    public static double cosineSimilarityImproved(final SparseVector vector1, final SparseVector vector2) {
+        return vector1.dot(vector2);
+    }
 }
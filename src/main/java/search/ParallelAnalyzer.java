@@ -0,0 +1,103 @@
+package search;
+
+import java.io.Serial;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Analyzes a batch of websites on a fork-join pool. Fetching and analyzing
+ * are separate stages: sources hand over the parsed websites and the
+ * tokenizing, stopword removal and lemmatization of all of them is split
+ * over the workers of the pool. The result is ordered by url, so it doesn't
+ * depend on the order pages were fetched in.
+ */
+public class ParallelAnalyzer implements AutoCloseable {
+    private static final ParallelAnalyzer COMMON = new ParallelAnalyzer(ForkJoinPool.commonPool());
+    /**
+     * number of websites a worker analyzes without splitting the batch further
+     */
+    private static final int BATCH_SIZE = 4;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param parallelism number of workers
+     */
+    public ParallelAnalyzer(int parallelism) {
+        this(new ForkJoinPool(parallelism));
+    }
+
+    private ParallelAnalyzer(ForkJoinPool pPool) {
+        this.pool = pPool;
+    }
+
+    /**
+     * @return analyzer running on the common fork-join pool
+     */
+    public static ParallelAnalyzer common() {
+        return COMMON;
+    }
+
+    /**
+     * analyzes all websites that aren't analyzed yet
+     *
+     * @param websites websites {@link WebsiteData}
+     * @return the websites ordered by url
+     */
+    public List<WebsiteData> analyze(Collection<WebsiteData> websites) {
+        List<WebsiteData> sorted = new ArrayList<>(websites);
+        sorted.sort(Comparator.comparing(WebsiteData::getUrl));
+        pool.invoke(new AnalyzeTask(sorted, 0, sorted.size()));
+        return sorted;
+    }
+
+    /**
+     * @return number of workers
+     */
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * shuts the pool down, the common pool is left running
+     */
+    @Override
+    public void close() {
+        if (pool != ForkJoinPool.commonPool()) {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * analyzes a range of websites, larger ranges are split in halves
+     */
+    private static class AnalyzeTask extends RecursiveAction {
+        @Serial
+        private static final long serialVersionUID = 1L;
+        // tasks only run in the pool, they are never serialized
+        private final transient List<WebsiteData> websites;
+        private final int from;
+        private final int to;
+
+        AnalyzeTask(List<WebsiteData> pWebsites, int pFrom, int pTo) {
+            this.websites = pWebsites;
+            this.from = pFrom;
+            this.to = pTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                for (int i = from; i < to; i++) {
+                    websites.get(i).analyze();
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new AnalyzeTask(websites, from, middle), new AnalyzeTask(websites, middle, to));
+        }
+    }
+}
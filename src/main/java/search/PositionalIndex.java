@@ -0,0 +1,87 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Reverse index with the positions of every term in every document, used
+ * for boolean and phrase queries {@link BooleanQuery}. A position is the
+ * number of the term in the analyzed terms of a document, so the terms of a
+ * phrase follow each other with stopwords already left out, the same as in
+ * the analyzed query.
+ */
+public final class PositionalIndex {
+    private final PositionalPostings[] postings;
+
+    private PositionalIndex(PositionalPostings[] pPostings) {
+        this.postings = pPostings;
+    }
+
+    /**
+     * builds the positional postings from the terms of the documents
+     *
+     * @param websites  analyzed documents by doc id {@link WebsiteData}
+     * @param dimension number of term ids
+     * @return positional index of the documents
+     */
+    public static PositionalIndex of(WebsiteData[] websites, int dimension) {
+        PositionalPostings.Builder[] builders = new PositionalPostings.Builder[dimension];
+        int[] positions = new int[16];
+        for (int docId = 0; docId < websites.length; docId++) {
+            int[] terms = websites[docId].getTerms();
+            // term id in the upper and position in the lower half, sorting groups the positions by term
+            long[] occurrences = new long[terms.length];
+            for (int position = 0; position < terms.length; position++) {
+                occurrences[position] = (long) terms[position] << 32 | position;
+            }
+            Arrays.sort(occurrences);
+            int start = 0;
+            for (int i = 1; i <= occurrences.length; i++) {
+                if (i < occurrences.length && occurrences[i] >>> 32 == occurrences[start] >>> 32) {
+                    continue;
+                }
+                int termId = (int) (occurrences[start] >>> 32);
+                if (i - start > positions.length) {
+                    positions = new int[Math.max(positions.length * 2, i - start)];
+                }
+                for (int j = start; j < i; j++) {
+                    positions[j - start] = (int) occurrences[j];
+                }
+                if (termId < dimension) {
+                    if (builders[termId] == null) {
+                        builders[termId] = new PositionalPostings.Builder();
+                    }
+                    builders[termId].add(docId, positions, i - start);
+                }
+                start = i;
+            }
+        }
+        PositionalPostings[] postings = new PositionalPostings[dimension];
+        for (int termId = 0; termId < dimension; termId++) {
+            if (builders[termId] != null) {
+                postings[termId] = builders[termId].build();
+            }
+        }
+        return new PositionalIndex(postings);
+    }
+
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return doc ids and positions or null if no document contains the term
+     */
+    public PositionalPostings getPostings(int termId) {
+        return termId >= 0 && termId < postings.length ? postings[termId] : null;
+    }
+
+    /**
+     * @return size of all postings in bytes
+     */
+    public long getSizeInBytes() {
+        long size = 0;
+        for (PositionalPostings termPostings : postings) {
+            if (termPostings != null) {
+                size += termPostings.sizeInBytes();
+            }
+        }
+        return size;
+    }
+}
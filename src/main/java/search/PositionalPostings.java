@@ -0,0 +1,280 @@
+package search;
+
+import java.util.Arrays;
+
+/**
+ * Postings of a single term with the positions of the term in every
+ * document. A document is stored as the varint encoded gap to the previous
+ * doc id, the number of bytes of its positions and the positions as varint
+ * encoded gaps, so a cursor steps over the positions of a document it doesn't
+ * need without decoding them.
+ * <p>
+ * Every {@value #SKIP_INTERVAL} documents a skip pointer stores the doc id
+ * and the offset of a document. {@link Cursor#advance(int)} gallops over the
+ * skip pointers and only decodes the documents after the one it lands on,
+ * which makes intersecting a short list with a long one cheap.
+ */
+public final class PositionalPostings {
+    static final int SKIP_INTERVAL = 64;
+    private final byte[] data;
+    private final int size;
+    // doc id and offset of every SKIP_INTERVAL-th document
+    private final int[] skipDocIds;
+    private final int[] skipOffsets;
+
+    private PositionalPostings(byte[] pData, int pSize, int[] pSkipDocIds, int[] pSkipOffsets) {
+        this.data = pData;
+        this.size = pSize;
+        this.skipDocIds = pSkipDocIds;
+        this.skipOffsets = pSkipOffsets;
+    }
+
+    /**
+     * @return number of documents containing the term
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of bytes the list takes
+     */
+    public int sizeInBytes() {
+        return data.length + (skipDocIds.length + skipOffsets.length) * Integer.BYTES;
+    }
+
+    /**
+     * @return cursor positioned before the first document
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Iterates over the documents of a list in ascending order of their ids.
+     */
+    public final class Cursor {
+        private int index = -1;
+        private int offset;
+        private int docId;
+        private int positionsOffset;
+        private int positionsLength;
+        private int[] positions = new int[4];
+        private int numberOfPositions = -1;
+
+        private Cursor() {
+        }
+
+        /**
+         * moves to the next document
+         *
+         * @return false if there is no document left
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                index = size;
+                return false;
+            }
+            index++;
+            docId += readVarint();
+            positionsLength = readVarint();
+            positionsOffset = offset;
+            offset += positionsLength;
+            numberOfPositions = -1;
+            return true;
+        }
+
+        /**
+         * moves to the first document whose id is at least target. The skip
+         * pointers are searched by galloping from the current one, then the
+         * documents after the found pointer are stepped over.
+         *
+         * @param target smallest doc id to stop at
+         * @return false if there is no such document left
+         */
+        public boolean advance(int target) {
+            if (index >= size) {
+                return false;
+            }
+            if (index >= 0 && docId >= target) {
+                return true;
+            }
+            // the last skip pointer before the target, if it is ahead of the cursor
+            int skip = (index + 1) / SKIP_INTERVAL;
+            if (skip < skipDocIds.length && skipDocIds[skip] < target) {
+                int step = 1;
+                int low = skip;
+                int high = skip + 1;
+                while (high < skipDocIds.length && skipDocIds[high] < target) {
+                    low = high;
+                    step *= 2;
+                    high = low + step;
+                }
+                high = Math.min(high, skipDocIds.length);
+                // binary search for the last pointer below the target in [low, high)
+                while (high - low > 1) {
+                    int middle = (low + high) >>> 1;
+                    if (skipDocIds[middle] < target) {
+                        low = middle;
+                    } else {
+                        high = middle;
+                    }
+                }
+                if (low * SKIP_INTERVAL > index) {
+                    index = low * SKIP_INTERVAL;
+                    docId = skipDocIds[low];
+                    offset = skipOffsets[low];
+                    positionsLength = readVarint();
+                    positionsOffset = offset;
+                    offset += positionsLength;
+                    numberOfPositions = -1;
+                }
+            }
+            while (index < 0 || docId < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return id of the current document
+         */
+        public int docId() {
+            return docId;
+        }
+
+        /**
+         * @return number of times the term occurs in the current document
+         */
+        public int frequency() {
+            decodePositions();
+            return numberOfPositions;
+        }
+
+        /**
+         * @param i number of the occurrence
+         * @return position of the i-th occurrence of the term in the current document
+         */
+        public int position(int i) {
+            decodePositions();
+            return positions[i];
+        }
+
+        private void decodePositions() {
+            if (numberOfPositions >= 0) {
+                return;
+            }
+            int end = offset;
+            offset = positionsOffset;
+            numberOfPositions = 0;
+            int position = 0;
+            while (offset < end) {
+                if (numberOfPositions == positions.length) {
+                    positions = Arrays.copyOf(positions, positions.length * 2);
+                }
+                position += readVarint();
+                positions[numberOfPositions++] = position;
+            }
+        }
+
+        private int readVarint() {
+            int value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[offset++];
+                value |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    /**
+     * Collects the postings of a term, doc ids have to be added in ascending order.
+     */
+    public static final class Builder {
+        private byte[] data = new byte[16];
+        private int length;
+        private int size;
+        private int lastDocId;
+        private int[] skipDocIds = new int[0];
+        private int[] skipOffsets = new int[0];
+        private byte[] positions = new byte[16];
+
+        /**
+         * @param docId             id of a document larger than the last one
+         * @param termPositions     ascending positions of the term in the document
+         * @param numberOfPositions number of positions to take from termPositions
+         */
+        public void add(int docId, int[] termPositions, int numberOfPositions) {
+            if (size > 0 && docId <= lastDocId) {
+                throw new IllegalArgumentException("Doc ids have to be ascending: " + docId + " after " + lastDocId);
+            }
+            if (size % SKIP_INTERVAL == 0) {
+                int skip = size / SKIP_INTERVAL;
+                if (skip == skipDocIds.length) {
+                    skipDocIds = Arrays.copyOf(skipDocIds, Math.max(4, skip * 2));
+                    skipOffsets = Arrays.copyOf(skipOffsets, skipDocIds.length);
+                }
+                skipDocIds[skip] = docId;
+                // a skip pointer points behind the doc id gap of its document
+                skipOffsets[skip] = length + varintLength(size == 0 ? docId : docId - lastDocId);
+            }
+            int positionsLength = 0;
+            int previous = 0;
+            for (int i = 0; i < numberOfPositions; i++) {
+                if (positionsLength + 5 > positions.length) {
+                    positions = Arrays.copyOf(positions, positions.length * 2);
+                }
+                positionsLength = writeVarint(positions, positionsLength, termPositions[i] - previous);
+                previous = termPositions[i];
+            }
+            if (length + 10 + positionsLength > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 10 + positionsLength));
+            }
+            length = writeVarint(data, length, size == 0 ? docId : docId - lastDocId);
+            length = writeVarint(data, length, positionsLength);
+            System.arraycopy(positions, 0, data, length, positionsLength);
+            length += positionsLength;
+            size++;
+            lastDocId = docId;
+        }
+
+        private static int varintLength(int value) {
+            int bytes = 1;
+            while ((value & ~0x7f) != 0) {
+                bytes++;
+                value >>>= 7;
+            }
+            return bytes;
+        }
+
+        private static int writeVarint(byte[] buffer, int offset, int value) {
+            while ((value & ~0x7f) != 0) {
+                buffer[offset++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[offset++] = (byte) value;
+            return offset;
+        }
+
+        /**
+         * @return number of added documents
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the postings, trimmed to their size
+         */
+        public PositionalPostings build() {
+            int skips = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+            return new PositionalPostings(Arrays.copyOf(data, length), size, Arrays.copyOf(skipDocIds, skips),
+                    Arrays.copyOf(skipOffsets, skips));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package search;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Postings of a single term: the ids of the documents containing the term in
+ * ascending order and the weight of the term in each of them. Doc ids are
+ * stored as varint encoded gaps, weights as floats in a parallel buffer, so a
+ * list takes a few bytes per document and is read without boxing.
+ */
+public final class PostingsList {
+    private final ByteBuffer docIds;
+    private final FloatBuffer weights;
+
+    /**
+     * @param pDocIds  varint encoded gaps between the doc ids
+     * @param pWeights weight of the term per document
+     */
+    PostingsList(ByteBuffer pDocIds, FloatBuffer pWeights) {
+        this.docIds = pDocIds;
+        this.weights = pWeights;
+    }
+
+    /**
+     * @return number of documents containing the term
+     */
+    public int size() {
+        return weights.limit();
+    }
+
+    /**
+     * @return the varint encoded doc id gaps, e.g. to store the list in a file
+     */
+    ByteBuffer getDocIds() {
+        return docIds.duplicate();
+    }
+
+    /**
+     * @return the weights, e.g. to store the list in a file
+     */
+    FloatBuffer getWeights() {
+        return weights.duplicate();
+    }
+
+    /**
+     * @return cursor positioned before the first document
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * @return number of bytes the list takes
+     */
+    public int sizeInBytes() {
+        return docIds.limit() + weights.limit() * Float.BYTES;
+    }
+
+    /**
+     * Iterates over the documents of a list in ascending order of their ids.
+     * <pre>{@code
+     * PostingsList.Cursor cursor = postings.cursor();
+     * while (cursor.next()) {
+     *     score[cursor.docId()] += cursor.weight();
+     * }
+     * }</pre>
+     */
+    public final class Cursor {
+        private int position = -1;
+        private int offset;
+        private int docId;
+
+        private Cursor() {
+        }
+
+        /**
+         * moves to the next document
+         *
+         * @return false if there is no document left
+         */
+        public boolean next() {
+            if (position + 1 >= size()) {
+                position = size();
+                return false;
+            }
+            position++;
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = docIds.get(offset++);
+                gap |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            docId += gap;
+            return true;
+        }
+
+        /**
+         * moves to the first document whose id is at least target, the weights
+         * of the documents skipped on the way aren't read
+         *
+         * @param target smallest doc id to stop at
+         * @return false if there is no such document left
+         */
+        public boolean advance(int target) {
+            if (position >= size()) {
+                return false;
+            }
+            while (position < 0 || docId < target) {
+                if (!next()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return id of the current document
+         */
+        public int docId() {
+            return docId;
+        }
+
+        /**
+         * @return weight of the term in the current document
+         */
+        public float weight() {
+            return weights.get(position);
+        }
+    }
+
+    /**
+     * Collects the postings of a term, doc ids have to be added in ascending order.
+     */
+    public static final class Builder {
+        private byte[] docIds = new byte[16];
+        private float[] weights = new float[4];
+        private int length;
+        private int size;
+        private int lastDocId;
+
+        /**
+         * @param docId  id of a document larger than the last one
+         * @param weight weight of the term in the document
+         */
+        public void add(int docId, float weight) {
+            if (size > 0 && docId <= lastDocId) {
+                throw new IllegalArgumentException("Doc ids have to be ascending: " + docId + " after " + lastDocId);
+            }
+            ensureCapacity(5, 1);
+            writeVarint(size == 0 ? docId : docId - lastDocId);
+            weights[size++] = weight;
+            lastDocId = docId;
+        }
+
+        /**
+         * appends the postings of another builder whose doc ids are all larger
+         * than the ones of this builder, e.g. of the next range of documents
+         *
+         * @param other builder of the following documents
+         */
+        public void append(Builder other) {
+            if (other.size == 0) {
+                return;
+            }
+            // the first doc id of a builder isn't a gap, it is re-encoded relative to our last one
+            int offset = 0;
+            int firstDocId = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = other.docIds[offset++];
+                firstDocId |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            if (size > 0 && firstDocId <= lastDocId) {
+                throw new IllegalArgumentException("Doc ids have to be ascending: " + firstDocId + " after " + lastDocId);
+            }
+            ensureCapacity(5 + other.length - offset, other.size);
+            writeVarint(size == 0 ? firstDocId : firstDocId - lastDocId);
+            System.arraycopy(other.docIds, offset, docIds, length, other.length - offset);
+            length += other.length - offset;
+            System.arraycopy(other.weights, 0, weights, size, other.size);
+            size += other.size;
+            lastDocId = other.lastDocId;
+        }
+
+        private void ensureCapacity(int bytes, int postings) {
+            if (length + bytes > docIds.length) {
+                docIds = Arrays.copyOf(docIds, Math.max(docIds.length * 2, length + bytes));
+            }
+            if (size + postings > weights.length) {
+                weights = Arrays.copyOf(weights, Math.max(weights.length * 2, size + postings));
+            }
+        }
+
+        private void writeVarint(int value) {
+            while ((value & ~0x7f) != 0) {
+                docIds[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            docIds[length++] = (byte) value;
+        }
+
+        /**
+         * @return number of added documents
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the postings list, trimmed to its size
+         */
+        public PostingsList build() {
+            return new PostingsList(ByteBuffer.wrap(Arrays.copyOf(docIds, length)),
+                    FloatBuffer.wrap(Arrays.copyOf(weights, size)));
+        }
+    }
+}
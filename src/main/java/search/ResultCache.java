@@ -0,0 +1,224 @@
+package search;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of serialized search results, the least recently used
+ * result is evicted once the cache is full. A result belongs to the index
+ * version it was searched in, the first query of a newer version clears the
+ * cache, and results of older snapshots are neither returned nor cached.
+ * <p>
+ * Identical queries arriving while the result is searched for wait for that
+ * search instead of starting their own, so a popular query is searched once
+ * after every index update however many requests arrive meanwhile.
+ */
+public class ResultCache {
+    private final int capacity;
+    // access ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<Key, Cached> results;
+    private final Map<Flight, CompletableFuture<Result>> inFlight = new ConcurrentHashMap<>();
+    private volatile long version = Long.MIN_VALUE;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param pCapacity maximum number of cached results
+     */
+    public ResultCache(int pCapacity) {
+        if (pCapacity < 1) {
+            throw new IllegalArgumentException("The cache has to hold at least one result, capacity=" + pCapacity);
+        }
+        this.capacity = pCapacity;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+                if (size() > capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * returns the cached result of the query or searches for it. If the same
+     * query of the same version is searched for already, waits for that search.
+     *
+     * @param key     normalized query
+     * @param version version of the snapshot the query is searched in {@link IndexSnapshot}
+     * @param search  searches for the result if it isn't cached
+     * @return result of the query
+     */
+    public Result get(Key key, long version, Supplier<Result> search) {
+        if (version > this.version) {
+            invalidate(version);
+        }
+        Result result = lookup(key, version);
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        Flight flight = new Flight(key, version);
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CompletableFuture<Result> running = inFlight.putIfAbsent(flight, future);
+        if (running != null) {
+            coalesced.increment();
+            return join(running);
+        }
+        try {
+            // a search finishing between the lookup and taking over the flight has cached its result already
+            result = lookup(key, version);
+            if (result != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                result = search.get();
+                synchronized (results) {
+                    if (version == this.version) {
+                        results.put(key, new Cached(version, result));
+                    }
+                }
+            }
+            future.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flight, future);
+        }
+    }
+
+    private Result lookup(Key key, long version) {
+        synchronized (results) {
+            Cached cached = results.get(key);
+            return cached != null && cached.version() == version ? cached.result() : null;
+        }
+    }
+
+    /**
+     * clears the results of older versions
+     */
+    private void invalidate(long newVersion) {
+        synchronized (results) {
+            if (newVersion > version) {
+                invalidations.add(results.size());
+                results.clear();
+                version = newVersion;
+            }
+        }
+    }
+
+    private static Result join(CompletableFuture<Result> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            // the waiting requests fail like the one that searched
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @return number of cached results
+     */
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+
+    /**
+     * @return maximum number of cached results
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of queries answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of queries that were searched for
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return number of queries that waited for the same query to be searched for
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    /**
+     * @return number of results evicted to make room for newer ones
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of results cleared because the index changed
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * @return share of the queries that weren't searched for themselves
+     */
+    public double getHitRate() {
+        long saved = hits.sum() + coalesced.sum();
+        long queries = saved + misses.sum();
+        return queries == 0 ? 0 : (double) saved / queries;
+    }
+
+    /**
+     * A query normalized to what its result depends on.
+     *
+     * @param algorithm ranking algorithm
+     * @param terms     analyzed terms of the query, or the query itself if its operators matter
+     * @param limit     maximum number of results
+     * @param fuzzy     true if misspelled words are searched for
+     */
+    public record Key(String algorithm, List<String> terms, int limit, boolean fuzzy) {
+    }
+
+    /**
+     * A serialized result.
+     *
+     * @param body       results as sent to the client
+     * @param exact      false if the search stopped early and other documents might belong to the results
+     * @param suggestion query with misspelled words corrected or null
+     */
+    public record Result(String body, boolean exact, String suggestion) {
+    }
+
+    private record Cached(long version, Result result) {
+    }
+
+    private record Flight(Key key, long version) {
+    }
+}
@@ -1,103 +1,295 @@
 package search;
 
-import jakarta.enterprise.context.ApplicationScoped;
-
-import java.io.IOException;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntToDoubleFunction;
 
 /**
  * Represents a reverse index. A reverse index is a
  * Data structure that maps terms to the documents in which they are.
+ * Terms are identified by their id in the {@link TermDictionary}, documents
+ * by their position in the url ordered forward index. The documents of a
+ * term are kept in a compressed {@link PostingsList} with the tf score of the
+ * term in each document. The idf is kept per term and applied when scoring,
+ * so the postings stay valid when the statistics of a larger index the
+ * reverse index is part of change, see {@link SegmentedIndex}.
  */
 
 public final class ReverseIndex {
+    /**
+     * minimum number of documents of a partial index
+     */
+    private static final int MIN_PARTITION_SIZE = 256;
+    // postings of key=term id, value=(doc ids with tf score)
+    private final PostingsList[] postings;
+    private final String[] urls;
+    private final double[] idf;
+    // euclidean length of the tfidf vector of each document by doc id
+    private final double[] norms;
+    private final int numberOfTerms;
+    // snapshot of this index as its only segment, for the searches taking a forward and a reverse index
+    private volatile CachedSnapshot snapshot;
 
-    private ReverseIndex() {
+    /**
+     * @param pPostings postings by term id, null for terms without documents
+     * @param pUrls     urls ordered by doc id
+     */
+    ReverseIndex(PostingsList[] pPostings, String[] pUrls) {
+        this.postings = pPostings;
+        this.urls = pUrls;
+        // calculating the IDF Score
+        this.idf = new double[pPostings.length];
+        int count = 0;
+        for (int termId = 0; termId < pPostings.length; termId++) {
+            if (pPostings[termId] != null) {
+                count++;
+                idf[termId] = Math.log((double) pUrls.length / pPostings[termId].size());
+            }
+        }
+        this.numberOfTerms = count;
+        this.norms = calculateNorms(termId -> idf[termId]);
     }
 
     /**
-     * creates a reverse index from a forward index
+     * creates a reverse index from a forward index. The doc id of a website
+     * is its position in the forward index ordered by url.
      *
      * @param mapOfWebsiteData forward index {@link ForwardIndex}
      * @return reverse index
-     * @throws IOException
      */
-    public static Map<String, Map<String, Double>> getReverseIndex(Map<String, WebsiteData> mapOfWebsiteData)
-            throws IOException {
-        // Map of key=token, value=(Map of key=document, value=tfidf score)
-        Map<String, Map<String, Double>> reverseIndex = new TreeMap<>();
-
-        for (String url : mapOfWebsiteData.keySet()) {
-            List<String> completeTokenList = mapOfWebsiteData.get(url).getTokenList();
+    public static ReverseIndex getReverseIndex(Map<String, WebsiteData> mapOfWebsiteData) {
+        int partitions = Math.min(ForkJoinPool.getCommonPoolParallelism(),
+                (mapOfWebsiteData.size() + MIN_PARTITION_SIZE - 1) / MIN_PARTITION_SIZE);
+        return getReverseIndex(mapOfWebsiteData, partitions);
+    }
 
-            // loops through all tokens and creates the reverse index
-            for (String token : completeTokenList) {
+    /**
+     * creates a reverse index from a forward index. The documents are split in
+     * ranges of consecutive doc ids and a partial index of every range is built
+     * on the common fork-join pool. The partial postings are appended in the
+     * order of the ranges, so the result doesn't depend on the number of
+     * partitions.
+     *
+     * @param mapOfWebsiteData forward index {@link ForwardIndex}
+     * @param partitions       number of partial indexes, 1 builds the index in the calling thread
+     * @return reverse index
+     */
+    public static ReverseIndex getReverseIndex(Map<String, WebsiteData> mapOfWebsiteData, int partitions) {
+        String[] urls = mapOfWebsiteData.keySet().toArray(new String[0]);
+        Arrays.sort(urls);
+        int[][] documents = new int[urls.length][];
+        for (int docId = 0; docId < urls.length; docId++) {
+            documents[docId] = mapOfWebsiteData.get(urls[docId]).getTerms();
+        }
+        int dimension = TermDictionary.getInstance().size();
+        int numberOfPartitions = Math.max(1, Math.min(partitions, urls.length));
 
-                // when the token doesnt exist create a new entry to the hashmap
-                if (!reverseIndex.containsKey(token)) {
-                    // second map saving document an tfidf score
-                    Map<String, Double> documents = new HashMap<>();
-                    // initilizing the tf score
+        PostingsList.Builder[][] partialIndexes = new PostingsList.Builder[numberOfPartitions][];
+        if (numberOfPartitions == 1) {
+            partialIndexes[0] = buildPartialIndex(documents, 0, documents.length, dimension);
+        } else {
+            List<ForkJoinTask<PostingsList.Builder[]>> tasks = new ArrayList<>(numberOfPartitions);
+            for (int i = 0; i < numberOfPartitions; i++) {
+                int from = (int) ((long) documents.length * i / numberOfPartitions);
+                int to = (int) ((long) documents.length * (i + 1) / numberOfPartitions);
+                tasks.add(ForkJoinPool.commonPool().submit(() -> buildPartialIndex(documents, from, to, dimension)));
+            }
+            for (int i = 0; i < numberOfPartitions; i++) {
+                partialIndexes[i] = tasks.get(i).join();
+            }
+        }
 
-                    documents.put(url, calculateTF(token, completeTokenList));
-                    reverseIndex.put(token, documents);
+        // merging the partial indexes in one pass over the terms
+        PostingsList[] postings = new PostingsList[dimension];
+        for (int termId = 0; termId < dimension; termId++) {
+            PostingsList.Builder builder = null;
+            for (PostingsList.Builder[] partialIndex : partialIndexes) {
+                PostingsList.Builder partial = partialIndex[termId];
+                if (partial == null) {
+                    continue;
+                }
+                if (builder == null) {
+                    builder = partial;
                 } else {
-                    // when the tokens exists, get the map and add an entry
-                    reverseIndex.get(token).put(url, calculateTF(token, completeTokenList));
+                    builder.append(partial);
                 }
             }
+            if (builder != null) {
+                postings[termId] = builder.build();
+            }
         }
+        return new ReverseIndex(postings, urls);
+    }
 
-        // calculating the IDF Score
+    /**
+     * builds the postings of a range of documents with their tf score. The
+     * terms of every document are counted in a single pass, the counts are
+     * kept in an array indexed by term id that is reset after each document.
+     *
+     * @param documents term ids of the documents by doc id
+     * @param from      first doc id of the range
+     * @param to        doc id after the range
+     * @param dimension number of term ids
+     * @return builders by term id, null for terms not in the range
+     */
+    private static PostingsList.Builder[] buildPartialIndex(int[][] documents, int from, int to, int dimension) {
+        PostingsList.Builder[] builders = new PostingsList.Builder[dimension];
+        int[] counts = new int[dimension];
+        int[] distinctTerms = new int[0];
+        for (int docId = from; docId < to; docId++) {
+            int[] terms = documents[docId];
+            if (terms.length > distinctTerms.length) {
+                distinctTerms = new int[terms.length];
+            }
+            int numberOfDistinctTerms = 0;
+            for (int termId : terms) {
+                if (counts[termId]++ == 0) {
+                    distinctTerms[numberOfDistinctTerms++] = termId;
+                }
+            }
+            for (int i = 0; i < numberOfDistinctTerms; i++) {
+                int termId = distinctTerms[i];
+                if (builders[termId] == null) {
+                    builders[termId] = new PostingsList.Builder();
+                }
+                builders[termId].add(docId, (float) ((double) counts[termId] / terms.length));
+                counts[termId] = 0;
+            }
+        }
+        return builders;
+    }
 
-        for (String token : reverseIndex.keySet()) {
-            // counting of the documents containing token
-            double invertedDocumentFrequency = getIDF(token, mapOfWebsiteData, reverseIndex);
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return doc ids and tf scores or null if no document contains the term
+     */
+    public PostingsList getPostings(int termId) {
+        return termId >= 0 && termId < postings.length ? postings[termId] : null;
+    }
 
-            // looping through inner map to set tfidf score
-            for (String document : reverseIndex.get(token).keySet()) {
-                double currentTFScore = reverseIndex.get(token).get(document);
-                reverseIndex.get(token).put(document, currentTFScore * invertedDocumentFrequency);
+    /**
+     * @param termId id of a term {@link TermDictionary}
+     * @return true if a document contains the term
+     */
+    public boolean contains(int termId) {
+        return getPostings(termId) != null;
+    }
 
-            }
+    /**
+     * @param docId id of a document
+     * @return url of the document
+     */
+    public String getUrl(int docId) {
+        return urls[docId];
+    }
 
+    /**
+     * calculates the euclidean length of the tfidf vector of every document
+     *
+     * @param idf idf score by term id
+     * @return length by doc id
+     */
+    double[] calculateNorms(IntToDoubleFunction idf) {
+        double[] lengths = new double[urls.length];
+        for (int termId = 0; termId < postings.length; termId++) {
+            if (postings[termId] == null) {
+                continue;
+            }
+            double termIdf = idf.applyAsDouble(termId);
+            PostingsList.Cursor cursor = postings[termId].cursor();
+            while (cursor.next()) {
+                double weight = cursor.weight() * termIdf;
+                lengths[cursor.docId()] += weight * weight;
+            }
+        }
+        for (int docId = 0; docId < lengths.length; docId++) {
+            lengths[docId] = Math.sqrt(lengths[docId]);
         }
-        return reverseIndex;
+        return lengths;
     }
 
     /**
-     * calculates the idf score for a token
-     * {@see https://en.wikipedia.org/wiki/Tf-idf}
+     * returns a snapshot with this index as its only segment. The snapshot is
+     * built by the first search with a forward index and reused by the
+     * following ones, so a query only walks the postings of its terms instead
+     * of copying the pagerank and vector length of every document. The
+     * pageranks are read when the snapshot is built.
      *
-     * @param token           token
-     * @param forwardIndexMap forward index{@link ForwardIndex}
-     * @param reverseIndexMap reverse index {@link ReverseIndex}
-     * @return idf score
+     * @param websites forward index this index was built from {@link ForwardIndex}
+     * @return snapshot of the index {@link IndexSnapshot}
      */
-    static double getIDF(String token, Map<String, WebsiteData> forwardIndexMap,
-                         Map<String, Map<String, Double>> reverseIndexMap) {
-        double numberOfDocuments = forwardIndexMap.keySet().size();
-        double documentFrequency = reverseIndexMap.get(token).keySet().size();
-        return Math.log(numberOfDocuments / documentFrequency);
+    IndexSnapshot snapshot(Map<String, WebsiteData> websites) {
+        CachedSnapshot cached = snapshot;
+        if (cached == null || cached.websites() != websites) {
+            // racing searches build equal snapshots
+            cached = new CachedSnapshot(websites, IndexSnapshot.of(websites, this));
+            snapshot = cached;
+        }
+        return cached.snapshot();
     }
 
     /**
-     * calculates the tf score for a token in a token list
-     * {@see https://en.wikipedia.org/wiki/Tf-idf}
-     *
-     * @param token token
-     * @param doc   token list
-     * @return tf score
+     * @param termId id of a term {@link TermDictionary}
+     * @return idf score of the term in this index, 0 for unknown terms
+     */
+    public double getIdf(int termId) {
+        return termId >= 0 && termId < idf.length ? idf[termId] : 0;
+    }
+
+    /**
+     * @param docId id of a document
+     * @return euclidean length of the tfidf vector of the document
+     */
+    public double getNorm(int docId) {
+        return norms[docId];
+    }
+
+    /**
+     * @param url url of a document
+     * @return id of the document or a negative number if the index doesn't contain it
+     */
+    public int getDocId(String url) {
+        return Arrays.binarySearch(urls, url);
+    }
+
+    /**
+     * @return number of documents, every doc id is smaller than this
      */
-    static double calculateTF(String token, List<String> doc) {
-        double numOfWords = doc.size();
-        double countOfToken = Collections.frequency(doc, token);
+    public int getNumberOfDocuments() {
+        return urls.length;
+    }
 
-        return countOfToken / numOfWords;
+    /**
+     * @return number of term ids covered by the index, i.e. the length of the vectors
+     */
+    public int getDimension() {
+        return postings.length;
     }
 
+    /**
+     * @return number of distinct terms in the index
+     */
+    public int getNumberOfTerms() {
+        return numberOfTerms;
+    }
+
+    /**
+     * @return number of bytes taken by all postings lists
+     */
+    public long getPostingsSizeInBytes() {
+        long bytes = 0;
+        for (PostingsList documents : postings) {
+            if (documents != null) {
+                bytes += documents.sizeInBytes();
+            }
+        }
+        return bytes;
+    }
+
+    private record CachedSnapshot(Map<String, WebsiteData> websites, IndexSnapshot snapshot) {
+    }
 }
@@ -3,9 +3,10 @@ package search;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 
 /**
@@ -16,8 +17,10 @@ import java.util.Map;
 public final class SearchQuery {
 
     private static final double WEIGHT = 0.85;
-    // only used for graph creation
-    public static Map<String, Double> finalScoreMap;
+    // number of results of the pagerank search
+    private static final int PAGERANK_RESULTS = 30;
+    // number of terms a misspelled query term is expanded to at most
+    private static final int FUZZY_EXPANSIONS = 10;
 
     private SearchQuery() {
     }
@@ -34,35 +37,193 @@ public final class SearchQuery {
      * @see <a href="https://en.wikipedia.org/wiki/Tf-idf">...</a>
      */
     public static List<String> search(final String query, Map<String, WebsiteData> mapOfWebsiteData,
-                                      Map<String, Map<String, Double>> reverseIndexMap)
+                                      ReverseIndex reverseIndexMap)
             throws IOException {
-        Map<String, Double> summedMetric = new HashMap<>();
-
-        // processing the search query
-        List<String> queryList = WebsiteData.createTokens(query);
-
-        for (String token : queryList) {
-            if (reverseIndexMap.keySet().contains(token)) {
-                for (String url : reverseIndexMap.get(token).keySet()) {
-                    double currentMetric = reverseIndexMap.get(token).get(url);
-                    // if the summedMetric map already contains the url, adding the new tfdidf to
-                    // the old one
-                    if (summedMetric.containsKey(url)) {
-                        double currentScoreForUrl = summedMetric.get(url);
-                        summedMetric.put(url, currentScoreForUrl + currentMetric);
-                        // if the summedMetric map doesnt contain the url, add a new entry with key=url
-                        // and value=tfidf score
-                    } else {
-                        summedMetric.put(url, currentMetric);
-                    }
-                }
+        return search(query, reverseIndexMap.snapshot(mapOfWebsiteData));
+    }
+
+    /**
+     * Searching for all website containing the search query. The results are
+     * ordered by tfidf score
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @return list of all found urls
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Tf-idf">...</a>
+     */
+    public static List<String> search(final String query, IndexSnapshot index) throws IOException {
+        return search(query, index, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Searching for the k websites with the highest tfidf score for the
+     * search query. Documents that can't get into the top k aren't scored
+     * {@link TopKSearcher}.
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @param k     maximum number of results
+     * @return list of found urls ordered by tfidf score
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Tf-idf">...</a>
+     */
+    public static List<String> search(final String query, IndexSnapshot index, int k) throws IOException {
+        QueryTerms terms = getTfidfTerms(query, index);
+        return toUrls(new TopKSearcher(index, terms.termIds(), terms.weights(), false, 0, k).search());
+    }
+
+    /**
+     * Searching for the k websites with the highest tfidf score for the
+     * search query over the impact ordered postings. The tiers with the
+     * highest impacts are read first and the search stops as soon as the
+     * remaining ones can't change the top k {@link ImpactSearcher}.
+     *
+     * @param query       query which is searched for
+     * @param index       snapshot of the index {@link IndexSnapshot}
+     * @param k           maximum number of results
+     * @param maxPostings number of postings read per segment before the result
+     *                    is returned as approximate, 0 for no limit
+     * @return found urls ordered by tfidf score and whether they are exactly the top k
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Tf-idf">...</a>
+     */
+    public static SearchResult searchImpactOrdered(final String query, IndexSnapshot index, int k, long maxPostings)
+            throws IOException {
+        QueryTerms terms = getTfidfTerms(query, index);
+        ImpactSearcher searcher = new ImpactSearcher(index, terms.termIds(), terms.weights(), k, maxPostings);
+        List<String> urls = toUrls(searcher.search());
+        return new SearchResult(urls, searcher.isExact());
+    }
+
+    /**
+     * Searching for the k websites with the highest tfidf score for the
+     * search query. Query terms that aren't in the index are expanded to the
+     * terms of the index within one or two edits of them
+     * {@link LevenshteinAutomaton}, weighted lower the more edits they take,
+     * and replaced by their closest term in the suggestion. Query terms the
+     * index contains are searched as they are, so a correctly spelled query
+     * ranks like {@link #searchImpactOrdered(String, IndexSnapshot, int, long)}.
+     *
+     * @param query       query which is searched for
+     * @param index       snapshot of the index {@link IndexSnapshot}
+     * @param k           maximum number of results
+     * @param maxPostings number of postings read per segment before the result
+     *                    is returned as approximate, 0 for no limit
+     * @return found urls ordered by tfidf score and the corrected query
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Tf-idf">...</a>
+     */
+    public static SearchResult searchFuzzy(final String query, IndexSnapshot index, int k, long maxPostings)
+            throws IOException {
+        FrontCodedTerms sortedTerms = index.getSortedTerms();
+        Map<Integer, Double> weights = new TreeMap<>();
+        StringBuilder suggestion = new StringBuilder();
+        boolean corrected = false;
+        for (String token : WebsiteData.createQueryTokens(query)) {
+            int exactTermId = TermDictionary.getInstance().lookup(token);
+            if (index.contains(exactTermId)) {
+                // neighbours of a correctly spelled term would only add postings and shift the ranking
+                weights.merge(exactTermId, index.getIdf(exactTermId), Double::sum);
+                suggestion.append(suggestion.isEmpty() ? "" : " ").append(token);
+                continue;
             }
+            List<LevenshteinAutomaton.Match> matches = new LevenshteinAutomaton(token,
+                    LevenshteinAutomaton.maxDistance(token.length())).match(sortedTerms);
+            // the closest terms first, equally close ones by the number of documents containing them
+            matches.sort(Comparator.comparingInt(LevenshteinAutomaton.Match::distance)
+                    .thenComparing(match -> -sortedTerms.getWeight(match.ordinal())));
+            for (LevenshteinAutomaton.Match match : matches.subList(0, Math.min(FUZZY_EXPANSIONS, matches.size()))) {
+                int termId = sortedTerms.getTermId(match.ordinal());
+                int length = Math.min(token.length(), TermDictionary.getInstance().getTerm(termId).length());
+                double similarity = 1 - (double) match.distance() / length;
+                weights.merge(termId, similarity * index.getIdf(termId), Double::sum);
+            }
+            String term = token;
+            if (!matches.isEmpty()) {
+                term = sortedTerms.getTerm(matches.get(0).ordinal());
+                corrected = true;
+            }
+            suggestion.append(suggestion.isEmpty() ? "" : " ").append(term);
         }
+        int[] termIds = new int[weights.size()];
+        double[] queryWeights = new double[termIds.length];
+        int i = 0;
+        for (Map.Entry<Integer, Double> weight : weights.entrySet()) {
+            termIds[i] = weight.getKey();
+            queryWeights[i++] = weight.getValue();
+        }
+        ImpactSearcher searcher = new ImpactSearcher(index, termIds, queryWeights, k, maxPostings);
+        List<String> urls = toUrls(searcher.search());
+        return new SearchResult(urls, searcher.isExact(), corrected ? suggestion.toString() : null);
+    }
 
-        // descending sorting the keys by the value of tfidf score
-        List<String> sortedUrls = new ArrayList<>(summedMetric.keySet());
-        sortedUrls.sort((k1, k2) -> summedMetric.get(k2).compareTo(summedMetric.get(k1)));
-        return sortedUrls;
+    /**
+     * Searching for the k websites matching a boolean query, e.g.
+     * {@code "blue stilton" AND NOT (goat OR sheep)}. Quoted words have to
+     * follow each other, words without an operator between them all have to
+     * occur {@link BooleanQuery}. The results are ordered by the tfidf score
+     * of the terms that aren't negated.
+     *
+     * @param query boolean query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @param k     maximum number of results
+     * @return list of found urls ordered by tfidf score
+     * @throws IOException
+     */
+    public static List<String> searchBoolean(final String query, IndexSnapshot index, int k) throws IOException {
+        return toUrls(new BooleanSearcher(index, BooleanQuery.parse(query), k).search());
+    }
+
+    /**
+     * Completes the last word of a query to the terms of the index starting
+     * with it, the terms most documents contain first {@link FrontCodedTerms}.
+     * The word is only lower cased, it isn't lemmatized, because the lemma of
+     * an incomplete word is no prefix of the lemma of the complete one.
+     *
+     * @param prefix query typed so far
+     * @param index  snapshot of the index {@link IndexSnapshot}
+     * @param k      maximum number of completions
+     * @return completed terms
+     */
+    public static List<String> suggest(final String prefix, IndexSnapshot index, int k) {
+        int start = prefix.length();
+        while (start > 0 && !Character.isWhitespace(prefix.charAt(start - 1))) {
+            start--;
+        }
+        StringBuilder word = new StringBuilder();
+        for (int i = start; i < prefix.length(); i++) {
+            char c = Character.toLowerCase(prefix.charAt(i));
+            // the characters the tokenizer keeps
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                word.append(c);
+            }
+        }
+        if (word.isEmpty()) {
+            return List.of();
+        }
+        return index.getSortedTerms().complete(word.toString(), k);
+    }
+
+    /**
+     * weights every indexed query term with its idf, a term occurring twice counts twice
+     */
+    private static QueryTerms getTfidfTerms(final String query, IndexSnapshot index) {
+        int[] sorted = TermDictionary.getInstance().lookup(WebsiteData.createQueryTokens(query)).clone();
+        Arrays.sort(sorted);
+        int[] termIds = new int[sorted.length];
+        double[] queryWeights = new double[sorted.length];
+        int size = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (!index.contains(sorted[i])) {
+                continue;
+            }
+            if (size == 0 || termIds[size - 1] != sorted[i]) {
+                termIds[size++] = sorted[i];
+            }
+            queryWeights[size - 1] += index.getIdf(sorted[i]);
+        }
+        return new QueryTerms(Arrays.copyOf(termIds, size), Arrays.copyOf(queryWeights, size));
     }
 
 
@@ -79,32 +240,41 @@ public final class SearchQuery {
      * @see <a href="https://en.wikipedia.org/wiki/PageRank">...</a>
      */
     public static List<String> searchPageRank(final String query, Map<String, WebsiteData> mapOfWebsiteData,
-                                                Map<String, Map<String, Double>> reverseIndexMap)
+                                                ReverseIndex reverseIndexMap)
             throws IOException {
-        Map<String, Double> combinedScoreMap = new HashMap<>();
-
-        // calculating combined score and saving it to combinedScoreMap
-        double[] queryVector = getQueryVector(query, mapOfWebsiteData, reverseIndexMap);
-        List<String> result = search(query, mapOfWebsiteData, reverseIndexMap);
-        for (String url : result) {
-            double similarity = PageGradingUtil.cosineSimilarityImproved(queryVector,
-                    mapOfWebsiteData.get(url).getVector());
+        return searchPageRank(query, reverseIndexMap.snapshot(mapOfWebsiteData));
+    }
 
-            double pagerank = mapOfWebsiteData.get(url).getPageRank();
-            double score = WEIGHT * similarity + (1 - WEIGHT) * normalizePagerRank(pagerank);
-            combinedScoreMap.put(url, score);
+    /**
+     * Searching for the 30 websites with the highest combined pagerank and
+     * cosine similarity.
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @return list of found urls
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Cosine_similarity">...</a>
+     * @see <a href="https://en.wikipedia.org/wiki/PageRank">...</a>
+     */
+    public static List<String> searchPageRank(final String query, IndexSnapshot index) throws IOException {
+        return searchPageRank(query, index, PAGERANK_RESULTS);
+    }
 
-        }
-        // only used for graph creation for extra task
-        finalScoreMap = combinedScoreMap;
-
-        // descending sorting the keys by the value of tfidf score
-        List<String> sortedUrls = new ArrayList<>(combinedScoreMap.keySet());
-        sortedUrls.sort((k1, k2) -> combinedScoreMap.get(k2).compareTo(combinedScoreMap.get(k1)));
-        if (sortedUrls.size() > 30) {
-            sortedUrls = sortedUrls.subList(0, 30);
-        }
-        return sortedUrls;
+    /**
+     * Searching for the k websites with the highest combined pagerank and
+     * cosine similarity. Documents that can't get into the top k aren't
+     * scored {@link TopKSearcher}.
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @param k     maximum number of results
+     * @return list of found urls ordered by combined score
+     * @throws IOException
+     * @see <a href="https://en.wikipedia.org/wiki/Cosine_similarity">...</a>
+     * @see <a href="https://en.wikipedia.org/wiki/PageRank">...</a>
+     */
+    public static List<String> searchPageRank(final String query, IndexSnapshot index, int k) throws IOException {
+        return toUrls(cosineSearcher(getQueryVector(query, index), index, 1 - WEIGHT, k).search());
     }
 
     /**
@@ -120,62 +290,106 @@ public final class SearchQuery {
      * @throws IOException
      */
     public static List<String> searchCosine(final String query, Map<String, WebsiteData> mapOfWebsiteData,
-                                            Map<String, Map<String, Double>> reverseIndexMap)
+                                            ReverseIndex reverseIndexMap)
             throws IOException {
-        Map<String, Double> cosineMap = new HashMap<>();
+        return searchCosine(query, reverseIndexMap.snapshot(mapOfWebsiteData));
+    }
+
+    /**
+     * Searching for all website containing the search query. The results are
+     * ordered by cosine similarity.
+     *
+     * @see <a href="https://en.wikipedia.org/wiki/Cosine_similarity">...</a>
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @return list of all found urls
+     * @throws IOException
+     */
+    public static List<String> searchCosine(final String query, IndexSnapshot index) throws IOException {
+        return searchCosine(query, index, Integer.MAX_VALUE);
+    }
 
-        double[] queryVector = getQueryVector(query, mapOfWebsiteData, reverseIndexMap);
+    /**
+     * Searching for the k websites with the highest cosine similarity to the
+     * search query. Documents that can't get into the top k aren't scored
+     * {@link TopKSearcher}.
+     *
+     * @see <a href="https://en.wikipedia.org/wiki/Cosine_similarity">...</a>
+     *
+     * @param query query which is searched for
+     * @param index snapshot of the index {@link IndexSnapshot}
+     * @param k     maximum number of results
+     * @return list of found urls ordered by cosine similarity
+     * @throws IOException
+     */
+    public static List<String> searchCosine(final String query, IndexSnapshot index, int k) throws IOException {
+        return toUrls(cosineSearcher(getQueryVector(query, index), index, 0, k).search());
+    }
 
-        // calculating cosine Similarity and saving it to cosineMap
-        List<String> result = search(query, mapOfWebsiteData, reverseIndexMap);
-        for (String url : result) {
-            double similarity = PageGradingUtil.cosineSimilarityImproved(queryVector,
-                    mapOfWebsiteData.get(url).getVector());
-            cosineMap.put(url, similarity);
+    /**
+     * creates a searcher for the cosine similarity of the query with the
+     * documents. The products of the query and document weights are summed up
+     * and divided by the length of the document vector.
+     *
+     * @param queryVector    normalized query vector
+     * @param index          snapshot of the index {@link IndexSnapshot}
+     * @param pageRankWeight share of the pagerank in the score
+     * @param k              maximum number of results
+     * @return searcher for the top k documents
+     */
+    private static TopKSearcher cosineSearcher(SparseVector queryVector, IndexSnapshot index, double pageRankWeight,
+                                               int k) {
+        int[] termIds = new int[queryVector.size()];
+        double[] queryWeights = new double[termIds.length];
+        for (int i = 0; i < termIds.length; i++) {
+            termIds[i] = queryVector.getTermId(i);
+            queryWeights[i] = queryVector.getWeight(i) * index.getIdf(termIds[i]);
         }
-        // descending sorting the keys by the value of tfidf score
-        List<String> sortedUrls = new ArrayList<>(cosineMap.keySet());
-        sortedUrls.sort((k1, k2) -> cosineMap.get(k2).compareTo(cosineMap.get(k1)));
-        return sortedUrls;
+        return new TopKSearcher(index, termIds, queryWeights, true, pageRankWeight, k);
     }
 
     /**
-     * creates vector for given query, entries are weighted based on their tf score
+     * creates the sparse vector for given query, entries are weighted based
+     * on their tf score. Terms that aren't indexed can't match and are left out.
      *
      * @param query
-     * @param forwardIndexMap
-     * @param reverseIndexMap
-     * @return query vector
+     * @param index
+     * @return normalized query vector
      */
-    private static double[] getQueryVector(final String query, Map<String, WebsiteData> forwardIndexMap,
-                                           Map<String, Map<String, Double>> reverseIndexMap) {
-        double[] vector = new double[reverseIndexMap.keySet().size()];
-        Arrays.fill(vector, 0.0);
-
-        // processing the search query
-        List<String> queryList = WebsiteData.createTokens(query);
-
-        int counter = 0;
-        for (String token : reverseIndexMap.keySet()) {
-            if (queryList.contains(token)) {
+    private static SparseVector getQueryVector(final String query, IndexSnapshot index) {
+        int[] queryTerms = TermDictionary.getInstance().lookup(WebsiteData.createQueryTokens(query));
+        int[] sorted = queryTerms.clone();
+        Arrays.sort(sorted);
 
-                double tf = ReverseIndex.calculateTF(token, queryList);
-                vector[counter] = tf;
+        // counting the occurrences of each term in one pass over the sorted ids
+        int[] termIds = new int[sorted.length];
+        float[] weights = new float[sorted.length];
+        int size = 0;
+        int start = 0;
+        for (int i = 1; i <= sorted.length; i++) {
+            if (i == sorted.length || sorted[i] != sorted[start]) {
+                if (index.contains(sorted[start])) {
+                    termIds[size] = sorted[start];
+                    weights[size++] = (float) ((double) (i - start) / sorted.length);
+                }
+                start = i;
             }
-            counter++;
         }
-        return ForwardIndex.normalize(vector);
+        return new SparseVector(Arrays.copyOf(termIds, size), Arrays.copyOf(weights, size)).normalize();
+    }
+
+    private static List<String> toUrls(List<TopKSearcher.Hit> hits) {
+        List<String> sortedUrls = new ArrayList<>(hits.size());
+        for (TopKSearcher.Hit hit : hits) {
+            sortedUrls.add(hit.url());
+        }
+        return sortedUrls;
     }
 
     /**
-     * normalizes pagerank with min-max scaling
-     *
-     * @param pagerank
-     * @return normalized pagerank
+     * distinct query terms and their weights
      */
-    private static double normalizePagerRank(double pagerank) {
-        double min = ForwardIndex.getMin();
-        double max = ForwardIndex.getMax();
-        return (pagerank - min) / (max - min);
+    private record QueryTerms(int[] termIds, double[] weights) {
     }
 }
@@ -0,0 +1,21 @@
+package search;
+
+import java.util.List;
+
+/**
+ * Urls found by a search that may stop before it has read all postings.
+ *
+ * @param urls       found urls, best first
+ * @param exact      false if the search stopped early and other documents might belong to the results
+ * @param suggestion query with misspelled words corrected or null if there is nothing to correct
+ */
+public record SearchResult(List<String> urls, boolean exact, String suggestion) {
+
+    /**
+     * @param urls  found urls, best first
+     * @param exact false if the search stopped early and other documents might belong to the results
+     */
+    public SearchResult(List<String> urls, boolean exact) {
+        this(urls, exact, null);
+    }
+}
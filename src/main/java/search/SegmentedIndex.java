@@ -0,0 +1,485 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * Searchable index made of segments, so single documents can be added,
+ * updated and deleted without rebuilding everything.
+ * <ul>
+ * <li>every segment is an immutable {@link ReverseIndex} of some documents</li>
+ * <li>added and updated documents go into a new small segment</li>
+ * <li>deleted documents and old versions of updated ones are only cleared in
+ * the live docs bitset of their segment</li>
+ * <li>the {@link MergePolicy} picks segments that are merged in the
+ * background, which drops the deleted documents for good</li>
+ * </ul>
+ * The number of live documents and the document frequency of every term are
+ * kept up to date with every change, the idf is calculated from them when a
+ * query is scored. The lengths of the tfidf vectors depend on the idf as
+ * well, but calculating them again reads every posting of a segment. An
+ * update only calculates them for its new segment, the older segments keep
+ * theirs until the {@link MergePolicy} finds that too many documents changed
+ * since then. They are calculated again in the background from a snapshot,
+ * like a merge, and after that cosine scores are the same as those of a
+ * rebuilt index.
+ * <p>
+ * The terms of the index are kept in sorted order, a change only sorts the
+ * terms that are new to the index into them, so the {@link FrontCodedTerms}
+ * for suggestions are encoded before every snapshot is published without
+ * sorting all terms again.
+ * <p>
+ * Every change publishes a new immutable {@link IndexSnapshot} through an
+ * atomic reference. Readers search the snapshot they got from
+ * {@link #snapshot()} without taking a lock, changes are serialized on the
+ * index and never touch a published snapshot.
+ */
+public class SegmentedIndex implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(SegmentedIndex.class.getName());
+    private final AtomicReference<IndexSnapshot> current =
+            new AtomicReference<>(new IndexSnapshot(0, List.of(), new int[0], FrontCodedTerms.of(new int[0]), 0, 0));
+    private final MergePolicy mergePolicy;
+    private final ExecutorService merger;
+    private final Object mergeLock = new Object();
+    private boolean mergeScheduled;
+    // segments are numbered before they are added, e.g. a full build outside of the lock
+    private final AtomicLong nextSegmentId = new AtomicLong();
+    // state of the next snapshot, guarded by this
+    private final List<IndexSnapshot.Segment> segments = new ArrayList<>();
+    private int[] documentFrequency = new int[0];
+    // every term a document of the index contained since the last reset, sorted by term
+    private int[] sortedTermIds = new int[0];
+    private final BitSet sortedTerms = new BitSet();
+    private int numberOfDocuments;
+    // documents added or deleted since the last reset
+    private long changedDocuments;
+    // changedDocuments when the vector lengths of a segment were calculated by segment id
+    private final Map<Long, Long> normsChanges = new HashMap<>();
+    private double minPageRank;
+    private double maxPageRank;
+    private long version;
+
+    /**
+     * creates an empty index that merges segments in the background
+     *
+     * @param pMergePolicy policy picking the segments to merge {@link MergePolicy}
+     */
+    public SegmentedIndex(MergePolicy pMergePolicy) {
+        this(pMergePolicy, true);
+    }
+
+    /**
+     * creates an empty index
+     *
+     * @param pMergePolicy      policy picking the segments to merge {@link MergePolicy}
+     * @param pBackgroundMerges if false segments are only merged by {@link #maybeMerge()}
+     */
+    public SegmentedIndex(MergePolicy pMergePolicy, boolean pBackgroundMerges) {
+        this.mergePolicy = pMergePolicy;
+        this.merger = pBackgroundMerges ? Executors.newSingleThreadExecutor(
+                Thread.ofPlatform().name("segment-merger").daemon(true).factory()) : null;
+    }
+
+    /**
+     * @return the latest snapshot, a query should take it once and read only from it
+     */
+    public IndexSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * replaces all documents with a completely rebuilt index
+     *
+     * @param pForwardIndex forward index with pageranks {@link ForwardIndex}
+     * @param pReverseIndex reverse index built from the forward index {@link ReverseIndex}
+     */
+    public void reset(ForwardIndex pForwardIndex, ReverseIndex pReverseIndex) {
+        // the segment is built before the index is locked, its documents are the whole index
+        int[] frequencies = new int[pReverseIndex.getDimension()];
+        for (int termId = 0; termId < frequencies.length; termId++) {
+            PostingsList documents = pReverseIndex.getPostings(termId);
+            frequencies[termId] = documents == null ? 0 : documents.size();
+        }
+        double[] norms = new double[pReverseIndex.getNumberOfDocuments()];
+        for (int docId = 0; docId < norms.length; docId++) {
+            norms[docId] = pReverseIndex.getNorm(docId);
+        }
+        IndexSnapshot.Segment segment = createSegment(nextSegmentId.getAndIncrement(),
+                pForwardIndex.getForwardIndex(), pReverseIndex, norms);
+        int[] termIds = FrontCodedTerms.sort(IntStream.range(0, frequencies.length)
+                .filter(termId -> frequencies[termId] > 0).toArray());
+
+        synchronized (this) {
+            segments.clear();
+            segments.add(segment);
+            documentFrequency = frequencies;
+            sortedTermIds = termIds;
+            sortedTerms.clear();
+            for (int termId : termIds) {
+                sortedTerms.set(termId);
+            }
+            numberOfDocuments = pReverseIndex.getNumberOfDocuments();
+            changedDocuments = 0;
+            normsChanges.clear();
+            normsChanges.put(segment.getId(), changedDocuments);
+            minPageRank = pForwardIndex.getMin();
+            maxPageRank = pForwardIndex.getMax();
+            publish();
+        }
+    }
+
+    /**
+     * adds documents or replaces the documents with the same urls. The
+     * documents are analyzed and put into a new segment, which is built
+     * before the index is locked. A document keeps the pagerank of the
+     * version it replaces, new documents get the lowest pagerank of the index.
+     *
+     * @param pWebsites new versions of the documents {@link WebsiteData}
+     */
+    public void update(Collection<WebsiteData> pWebsites) {
+        Map<String, WebsiteData> added = new TreeMap<>();
+        for (WebsiteData website : pWebsites) {
+            website.analyze();
+            added.put(website.getUrl(), website);
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        ReverseIndex reverseIndex = ReverseIndex.getReverseIndex(added, 1);
+
+        synchronized (this) {
+            for (WebsiteData website : added.values()) {
+                WebsiteData previous = deleteDocument(website.getUrl());
+                website.setPageRank(previous != null ? previous.getPageRank() : minPageRank);
+            }
+            addSegment(added, reverseIndex);
+            publish();
+        }
+        scheduleMerge();
+    }
+
+    /**
+     * deletes a document
+     *
+     * @param url url of the document
+     * @return true if the index contained the document
+     */
+    public boolean delete(String url) {
+        synchronized (this) {
+            if (deleteDocument(url) == null) {
+                return false;
+            }
+            publish();
+        }
+        scheduleMerge();
+        return true;
+    }
+
+    /**
+     * replaces the segment of a live document with a copy in which it is
+     * deleted, the caller holds the lock
+     *
+     * @return the deleted document or null if there is no live document with the url
+     */
+    private WebsiteData deleteDocument(String url) {
+        for (int i = 0; i < segments.size(); i++) {
+            IndexSnapshot.Segment segment = segments.get(i);
+            int docId = segment.getReverseIndex().getDocId(url);
+            if (docId < 0 || !segment.isLive(docId)) {
+                continue;
+            }
+            segments.set(i, segment.withDeleted(docId));
+            numberOfDocuments--;
+            changedDocuments++;
+            WebsiteData website = segment.getWebsite(docId);
+            // the document frequency counts every document containing a term once
+            int[] terms = website.getTerms().clone();
+            Arrays.sort(terms);
+            for (int j = 0; j < terms.length; j++) {
+                if (j == 0 || terms[j] != terms[j - 1]) {
+                    documentFrequency[terms[j]]--;
+                }
+            }
+            return website;
+        }
+        return null;
+    }
+
+    /**
+     * adds a segment whose documents aren't part of the index, the caller holds the lock
+     */
+    private void addSegment(Map<String, WebsiteData> pWebsites, ReverseIndex reverseIndex) {
+        if (documentFrequency.length < reverseIndex.getDimension()) {
+            documentFrequency = Arrays.copyOf(documentFrequency, reverseIndex.getDimension());
+        }
+        int[] newTerms = new int[reverseIndex.getNumberOfTerms()];
+        int numberOfNewTerms = 0;
+        for (int termId = 0; termId < reverseIndex.getDimension(); termId++) {
+            PostingsList documents = reverseIndex.getPostings(termId);
+            if (documents != null) {
+                documentFrequency[termId] += documents.size();
+                if (!sortedTerms.get(termId)) {
+                    sortedTerms.set(termId);
+                    newTerms[numberOfNewTerms++] = termId;
+                }
+            }
+        }
+        if (numberOfNewTerms > 0) {
+            sortedTermIds = merge(sortedTermIds, FrontCodedTerms.sort(Arrays.copyOf(newTerms, numberOfNewTerms)));
+        }
+        numberOfDocuments += reverseIndex.getNumberOfDocuments();
+        changedDocuments += reverseIndex.getNumberOfDocuments();
+        // only the postings of the new segment are read, the older segments keep their vector lengths
+        IndexSnapshot.Segment segment = createSegment(nextSegmentId.getAndIncrement(), pWebsites, reverseIndex,
+                reverseIndex.calculateNorms(this::getIdf));
+        segments.add(segment);
+        normsChanges.put(segment.getId(), changedDocuments);
+    }
+
+    /**
+     * creates a segment with the pageranks of the documents
+     */
+    private static IndexSnapshot.Segment createSegment(long id, Map<String, WebsiteData> pWebsites,
+                                                       ReverseIndex reverseIndex, double[] norms) {
+        WebsiteData[] documents = new WebsiteData[reverseIndex.getNumberOfDocuments()];
+        double[] pageRanks = new double[documents.length];
+        for (int docId = 0; docId < documents.length; docId++) {
+            documents[docId] = pWebsites.get(reverseIndex.getUrl(docId));
+            pageRanks[docId] = documents[docId].getPageRank();
+        }
+        return new IndexSnapshot.Segment(id, reverseIndex, documents, pageRanks, norms);
+    }
+
+    /**
+     * idf over the live documents of the next snapshot, the caller holds the lock
+     */
+    private double getIdf(int termId) {
+        if (termId < 0 || termId >= documentFrequency.length || documentFrequency[termId] == 0) {
+            return 0;
+        }
+        return Math.log((double) numberOfDocuments / documentFrequency[termId]);
+    }
+
+    /**
+     * @return two lists of term ids sorted by term merged into one
+     */
+    private static int[] merge(int[] termIds, int[] otherTermIds) {
+        TermDictionary dictionary = TermDictionary.getInstance();
+        int[] merged = new int[termIds.length + otherTermIds.length];
+        int i = 0;
+        int j = 0;
+        for (int m = 0; m < merged.length; m++) {
+            if (j == otherTermIds.length || i < termIds.length
+                    && dictionary.getTerm(termIds[i]).compareTo(dictionary.getTerm(otherTermIds[j])) < 0) {
+                merged[m] = termIds[i++];
+            } else {
+                merged[m] = otherTermIds[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * makes the changes visible to queries that start afterwards, the caller holds the lock
+     */
+    private void publish() {
+        // the terms no live document contains anymore are left out
+        int[] termIds = new int[sortedTermIds.length];
+        int[] weights = new int[termIds.length];
+        int numberOfTerms = 0;
+        for (int termId : sortedTermIds) {
+            if (documentFrequency[termId] > 0) {
+                termIds[numberOfTerms] = termId;
+                weights[numberOfTerms++] = documentFrequency[termId];
+            }
+        }
+        publish(FrontCodedTerms.of(Arrays.copyOf(termIds, numberOfTerms), Arrays.copyOf(weights, numberOfTerms)));
+    }
+
+    /**
+     * makes the changes visible with the terms of the snapshot, the caller holds the lock
+     */
+    private void publish(FrontCodedTerms terms) {
+        current.set(new IndexSnapshot(++version, segments, documentFrequency.clone(), terms, minPageRank,
+                maxPageRank));
+    }
+
+    /**
+     * starts a background merge if the merge policy finds segments to merge
+     */
+    private void scheduleMerge() {
+        if (merger == null) {
+            return;
+        }
+        synchronized (mergeLock) {
+            if (mergeScheduled) {
+                return;
+            }
+            mergeScheduled = true;
+        }
+        merger.execute(() -> {
+            synchronized (mergeLock) {
+                mergeScheduled = false;
+            }
+            try {
+                maybeMerge();
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Merging segments failed", e);
+            }
+        });
+    }
+
+    /**
+     * merges segments in the calling thread until the merge policy finds
+     * nothing more to merge, then calculates the vector lengths of the
+     * segments the merge policy finds out of date
+     *
+     * @return number of merges
+     */
+    public int maybeMerge() {
+        int merges = 0;
+        synchronized (mergeLock) {
+            while (true) {
+                List<IndexSnapshot.Segment> candidates = mergePolicy.findMerge(snapshot().getSegments());
+                if (candidates.isEmpty() || !merge(candidates)) {
+                    break;
+                }
+                merges++;
+            }
+            refreshNorms();
+        }
+        return merges;
+    }
+
+    /**
+     * calculates the vector lengths of the segments in which too many
+     * documents changed for the idf scores of a snapshot, without holding the
+     * lock. The segments are replaced by copies with the new lengths unless a
+     * reset removed them in the meantime.
+     */
+    private void refreshNorms() {
+        IndexSnapshot statistics;
+        long changes;
+        List<IndexSnapshot.Segment> outdated = new ArrayList<>();
+        synchronized (this) {
+            statistics = current.get();
+            changes = changedDocuments;
+            for (IndexSnapshot.Segment segment : segments) {
+                if (mergePolicy.needsNewNorms(changes - normsChanges.get(segment.getId()), numberOfDocuments)) {
+                    outdated.add(segment);
+                }
+            }
+        }
+        if (outdated.isEmpty()) {
+            return;
+        }
+        List<IndexSnapshot.Segment> refreshed = new ArrayList<>();
+        for (IndexSnapshot.Segment segment : outdated) {
+            refreshed.add(segment.withNorms(segment.getReverseIndex().calculateNorms(statistics::getIdf)));
+        }
+
+        synchronized (this) {
+            for (IndexSnapshot.Segment segment : refreshed) {
+                for (int i = 0; i < segments.size(); i++) {
+                    if (segments.get(i).getId() == segment.getId()) {
+                        segments.set(i, segments.get(i).withNormsOf(segment));
+                        normsChanges.put(segment.getId(), changes);
+                    }
+                }
+            }
+            // new vector lengths don't change the document frequencies, the terms stay the same
+            publish(current.get().getSortedTerms());
+        }
+    }
+
+    /**
+     * merges segments into one. The merged segment is built from the live
+     * documents of a snapshot without holding the lock. Documents deleted or
+     * updated in the meantime are no longer live in the latest copies of the
+     * merged segments and are marked as deleted in the merged segment before
+     * it replaces them.
+     *
+     * @return false if one of the segments was removed by a reset
+     */
+    private boolean merge(List<IndexSnapshot.Segment> candidates) {
+        Map<String, WebsiteData> live = new TreeMap<>();
+        Set<Long> ids = new HashSet<>();
+        for (IndexSnapshot.Segment segment : candidates) {
+            ids.add(segment.getId());
+            for (int docId = 0; docId < segment.getNumberOfDocuments(); docId++) {
+                if (segment.isLive(docId)) {
+                    WebsiteData website = segment.getWebsite(docId);
+                    live.put(website.getUrl(), website);
+                }
+            }
+        }
+        ReverseIndex reverseIndex = ReverseIndex.getReverseIndex(live, 1);
+        IndexSnapshot statistics;
+        long changes;
+        synchronized (this) {
+            statistics = current.get();
+            changes = changedDocuments;
+        }
+        IndexSnapshot.Segment result = createSegment(nextSegmentId.getAndIncrement(), live, reverseIndex,
+                reverseIndex.calculateNorms(statistics::getIdf));
+
+        synchronized (this) {
+            List<IndexSnapshot.Segment> merged = new ArrayList<>();
+            Set<WebsiteData> stillLive = new HashSet<>();
+            for (IndexSnapshot.Segment segment : segments) {
+                if (ids.contains(segment.getId())) {
+                    merged.add(segment);
+                    for (int docId = 0; docId < segment.getNumberOfDocuments(); docId++) {
+                        if (segment.isLive(docId)) {
+                            stillLive.add(segment.getWebsite(docId));
+                        }
+                    }
+                }
+            }
+            if (merged.size() != candidates.size()) {
+                return false;
+            }
+            int[] deleted = new int[result.getNumberOfDocuments()];
+            int numberOfDeleted = 0;
+            for (int docId = 0; docId < result.getNumberOfDocuments(); docId++) {
+                if (!stillLive.contains(result.getWebsite(docId))) {
+                    deleted[numberOfDeleted++] = docId;
+                }
+            }
+            segments.removeAll(merged);
+            segments.add(result.withDeleted(Arrays.copyOf(deleted, numberOfDeleted)));
+            for (IndexSnapshot.Segment segment : merged) {
+                normsChanges.remove(segment.getId());
+            }
+            normsChanges.put(result.getId(), changes);
+            // a merge doesn't change the document frequencies, the terms stay the same
+            publish(current.get().getSortedTerms());
+            return true;
+        }
+    }
+
+    /**
+     * stops merging in the background
+     */
+    @Override
+    public void close() {
+        if (merger != null) {
+            merger.shutdownNow();
+        }
+    }
+}
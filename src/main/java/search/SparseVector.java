@@ -0,0 +1,135 @@
+package search;
+
+/**
+ * Vector over the term ids of the {@link TermDictionary} that only stores its
+ * non zero components: the term ids in ascending order and their weights in a
+ * parallel array. A document has a few hundred terms, so its vector takes a
+ * few kilobytes no matter how large the vocabulary grows.
+ */
+public final class SparseVector {
+    private final int[] termIds;
+    private final float[] weights;
+
+    /**
+     * @param pTermIds term ids in ascending order
+     * @param pWeights weight of each term id
+     */
+    public SparseVector(int[] pTermIds, float[] pWeights) {
+        if (pTermIds.length != pWeights.length) {
+            throw new IllegalArgumentException("Every term id needs a weight");
+        }
+        for (int i = 1; i < pTermIds.length; i++) {
+            if (pTermIds[i] <= pTermIds[i - 1]) {
+                throw new IllegalArgumentException("Term ids have to be ascending: " + pTermIds[i]
+                        + " after " + pTermIds[i - 1]);
+            }
+        }
+        this.termIds = pTermIds;
+        this.weights = pWeights;
+    }
+
+    /**
+     * creates a sparse vector from the non zero components of a dense vector
+     *
+     * @param vector dense vector indexed by term id
+     * @return sparse vector
+     */
+    public static SparseVector of(double[] vector) {
+        int count = 0;
+        for (double v : vector) {
+            if (v != 0) {
+                count++;
+            }
+        }
+        int[] termIds = new int[count];
+        float[] weights = new float[count];
+        count = 0;
+        for (int termId = 0; termId < vector.length; termId++) {
+            if (vector[termId] != 0) {
+                termIds[count] = termId;
+                weights[count++] = (float) vector[termId];
+            }
+        }
+        return new SparseVector(termIds, weights);
+    }
+
+    /**
+     * @return number of non zero components
+     */
+    public int size() {
+        return termIds.length;
+    }
+
+    /**
+     * @param index index of a non zero component, smaller than {@link #size()}
+     * @return term id of the component
+     */
+    public int getTermId(int index) {
+        return termIds[index];
+    }
+
+    /**
+     * @param index index of a non zero component, smaller than {@link #size()}
+     * @return weight of the component
+     */
+    public float getWeight(int index) {
+        return weights[index];
+    }
+
+    /**
+     * @return euclidean length of the vector
+     */
+    public double norm() {
+        double norm = 0;
+        for (float weight : weights) {
+            norm += (double) weight * weight;
+        }
+        return Math.sqrt(norm);
+    }
+
+    /**
+     * scales the vector to length 1 without copying it, a zero vector is left as is
+     *
+     * @return this vector
+     */
+    public SparseVector normalize() {
+        double norm = norm();
+        if (norm != 0) {
+            for (int i = 0; i < weights.length; i++) {
+                weights[i] = (float) (weights[i] / norm);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * calculates the dot product by walking both sorted term id arrays at once
+     *
+     * @param other vector
+     * @return dot product
+     */
+    public double dot(SparseVector other) {
+        double result = 0;
+        int i = 0;
+        int j = 0;
+        while (i < termIds.length && j < other.termIds.length) {
+            int termId = termIds[i];
+            int otherTermId = other.termIds[j];
+            if (termId == otherTermId) {
+                result += (double) weights[i++] * other.weights[j++];
+            } else if (termId < otherTermId) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return number of bytes taken by the components
+     */
+    public int sizeInBytes() {
+        return termIds.length * (Integer.BYTES + Float.BYTES);
+    }
+}
@@ -0,0 +1,131 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global dictionary that gives every term of the indexed documents a dense
+ * int id. Documents, postings, vectors and queries refer to terms by these
+ * ids, so comparing terms is comparing ints and per term data can be kept in
+ * arrays indexed by the id.
+ * <p>
+ * Ids are only assigned while documents are analyzed and never change. Query
+ * terms are only looked up, so queries can't grow the dictionary.
+ */
+public final class TermDictionary {
+    /**
+     * id of a term that isn't part of the dictionary
+     */
+    public static final int UNKNOWN = -1;
+    private static final TermDictionary INSTANCE = new TermDictionary();
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] terms = new String[1024];
+    private volatile int size;
+
+    private TermDictionary() {
+    }
+
+    /**
+     * @return the shared dictionary
+     */
+    public static TermDictionary getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * returns the id of a term and assigns a new one if the term is unknown
+     *
+     * @param term term
+     * @return id of the term
+     */
+    public int getId(String term) {
+        Integer id = ids.get(term);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(term);
+            if (id != null) {
+                return id;
+            }
+            if (size == terms.length) {
+                terms = Arrays.copyOf(terms, size * 2);
+            }
+            // the term is stored before its id is visible to other threads
+            terms[size] = term;
+            ids.put(term, size);
+            return size++;
+        }
+    }
+
+    /**
+     * @param tokens terms of a document
+     * @return ids of the terms, new terms get new ids
+     */
+    public int[] getIds(List<String> tokens) {
+        int[] termIds = new int[tokens.size()];
+        for (int i = 0; i < termIds.length; i++) {
+            termIds[i] = getId(tokens.get(i));
+        }
+        return termIds;
+    }
+
+    /**
+     * looks up a term without assigning an id
+     *
+     * @param term term
+     * @return id of the term or {@link #UNKNOWN}
+     */
+    public int lookup(String term) {
+        Integer id = ids.get(term);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * looks up the terms of a query, unknown terms are left out
+     *
+     * @param tokens terms of a query
+     * @return ids of the known terms in the order of the tokens
+     */
+    public int[] lookup(List<String> tokens) {
+        int[] termIds = new int[tokens.size()];
+        int count = 0;
+        for (String token : tokens) {
+            int id = lookup(token);
+            if (id != UNKNOWN) {
+                termIds[count++] = id;
+            }
+        }
+        return Arrays.copyOf(termIds, count);
+    }
+
+    /**
+     * @param id id of a term
+     * @return the term
+     */
+    public String getTerm(int id) {
+        return terms[id];
+    }
+
+    /**
+     * @param termIds ids of terms
+     * @return the terms
+     */
+    public List<String> getTerms(int[] termIds) {
+        List<String> tokens = new ArrayList<>(termIds.length);
+        for (int id : termIds) {
+            tokens.add(getTerm(id));
+        }
+        return tokens;
+    }
+
+    /**
+     * @return number of terms, every id is smaller than this
+     */
+    public int size() {
+        return size;
+    }
+}
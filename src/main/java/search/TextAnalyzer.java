@@ -0,0 +1,259 @@
+package search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import opennlp.tools.lemmatizer.LemmatizerME;
+import opennlp.tools.lemmatizer.LemmatizerModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+
+/**
+ * Tokenizes, removes stopwords from and lemmatizes text. The OpenNLP models
+ * and the stopwords are loaded once and shared. The models are immutable, but
+ * {@link POSTaggerME} and {@link LemmatizerME} aren't thread safe, so every
+ * thread gets its own instances.
+ * <p>
+ * Two fast paths avoid the models: queries made only of tokens of the
+ * {@link LemmaDictionary} of the corpus are looked up as a whole, and with a
+ * {@link LemmaCache} only tokens that aren't cached yet are tagged. Documents
+ * are always tagged, the dictionary is built from their lemmas. The cache
+ * trades the context of a token for speed, so it is off by default.
+ */
+public final class TextAnalyzer {
+    private final Set<String> stopWords;
+    private final ThreadLocal<POSTaggerME> posTagger;
+    private final ThreadLocal<LemmatizerME> lemmatizer;
+    private volatile LemmaDictionary dictionary = LemmaDictionary.empty();
+    private volatile LemmaCache lemmaCache;
+    private final LongAdder dictionaryHits = new LongAdder();
+    private final LongAdder dictionaryMisses = new LongAdder();
+
+    /**
+     * loads the models on first use of {@link #getInstance()}
+     */
+    private static class Holder {
+        private static final TextAnalyzer INSTANCE = new TextAnalyzer();
+    }
+
+    private TextAnalyzer() {
+        try {
+            String stopwords = new String(readResource("stopWords.txt"), StandardCharsets.UTF_8);
+            this.stopWords = new HashSet<>(Arrays.asList(stopwords.split(",")));
+            POSModel posModel;
+            try (InputStream modelIn = openResource("en-pos.bin")) {
+                posModel = new POSModel(modelIn);
+            }
+            LemmatizerModel lemmatizerModel;
+            try (InputStream modelIn = openResource("en-lemmatizer.bin")) {
+                lemmatizerModel = new LemmatizerModel(modelIn);
+            }
+            this.posTagger = ThreadLocal.withInitial(() -> new POSTaggerME(posModel));
+            this.lemmatizer = ThreadLocal.withInitial(() -> new LemmatizerME(lemmatizerModel));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return shared analyzer, the models are loaded by the first call
+     */
+    public static TextAnalyzer getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * tokenizes, lemmetizes and removes stopwords from a text
+     *
+     * @param input text from which to create tokens
+     * @return list of tokens
+     */
+    public List<String> analyze(final String input) {
+        return lemmatize(tokenize(input));
+    }
+
+    /**
+     * analyzes a query like {@link #analyze(String)}, but looks its tokens up
+     * in the dictionary first. Queries are short and lack the context the
+     * tagger needs, a query made only of known tokens gets the lemmas these
+     * tokens have in the documents.
+     *
+     * @param query query from which to create tokens
+     * @return list of tokens
+     */
+    public List<String> analyzeQuery(final String query) {
+        List<String> tokens = tokenize(query);
+        List<String> lemmas = lookup(tokens);
+        return lemmas != null ? lemmas : lemmatize(tokens);
+    }
+
+    /**
+     * splits a text into lower case tokens in a single pass. Tokens are
+     * separated by whitespace, all characters except ascii letters and digits
+     * are dropped. Stopwords are left out.
+     *
+     * @param input text to be tokenized
+     * @return tokens without stopwords
+     */
+    public List<String> tokenize(final String input) {
+        List<String> tokens = new ArrayList<>();
+        char[] token = new char[32];
+        int length = 0;
+        for (int i = 0, n = input.length(); i <= n; i++) {
+            char c = i < n ? input.charAt(i) : ' ';
+            if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+                if (length == token.length) {
+                    token = Arrays.copyOf(token, length * 2);
+                }
+                token[length++] = c;
+            } else if (c >= 'A' && c <= 'Z') {
+                if (length == token.length) {
+                    token = Arrays.copyOf(token, length * 2);
+                }
+                token[length++] = (char) (c + ('a' - 'A'));
+            } else if (Character.isWhitespace(c) && length > 0) {
+                String word = new String(token, 0, length);
+                if (!stopWords.contains(word)) {
+                    tokens.add(word);
+                }
+                length = 0;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * lemmatizes the tokens with the tagger and lemmatizer of the current
+     * thread, or only the tokens missing from the cache if it is enabled
+     *
+     * @param inputList list to be lemmatized
+     * @return lemmatized list
+     */
+    public List<String> lemmatize(List<String> inputList) {
+        LemmaCache cache = lemmaCache;
+        return cache == null ? tag(inputList) : lemmatizeCached(inputList, cache);
+    }
+
+    /**
+     * @return lemmas of all tokens from the dictionary or null if a token is missing
+     */
+    private List<String> lookup(List<String> tokens) {
+        LemmaDictionary currentDictionary = dictionary;
+        if (currentDictionary.size() == 0) {
+            return null;
+        }
+        List<String> lemmas = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            String lemma = currentDictionary.get(token);
+            if (lemma == null) {
+                dictionaryMisses.increment();
+                return null;
+            }
+            lemmas.add(lemma);
+        }
+        dictionaryHits.increment();
+        return lemmas;
+    }
+
+    /**
+     * looks up every token in the cache and tags only the missing ones, in
+     * the order they appear in the text
+     */
+    private List<String> lemmatizeCached(List<String> tokens, LemmaCache cache) {
+        String[] lemmas = new String[tokens.size()];
+        List<String> missing = new ArrayList<>();
+        for (int i = 0; i < lemmas.length; i++) {
+            lemmas[i] = cache.get(tokens.get(i));
+            if (lemmas[i] == null) {
+                missing.add(tokens.get(i));
+            }
+        }
+        if (!missing.isEmpty()) {
+            List<String> missingLemmas = tag(missing);
+            for (int i = 0, m = 0; i < lemmas.length; i++) {
+                if (lemmas[i] == null) {
+                    lemmas[i] = missingLemmas.get(m);
+                    cache.put(missing.get(m), lemmas[i]);
+                    m++;
+                }
+            }
+        }
+        return new ArrayList<>(Arrays.asList(lemmas));
+    }
+
+    /**
+     * tags and lemmatizes the tokens with the models
+     */
+    private List<String> tag(List<String> inputList) {
+        String[] tokens = inputList.toArray(new String[0]);
+        String[] posTags = posTagger.get().tag(tokens);
+        String[] lemmas = lemmatizer.get().lemmatize(tokens, posTags);
+        return new ArrayList<>(Arrays.asList(lemmas));
+    }
+
+    /**
+     * replaces the dictionary, e.g. after the index was rebuilt
+     *
+     * @param pDictionary dictionary of the indexed corpus {@link LemmaDictionary}
+     */
+    public void setDictionary(LemmaDictionary pDictionary) {
+        this.dictionary = pDictionary == null ? LemmaDictionary.empty() : pDictionary;
+    }
+
+    /**
+     * @return dictionary of the indexed corpus
+     */
+    public LemmaDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * @param pLemmaCache cache of lemmas or null to always tag whole texts {@link LemmaCache}
+     */
+    public void setLemmaCache(LemmaCache pLemmaCache) {
+        this.lemmaCache = pLemmaCache;
+    }
+
+    /**
+     * @return cache of lemmas or null if it is disabled
+     */
+    public LemmaCache getLemmaCache() {
+        return lemmaCache;
+    }
+
+    /**
+     * @return number of queries lemmatized with the dictionary alone
+     */
+    public long getDictionaryHits() {
+        return dictionaryHits.sum();
+    }
+
+    /**
+     * @return number of queries that contained a token missing from the dictionary
+     */
+    public long getDictionaryMisses() {
+        return dictionaryMisses.sum();
+    }
+
+    private static InputStream openResource(String name) throws IOException {
+        InputStream inputStream = TextAnalyzer.class.getClassLoader().getResourceAsStream(name);
+        if (inputStream == null) {
+            throw new IOException("Resource '" + name + "' not found");
+        }
+        return inputStream;
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        try (InputStream inputStream = openResource(name)) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
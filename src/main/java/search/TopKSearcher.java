@@ -0,0 +1,210 @@
+package search;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Finds the k best documents of a snapshot with the WAND algorithm. The
+ * postings of the query terms are walked document at a time. Every term has
+ * an upper bound for the score it can add to a document of a segment, see
+ * {@link IndexSnapshot.Segment#getMaxWeight(int)}. Once k documents are
+ * collected in a min-heap, the score of the worst of them is the threshold a
+ * document has to reach. A document whose terms can't add up to the
+ * threshold isn't scored, the cursors of these terms are moved past it
+ * instead.
+ * <p>
+ * The score of a document is
+ * {@code (1 - pageRankWeight) * termScore + pageRankWeight * normalized pagerank},
+ * where the term score is the sum of query weight times term weight of all
+ * query terms in the document, divided by the vector length if the query is
+ * normalized.
+ *
+ * @see <a href="https://doi.org/10.1145/956863.956944">WAND</a>
+ */
+final class TopKSearcher {
+    // descending by score, equal scores by url
+    static final Comparator<Hit> BY_SCORE = Comparator.comparingDouble(Hit::score).reversed()
+            .thenComparing(Hit::url);
+    // the upper bounds are summed in a different order than the scores, so
+    // rounding may let a score exceed them slightly
+    static final double SLACK = 1e-9;
+
+    private final IndexSnapshot index;
+    private final int[] termIds;
+    private final double[] queryWeights;
+    private final boolean normalized;
+    private final double pageRankWeight;
+    private final int k;
+    private final PriorityQueue<Hit> heap;
+    private int numberOfScoredDocuments;
+
+    /**
+     * @param pIndex          snapshot which is searched {@link IndexSnapshot}
+     * @param pTermIds        distinct ids of the query terms
+     * @param pQueryWeights   weight of every query term
+     * @param pNormalized     true if the term score is divided by the vector length of the document
+     * @param pPageRankWeight share of the normalized pagerank in the score
+     * @param pK              number of documents to find
+     */
+    TopKSearcher(IndexSnapshot pIndex, int[] pTermIds, double[] pQueryWeights, boolean pNormalized,
+                 double pPageRankWeight, int pK) {
+        if (pK < 1) {
+            throw new IllegalArgumentException("At least one document has to be searched for, k=" + pK);
+        }
+        this.index = pIndex;
+        this.termIds = pTermIds;
+        this.queryWeights = pQueryWeights;
+        this.normalized = pNormalized;
+        this.pageRankWeight = pPageRankWeight;
+        this.k = pK;
+        // the worst of the best documents found so far is at the head
+        this.heap = new PriorityQueue<>(Math.min(pK, 1024), BY_SCORE.reversed());
+    }
+
+    /**
+     * @return the best documents containing at least one query term, ordered {@link #BY_SCORE}
+     */
+    List<Hit> search() {
+        for (IndexSnapshot.Segment segment : index.getSegments()) {
+            searchSegment(segment);
+        }
+        List<Hit> hits = new ArrayList<>(heap);
+        hits.sort(BY_SCORE);
+        return hits;
+    }
+
+    /**
+     * @return number of documents whose score was calculated by the last search
+     */
+    int getNumberOfScoredDocuments() {
+        return numberOfScoredDocuments;
+    }
+
+    private void searchSegment(IndexSnapshot.Segment segment) {
+        ReverseIndex reverseIndex = segment.getReverseIndex();
+        PostingsList.Cursor[] cursors = new PostingsList.Cursor[termIds.length];
+        int[] docIds = new int[termIds.length];
+        double[] upperBounds = new double[termIds.length];
+        // indexes of the terms ordered by their current document
+        int[] order = new int[termIds.length];
+        int size = 0;
+        for (int i = 0; i < termIds.length; i++) {
+            PostingsList documents = reverseIndex.getPostings(termIds[i]);
+            PostingsList.Cursor cursor = documents == null ? null : documents.cursor();
+            if (cursor == null || !cursor.next()) {
+                continue;
+            }
+            cursors[i] = cursor;
+            docIds[i] = cursor.docId();
+            double maxWeight = normalized ? segment.getMaxNormalizedWeight(termIds[i])
+                    : segment.getMaxWeight(termIds[i]);
+            upperBounds[i] = (1 - pageRankWeight) * queryWeights[i] * maxWeight;
+            order[size++] = i;
+        }
+        double pageRankBound = pageRankWeight * normalizePageRank(segment.getMaxPageRank());
+
+        sortByDocId(order, size, docIds);
+        while (size > 0) {
+            // the pivot is the first document the terms up to it could bring into the top k
+            double threshold = heap.size() < k ? Double.NEGATIVE_INFINITY : heap.peek().score();
+            double bound = pageRankBound;
+            int pivot = -1;
+            for (int i = 0; i < size; i++) {
+                bound += upperBounds[order[i]];
+                if (bound + SLACK >= threshold) {
+                    pivot = i;
+                    break;
+                }
+            }
+            if (pivot < 0) {
+                return;
+            }
+            int pivotDocId = docIds[order[pivot]];
+            if (docIds[order[0]] == pivotDocId) {
+                if (segment.isLive(pivotDocId)) {
+                    collect(segment, pivotDocId, cursors, docIds, threshold);
+                }
+                // moves every term in the scored document on to its next document
+                for (int i = 0; i < size && docIds[order[i]] == pivotDocId; i++) {
+                    int term = order[i];
+                    docIds[term] = cursors[term].next() ? cursors[term].docId() : Integer.MAX_VALUE;
+                }
+            } else {
+                // no document before the pivot can reach the threshold
+                for (int i = 0; i < pivot; i++) {
+                    int term = order[i];
+                    docIds[term] = cursors[term].advance(pivotDocId) ? cursors[term].docId() : Integer.MAX_VALUE;
+                }
+            }
+            sortByDocId(order, size, docIds);
+            // exhausted terms are sorted to the end
+            while (size > 0 && docIds[order[size - 1]] == Integer.MAX_VALUE) {
+                size--;
+            }
+        }
+    }
+
+    /**
+     * scores a document whose terms are all positioned on it and keeps it if
+     * it is among the best k found so far
+     */
+    private void collect(IndexSnapshot.Segment segment, int docId, PostingsList.Cursor[] cursors, int[] docIds,
+                         double threshold) {
+        numberOfScoredDocuments++;
+        // summed in query term order, so the score doesn't depend on the positions of the cursors
+        double termScore = 0;
+        for (int i = 0; i < termIds.length; i++) {
+            if (cursors[i] != null && docIds[i] == docId) {
+                termScore += queryWeights[i] * cursors[i].weight();
+            }
+        }
+        if (normalized) {
+            double norm = segment.getNorm(docId);
+            termScore = norm != 0 ? termScore / norm : 0;
+        }
+        double score = pageRankWeight == 0 ? termScore
+                : (1 - pageRankWeight) * termScore + pageRankWeight * normalizePageRank(segment.getPageRank(docId));
+        if (score < threshold) {
+            return;
+        }
+        Hit hit = new Hit(segment.getReverseIndex().getUrl(docId), score);
+        if (heap.size() < k) {
+            heap.add(hit);
+        } else if (BY_SCORE.compare(hit, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(hit);
+        }
+    }
+
+    /**
+     * normalizes pagerank with min-max scaling over the snapshot
+     */
+    private double normalizePageRank(double pageRank) {
+        double min = index.getMinPageRank();
+        double max = index.getMaxPageRank();
+        return max > min ? (pageRank - min) / (max - min) : 0;
+    }
+
+    /**
+     * insertion sort, the order barely changes between two steps
+     */
+    private static void sortByDocId(int[] order, int size, int[] docIds) {
+        for (int i = 1; i < size; i++) {
+            int term = order[i];
+            int j = i - 1;
+            while (j >= 0 && docIds[order[j]] > docIds[term]) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = term;
+        }
+    }
+
+    /**
+     * a found document and its score
+     */
+    record Hit(String url, double score) {
+    }
+}
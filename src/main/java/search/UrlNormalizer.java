@@ -0,0 +1,84 @@
+package search;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+
+/**
+ * Utility class that brings urls into a canonical form, so that different
+ * spellings of the same page are only crawled and indexed once.
+ */
+public final class UrlNormalizer {
+
+    private UrlNormalizer() {
+    }
+
+    /**
+     * resolves a link against the url of the page it was found on and normalizes
+     * it
+     *
+     * @param base url of the page containing the link
+     * @param href value of the href attribute
+     * @return normalized url or null if the link doesn't point to a http page
+     */
+    public static String normalize(String base, String href) {
+        if (href == null || href.isBlank()) {
+            return null;
+        }
+        try {
+            URI resolved = base == null ? new URI(href.strip()) : new URI(base).resolve(href.strip());
+            return normalize(resolved);
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * normalizes an absolute url
+     *
+     * @param url absolute url
+     * @return normalized url or null if the url isn't a http url
+     */
+    public static String normalize(String url) {
+        return normalize(null, url);
+    }
+
+    /**
+     * lower cases scheme and host, removes default ports, fragments, dot segments,
+     * index files and trailing slashes
+     */
+    private static String normalize(URI uri) {
+        if (uri.getScheme() == null || uri.getHost() == null) {
+            return null;
+        }
+        String scheme = uri.getScheme().toLowerCase(Locale.ENGLISH);
+        if (!scheme.equals("http") && !scheme.equals("https")) {
+            return null;
+        }
+        StringBuilder builder = new StringBuilder(scheme).append("://")
+                .append(uri.getHost().toLowerCase(Locale.ENGLISH));
+        int port = uri.getPort();
+        if (port != -1 && !(scheme.equals("http") && port == 80) && !(scheme.equals("https") && port == 443)) {
+            builder.append(':').append(port);
+        }
+
+        String path = uri.normalize().getRawPath();
+        if (path == null) {
+            path = "";
+        }
+        if (path.endsWith("/index.html") || path.endsWith("/index.htm")) {
+            path = path.substring(0, path.lastIndexOf('/') + 1);
+        }
+        // collapsing duplicate slashes and removing the trailing one
+        path = path.replaceAll("/{2,}", "/");
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        builder.append(path);
+
+        if (uri.getRawQuery() != null && !uri.getRawQuery().isEmpty()) {
+            builder.append('?').append(uri.getRawQuery());
+        }
+        return builder.toString();
+    }
+}
@@ -1,58 +1,162 @@
 package search;
 
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Locale;
-import opennlp.tools.lemmatizer.LemmatizerME;
-import opennlp.tools.lemmatizer.LemmatizerModel;
-import opennlp.tools.postag.POSTaggerME;
-import opennlp.tools.postag.POSModel;
-import java.io.InputStream;
 
 /**
- * A websitedata object contains all important data from a website.
+ * A websitedata object contains all important data from a website. A
+ * website read from an {@link IndexSegment} keeps its text, tokens and vector
+ * in the mapped file and decodes them when they are first used.
  *
  * @author Simon Sattelberger
  */
-public class WebsiteData {
-    public List<String> outgoingLinks;
-    public List<String> tokenList;
-    private double[] vector;
-    public String title;
-    public String completeContent;
+public final class WebsiteData {
+    private List<String> outgoingLinks;
+    private volatile int[] terms;
+    private volatile SparseVector vector;
+    private String title;
+    private String completeContent;
     public double pageRank;
     public String url;
-    public String body;
-    public String header;
+    private String body;
+    private String header;
+    // fields kept in the index file the document was read from, null for other documents
+    private final Stored stored;
+    // true once title, header, body and links of a stored document are decoded
+    private volatile boolean loaded;
 
     public WebsiteData(String pUrl, String pTitle, String pHeader, String pContent, List<String> pOutgoingLinks) {
+        this(pUrl, pTitle, pHeader, pContent, pOutgoingLinks, true);
+    }
+
+    /**
+     * @param pAnalyze if false the content isn't tokenized yet, which has to be
+     *                 done later with {@link #analyze()}
+     */
+    WebsiteData(String pUrl, String pTitle, String pHeader, String pContent, List<String> pOutgoingLinks,
+                boolean pAnalyze) {
+        this.url = pUrl;
+        this.stored = null;
+        setContent(pTitle, pHeader, pContent, pOutgoingLinks);
+        if (pAnalyze) {
+            analyze();
+        }
+    }
+
+    /**
+     * creates an analyzed document whose fields stay in an index file until
+     * they are used {@link IndexSegment}
+     *
+     * @param pUrl    url of the document
+     * @param pStored decodes the other fields
+     */
+    WebsiteData(String pUrl, Stored pStored) {
         this.url = pUrl;
+        this.stored = pStored;
+    }
+
+    private void setContent(String pTitle, String pHeader, String pContent, List<String> pOutgoingLinks) {
         this.title = pTitle;
         this.outgoingLinks = pOutgoingLinks;
-        this.completeContent = "".concat(title).concat(" ").concat(pHeader).concat(" ").concat(pContent);
-        this.tokenList = createTokens(completeContent);
+        this.completeContent = "".concat(pTitle).concat(" ").concat(pHeader).concat(" ").concat(pContent);
         this.body = pContent;
         this.header = pHeader;
     }
 
+    /**
+     * decodes title, header, body and links of a document read from an index
+     * file. The fields are written before the volatile flag is set, so a
+     * thread that sees the flag sees the fields.
+     */
+    private void load() {
+        if (stored == null || loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                Content content = stored.content();
+                setContent(content.title(), content.header(), content.body(), content.outgoingLinks());
+                loaded = true;
+            }
+        }
+    }
+
+    /**
+     * copies the document without vector and pagerank. A new index calculates
+     * them for copies, so the documents of the snapshot that is still searched
+     * don't change. Content and tokens are shared, they aren't changed.
+     *
+     * @return document with the same url, content and tokens
+     */
+    WebsiteData copy() {
+        WebsiteData copy = stored != null ? new WebsiteData(url, stored)
+                : new WebsiteData(url, title, header, body, outgoingLinks, false);
+        copy.terms = terms;
+        return copy;
+    }
+
+    /**
+     * tokenizes the content of the website, if it isn't tokenized yet. The
+     * tokens are kept as ids of the {@link TermDictionary}.
+     */
+    void analyze() {
+        if (getTerms() == null) {
+            terms = TermDictionary.getInstance().getIds(createTokens(getCompleteContent()));
+        }
+    }
+
+    /**
+     * @return title of the website
+     */
+    public String getTitle() {
+        load();
+        return title;
+    }
+
+    /**
+     * @return header of the website
+     */
+    public String getHeader() {
+        load();
+        return header;
+    }
 
+    /**
+     * @return text of the main element without links
+     */
+    public String getBody() {
+        load();
+        return body;
+    }
+
+    /**
+     * @return title, header and body separated by spaces
+     */
+    public String getCompleteContent() {
+        load();
+        return completeContent;
+    }
+
+    /**
+     * @return normalized urls of the links on the website
+     */
+    public List<String> getOutgoingLinks() {
+        load();
+        return outgoingLinks;
+    }
 
     /**
      * creates a printable string from object
      */
     @Override
     public String toString() {
-        return "URL : " + url + System.lineSeparator() + "Title: " + title;
+        return "URL : " + url + System.lineSeparator() + "Title: " + getTitle();
     }
 
     /**
      * @return returns all links
      */
     List<String> getLinks() {
-        return outgoingLinks;
+        return getOutgoingLinks();
     }
 
     /**
@@ -81,8 +185,14 @@ public class WebsiteData {
     /**
      * @return returns vector
      */
-    double[] getVector() {
-        return vector;
+    SparseVector getVector() {
+        SparseVector current = vector;
+        if (current == null && stored != null) {
+            // racing threads decode equal vectors
+            current = stored.vector();
+            vector = current;
+        }
+        return current;
     }
 
     /**
@@ -90,121 +200,87 @@ public class WebsiteData {
      *
      * @param pVector
      */
-    void setVector(double[] pVector) {
+    void setVector(SparseVector pVector) {
         this.vector = pVector;
     }
 
     /**
-     * @return returns tokenized list
+     * @return ids of the tokens in the order of the content or null if the
+     * website isn't analyzed yet
      */
-    List<String> getTokenList() {
-        return tokenList;
+    int[] getTerms() {
+        int[] current = terms;
+        if (current == null && stored != null) {
+            current = stored.terms();
+            terms = current;
+        }
+        return current;
     }
 
     /**
-     * tokenizes, lemmetizes and removes stopwords from a text
+     * sets the ids of the tokens of a website that was analyzed before, e.g.
+     * when it is read from an {@link IndexSegment}
      *
-     * @param input text from which to create tokens
-     * @return list of tokens
+     * @param pTerms ids of the tokens in the order of the content
      */
-    public static List<String> createTokens(final String input) {
-        List<String> completeContentList = tokenize(input);
-
-        // removing stop words from list
-        completeContentList = removeStopWords(completeContentList);
-        // lemmatization
-        completeContentList = lemmatize(completeContentList);
-
-        return completeContentList;
+    void setTerms(int[] pTerms) {
+        this.terms = pTerms;
     }
 
     /**
-     * tokenizes the list with a regex
-     *
-     * @param input list to be tokenized
-     * @return tokenized list
-     */
-    private static List<String> tokenize(final String input) {
-        // removing punctiation from String
-        String tempString = input.replaceAll("[^\\sa-zA-Z0-9]", "").toLowerCase(Locale.ENGLISH);
-        String[] tokens = tempString.split(" ");
-        List<String> tokenizedList = new ArrayList<>();
-        for (String string : tokens) {
-            if (!string.isEmpty()) {
-                tokenizedList.add(string);
-            }
-        }
-        return tokenizedList;
+     * @return returns tokenized list or null if the website isn't analyzed yet
+     */
+    public List<String> getTokenList() {
+        int[] current = getTerms();
+        return current == null ? null : TermDictionary.getInstance().getTerms(current);
     }
 
     /**
-     * removes all stopwords from list. stopwards are saved in stopWords.txt
+     * tokenizes, lemmetizes and removes stopwords from a text
      *
-     * @param inputList list from which to remove stopwords
-     * @return list without stopwords
+     * @param input text from which to create tokens
+     * @return list of tokens
+     * @see TextAnalyzer
      */
-    private static List<String> removeStopWords(List<String> inputList) {
-        try {
-            // removing all stopwords
-            InputStream inputStream = WebsiteData.class.getClassLoader().getResourceAsStream("stopWords.txt");
-
-            if (inputStream == null) {
-                throw new IOException("Die Datei 'stopWords.txt' wurde nicht gefunden.");
-            }
-            String stopwords =  new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
-            List<String> stopwordList = Arrays.asList(stopwords.split(","));
-            inputList.removeAll(stopwordList);
-            return inputList;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return new ArrayList<>();
-        }
+    public static List<String> createTokens(final String input) {
+        return TextAnalyzer.getInstance().analyze(input);
     }
 
     /**
-     * Lemmatizes input list with StandfordCore pipeline
+     * tokenizes, lemmetizes and removes stopwords from a query, known tokens
+     * are looked up in the dictionary of the corpus
      *
-     * @param inputList list to be lemmatized
-     * @return lemmatized list
+     * @param query query from which to create tokens
+     * @return list of tokens
+     * @see TextAnalyzer#analyzeQuery(String)
      */
-    private static List<String> lemmatize(List<String> inputList) {
-        try{
-
-
-            // Load POS Tagger model
-            InputStream modelIn = WebsiteData.class.getClassLoader().getResourceAsStream("en-pos.bin");
-            if (modelIn == null) {
-                throw new IOException("POS-Modell 'en-pos.bin' nicht gefunden.");
-            }
-            POSModel model2 = new POSModel(modelIn);
-            POSTaggerME posTagger = new POSTaggerME(model2);
-            LemmatizerModel model;
-            // Load Lemmatizer dictionary
-            InputStream dictLemmatizer = WebsiteData.class.getClassLoader().getResourceAsStream("en-lemmatizer.bin");
-            if (dictLemmatizer == null) {
-                throw new IOException("Lemmatizer-Modell 'en-lemmatizer.bin' nicht gefunden.");
-            }
-            model = new LemmatizerModel(dictLemmatizer);
-            LemmatizerME lemmatizerME = new LemmatizerME(model);
-
-
-            String[] tokens = inputList.toArray(new String[0]);
-
-            // POS tagging
-            String[] posTags = posTagger.tag(tokens);
+    public static List<String> createQueryTokens(final String query) {
+        return TextAnalyzer.getInstance().analyzeQuery(query);
+    }
 
-            // Lemmatization
-            String[] lemmas = lemmatizerME.lemmatize(tokens, posTags);
+    /**
+     * fields of a document that are decoded from an index file when they are first used
+     */
+    interface Stored {
+        /**
+         * @return title, header, body and links
+         */
+        Content content();
 
-            // Add lemmatized tokens to output list
-            return new ArrayList<>(Arrays.asList(lemmas));
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-            return null;
-        }
+        /**
+         * @return ids of the tokens in the order of the content
+         */
+        int[] terms();
 
+        /**
+         * @return normalized tfidf vector
+         */
+        SparseVector vector();
     }
 
-
+    /**
+     * decoded text fields of a document
+     */
+    record Content(String title, String header, String body, List<String> outgoingLinks) {
+    }
+}
@@ -0,0 +1,44 @@
+package search;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Source of the websites that are indexed, e.g. the {@link Crawler}.
+ */
+public interface WebsiteSource {
+
+    /**
+     * collects all websites
+     *
+     * @return List of all websites saved as tokenized WebsiteData Object
+     * {@link WebsiteData}
+     * @throws IOException
+     */
+    List<WebsiteData> start() throws IOException;
+
+    /**
+     * hands every website to the sink as soon as it is parsed. The websites
+     * aren't tokenized yet, this is left to the consumer.
+     *
+     * @param sink consumer of the websites, may block
+     * @throws IOException
+     */
+    void crawl(Consumer<WebsiteData> sink) throws IOException;
+
+    /**
+     * @return number of found sites
+     */
+    int getNumberOfSites();
+
+    /**
+     * @return number of all links
+     */
+    int getNumberOfLinks();
+
+    /**
+     * @return number of sites that couldn't be read or parsed
+     */
+    int getNumberOfSkippedSites();
+}
@@ -0,0 +1,159 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import search.BooleanQuery;
+import search.IndexSnapshot;
+import search.PositionalPostings;
+import search.SearchQuery;
+import search.WebsiteData;
+
+/**
+ * Unit tests for parsing boolean queries and searching them over the positional index.
+ */
+class BooleanQueryTests {
+
+    private static final String[] WORDS = {"cheese", "milk", "blue", "soft", "hard", "rind", "goat", "sheep",
+            "cow", "aged", "mild", "sharp", "creamy", "french", "stilton"};
+    private static IndexSnapshot index;
+
+    @BeforeAll
+    static void createIndex() {
+        // more documents than a skip interval, so conjunctions advance over skip pointers
+        index = new RandomCorpus(22, 400, RandomCorpus.words(WORDS, 2, 31),
+                new WebsiteData("http://stilton.cheesy", "", "", "the blue stilton", List.of()),
+                new WebsiteData("http://reversed.cheesy", "", "", "stilton is blue", List.of())).index;
+    }
+
+    /**
+     * @return urls of all documents whose analyzed terms fulfil the predicate
+     */
+    private static Set<String> matching(Predicate<List<String>> predicate) {
+        Set<String> urls = new HashSet<>();
+        for (Map.Entry<String, WebsiteData> website : index.getWebsites().entrySet()) {
+            if (predicate.test(website.getValue().getTokenList())) {
+                urls.add(website.getKey());
+            }
+        }
+        return urls;
+    }
+
+    private static Predicate<List<String>> has(String word) {
+        String term = WebsiteData.createQueryTokens(word).get(0);
+        return terms -> terms.contains(term);
+    }
+
+    private static Predicate<List<String>> phrase(String first, String second) {
+        List<String> terms = List.of(WebsiteData.createQueryTokens(first).get(0), WebsiteData.createQueryTokens(second).get(0));
+        return tokens -> Collections.indexOfSubList(tokens, terms) >= 0;
+    }
+
+    private static Set<String> search(String query) throws IOException {
+        List<String> urls = SearchQuery.searchBoolean(query, index, Integer.MAX_VALUE);
+        Set<String> distinct = new HashSet<>(urls);
+        assertEquals(urls.size(), distinct.size(), query);
+        return distinct;
+    }
+
+    @Test
+    void phraseMatchesAdjacentTermsOnly() throws IOException {
+        Set<String> phrase = search("\"blue stilton\"");
+        assertTrue(phrase.contains("http://stilton.cheesy"));
+        assertFalse(phrase.contains("http://reversed.cheesy"));
+        assertEquals(matching(phrase("blue", "stilton")), phrase);
+
+        Set<String> words = search("blue stilton");
+        assertTrue(words.contains("http://reversed.cheesy"));
+        assertEquals(matching(has("blue").and(has("stilton"))), words);
+    }
+
+    @Test
+    void operatorsMatchLikeTheirPredicates() throws IOException {
+        assertEquals(matching(has("blue").and(has("cheese"))), search("blue AND cheese"));
+        assertEquals(matching(has("blue").or(has("goat"))), search("blue OR goat"));
+        assertEquals(matching(has("blue").and(has("goat").negate())), search("blue -goat"));
+        assertEquals(matching(has("blue").negate()), search("NOT blue"));
+        assertEquals(matching(has("goat").or(has("sheep")).and(has("aged").negate())),
+                search("(goat OR sheep) AND NOT aged"));
+        assertEquals(matching(phrase("soft", "cheese").or(phrase("blue", "rind"))),
+                search("\"soft cheese\" OR \"blue rind\""));
+        assertEquals(matching(has("milk").and(has("cow")).or(has("french").and(has("sharp")))),
+                search("milk cow OR french sharp"));
+        // a word no document contains matches nothing, a missing parenthesis is added
+        assertTrue(search("blue camembert").isEmpty());
+        assertEquals(matching(has("blue").or(has("camembert"))), search("(blue OR camembert"));
+    }
+
+    @Test
+    void resultsAreOrderedByTfidf() throws IOException {
+        List<String> tfidf = SearchQuery.search("blue", index);
+        assertEquals(tfidf.subList(0, 10), SearchQuery.searchBoolean("blue", index, 10));
+        // the best k of all matches, the heap keeps no more than k of them
+        List<String> all = SearchQuery.searchBoolean("blue OR goat", index, Integer.MAX_VALUE);
+        assertEquals(all.subList(0, 5), SearchQuery.searchBoolean("blue OR goat", index, 5));
+    }
+
+    @Test
+    void parserBuildsTheQueryTree() {
+        BooleanQuery query = BooleanQuery.parse("\"blue stilton\" OR (goat -sheep)");
+        BooleanQuery.Or or = assertInstanceOf(BooleanQuery.Or.class, query);
+        assertInstanceOf(BooleanQuery.Phrase.class, or.clauses().get(0));
+        BooleanQuery.And and = assertInstanceOf(BooleanQuery.And.class, or.clauses().get(1));
+        assertInstanceOf(BooleanQuery.Not.class, and.clauses().get(1));
+        assertInstanceOf(BooleanQuery.Nothing.class, BooleanQuery.parse("AND OR ()"));
+    }
+
+    @Test
+    void negationWithoutOperandIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> BooleanQuery.parse("(blue -)"));
+        assertThrows(IllegalArgumentException.class, () -> BooleanQuery.parse("goat AND (NOT )"));
+        assertThrows(IllegalArgumentException.class, () -> BooleanQuery.parse("- NOT) blue"));
+        // other malformed queries are still repaired
+        assertInstanceOf(BooleanQuery.Term.class, BooleanQuery.parse("blue)"));
+        assertInstanceOf(BooleanQuery.Term.class, BooleanQuery.parse("blue -"));
+    }
+
+    @Test
+    void advanceFindsTheSameDocumentsAsNext() {
+        Random random = new Random(5);
+        PositionalPostings.Builder builder = new PositionalPostings.Builder();
+        List<Integer> docIds = new ArrayList<>();
+        int docId = 0;
+        for (int i = 0; i < 1000; i++) {
+            docId += 1 + random.nextInt(300);
+            docIds.add(docId);
+            builder.add(docId, new int[] {i % 7, 20 + i}, 1 + i % 2);
+        }
+        PositionalPostings postings = builder.build();
+        for (int start = 0; start < 3; start++) {
+            PositionalPostings.Cursor cursor = postings.cursor();
+            int target = start;
+            while (cursor.advance(target)) {
+                // the cursor is on the first document at or after the target
+                int index = docIds.indexOf(cursor.docId());
+                assertTrue(index >= 0 && cursor.docId() >= target);
+                assertTrue(index == 0 || docIds.get(index - 1) < target);
+                assertEquals(1 + index % 2, cursor.frequency());
+                assertEquals(index % 7, cursor.position(0));
+                target = cursor.docId() + 1 + random.nextInt(20_000);
+            }
+            assertTrue(docIds.get(docIds.size() - 1) < target);
+        }
+    }
+}
@@ -2,11 +2,13 @@ package org.search;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.junit.jupiter.api.Test;
 import search.ForwardIndex;
 import search.PageGradingUtil;
+import search.SparseVector;
 
 /**
  * Unit tests for cosine similarity.
@@ -124,4 +126,19 @@ class CosineTests {
         // and remove the following line!
 
     }
-}
\ No newline at end of file
+
+    @Test
+    void sparseVectors() {
+        // the same vectors as above with zero components in between
+        SparseVector vectorA = SparseVector.of(new double[] {0.1, 0, 0.2, 0.3, 0, 0.4, 0.5});
+        SparseVector vectorB = new SparseVector(new int[] {0, 2, 3, 5, 6}, new float[] {0.5f, 0.4f, 0.3f, 0.2f, 0.1f});
+
+        assertEquals(5, vectorA.size());
+        assertTrue(Math.abs(PageGradingUtil.cosineSimilarity(vectorA, vectorB) - 0.6364) < 0.0001);
+        assertTrue(Math.abs(PageGradingUtil.cosineSimilarityImproved(vectorA.normalize(), vectorB.normalize()) - 0.6364) < 0.0001);
+        assertTrue(Math.abs(vectorA.norm() - 1.0) < 0.0001);
+        assertEquals(0.0, PageGradingUtil.cosineSimilarityImproved(vectorA,
+                new SparseVector(new int[] {1, 4, 7}, new float[] {1f, 1f, 1f})));
+        assertThrows(IllegalArgumentException.class, () -> new SparseVector(new int[] {2, 1}, new float[] {1f, 1f}));
+    }
+}
@@ -0,0 +1,102 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import search.CrawlSegmentReader;
+import search.CrawlSegmentWriter;
+import search.WebsiteData;
+
+/**
+ * Unit tests for writing and replaying crawl snapshot segments.
+ */
+class CrawlSegmentTests {
+
+    @TempDir
+    Path directory;
+
+    private static byte[] page(String title, String link) {
+        return ("<html><head><title>" + title + "</title></head><body><header>" + title + "</header>"
+                + "<main>Fresh cheese <a href=\"" + link + "\">more</a></main></body></html>")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void replayLatestRecordOfEveryUrl() throws IOException {
+        Path segment = directory.resolve("crawl.segment");
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            writer.append("http://burrata.cheesy2", 1L, Map.of("ETag", "\"1\""), page("Old", "http://stilton24.cheesy2"));
+            writer.append("http://stilton24.cheesy2", 2L, Map.of(), page("Stilton", "http://burrata.cheesy2/"));
+        }
+        // reopening appends to the existing segment
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            writer.append("http://burrata.cheesy2", 3L, Map.of(), page("New", "http://stilton24.cheesy2"));
+            writer.append("http://broken.cheesy2", 4L, Map.of(), "<html></html>".getBytes(StandardCharsets.UTF_8));
+        }
+
+        CrawlSegmentReader reader = new CrawlSegmentReader(segment);
+        List<WebsiteData> websites = new ArrayList<>();
+        reader.crawl(websites::add);
+
+        assertEquals(3, reader.getNumberOfSites());
+        assertEquals(1, reader.getNumberOfSkippedSites());
+        assertEquals(2, reader.getNumberOfLinks());
+        assertEquals(2, websites.size());
+        assertEquals("New", websites.get(0).getTitle());
+        assertEquals(List.of("http://burrata.cheesy2"), websites.get(1).getOutgoingLinks());
+    }
+
+    @Test
+    void ignoreTornRecordAtTheEnd() throws IOException {
+        Path segment = directory.resolve("crawl.segment");
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            writer.append("http://burrata.cheesy2", 1L, Map.of(), page("Burrata", "http://stilton24.cheesy2"));
+        }
+        Files.write(segment, new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        List<WebsiteData> websites = new ArrayList<>();
+        new CrawlSegmentReader(segment).crawl(websites::add);
+        assertEquals(1, websites.size());
+    }
+
+    @Test
+    void appendAfterTornRecord() throws IOException {
+        Path segment = directory.resolve("crawl.segment");
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            writer.append("http://burrata.cheesy2", 1L, Map.of(), page("Burrata", "http://stilton24.cheesy2"));
+        }
+        long size = Files.size(segment);
+        // a crash left a complete length and checksum but only part of the payload
+        Files.write(segment, new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 42}, StandardOpenOption.APPEND);
+
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            writer.append("http://stilton24.cheesy2", 2L, Map.of(), page("Stilton", "http://burrata.cheesy2"));
+        }
+
+        List<WebsiteData> websites = new ArrayList<>();
+        new CrawlSegmentReader(segment).crawl(websites::add);
+        assertEquals(2, websites.size());
+        assertEquals("Stilton", websites.get(1).getTitle());
+        assertTrue(Files.size(segment) > size);
+    }
+
+    @Test
+    void rejectOtherFiles() throws IOException {
+        Path file = Files.writeString(directory.resolve("other.txt"), "no segment");
+        assertThrows(IOException.class, () -> new CrawlSegmentReader(file).crawl(website -> { }));
+        assertThrows(IOException.class, () -> new CrawlSegmentWriter(file));
+        assertEquals("no segment", Files.readString(file));
+    }
+}
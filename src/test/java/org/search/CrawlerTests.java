@@ -1,11 +1,29 @@
 package org.search;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import search.CrawlSegmentReader;
+import search.CrawlSegmentWriter;
 import search.Crawler;
+import search.IndexingPipeline;
+import search.MergePolicy;
+import search.SegmentedIndex;
+import search.WebsiteData;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -62,4 +80,108 @@ class CrawlerTests {
         // JSON file
         assertEquals(3824, numLinks);
     }
+
+    @Test
+    void crawlConcurrentlyFindsSameWebsites() throws IOException {
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+
+        crawler.startConcurrent();
+
+        // the concurrent crawl has to find the same pages and links as the sequential one
+        assertEquals(260, crawler.getNumberOfSites());
+        assertEquals(3824, crawler.getNumberOfLinks());
+        assertEquals(0, crawler.getNumberOfSkippedSites());
+        // every page is fetched exactly once over the shared client
+        assertEquals(260, crawler.getFetcher().getNumberOfFetches());
+        assertEquals(0, crawler.getFetcher().getNumberOfFailedFetches());
+        assertTrue(crawler.getFetcher().getBytesDecoded() >= crawler.getFetcher().getBytesTransferred());
+    }
+
+    @Test
+    void recrawlKeepsUnchangedWebsites() throws IOException {
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+        Map<String, WebsiteData> previousSites = new HashMap<>();
+        for (WebsiteData website : crawler.startConcurrent()) {
+            previousSites.put(website.url, website);
+        }
+
+        List<WebsiteData> recrawledSites = crawler.recrawl(previousSites, true);
+
+        // nothing changed on the webserver, so every page has to be reused
+        assertEquals(previousSites.size(), recrawledSites.size());
+        assertEquals(0, crawler.getNumberOfChangedSites());
+        assertEquals(previousSites.size(), crawler.getNumberOfUnchangedSites());
+        assertEquals(3824, crawler.getNumberOfLinks());
+        for (WebsiteData website : recrawledSites) {
+            assertSame(previousSites.get(website.url), website);
+        }
+    }
+
+    @Test
+    void streamCrawledWebsitesIntoIndex() throws IOException, InterruptedException {
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+        IndexingPipeline pipeline = new IndexingPipeline(16, 2, 500);
+        List<Integer> completeSizes = new ArrayList<>();
+
+        try (SegmentedIndex index = new SegmentedIndex(new MergePolicy(8, 0.3), false)) {
+            pipeline.run(crawler, index, (forwardIndex, reverseIndex) ->
+                    completeSizes.add(forwardIndex.getForwardIndex().size()));
+
+            // pages are added to the index while crawling, the complete index once at the end contains every page
+            assertEquals(260, crawler.getNumberOfSites());
+            assertEquals(List.of(260 - crawler.getNumberOfSkippedSites()), completeSizes);
+            assertTrue(index.snapshot().getNumberOfDocuments() > 0);
+            assertTrue(index.snapshot().getNumberOfDocuments() <= completeSizes.get(0));
+        }
+    }
+
+    @Test
+    void failingIndexerCancelsTheCrawl() {
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+        IndexingPipeline pipeline = new IndexingPipeline(2, 2, 0);
+        IllegalStateException failure = new IllegalStateException("indexing failed");
+        SegmentedIndex index = new SegmentedIndex(new MergePolicy(8, 0.3), false) {
+            @Override
+            public void update(Collection<WebsiteData> pWebsites) {
+                throw failure;
+            }
+        };
+
+        // without the indexer taking pages the crawler would wait for room in the queues forever
+        IOException thrown = assertThrows(IOException.class, () -> pipeline.run(crawler, index,
+                (forwardIndex, reverseIndex) -> {
+                }));
+        assertSame(failure, thrown.getCause());
+        assertTrue(crawler.getNumberOfSites() < 260);
+    }
+
+    @Test
+    void failingSinkStopsTheCrawl() {
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+        IllegalStateException failure = new IllegalStateException("sink failed");
+        // the failure of a worker ends the crawl instead of leaving the other workers waiting
+        assertSame(failure, assertThrows(IllegalStateException.class, () -> crawler.crawl(website -> {
+            throw failure;
+        })));
+    }
+
+    @Test
+    void replaySnapshotOfCrawl(@TempDir Path directory) throws IOException {
+        Path segment = directory.resolve("crawl.segment");
+        Crawler crawler = new Crawler(seedUrls, 8, 4, 30000);
+        // the crawler calls the sink from its worker threads
+        List<String> crawledUrls = Collections.synchronizedList(new ArrayList<>());
+        try (CrawlSegmentWriter writer = new CrawlSegmentWriter(segment)) {
+            crawler.setSnapshotWriter(writer);
+            crawler.crawl(website -> crawledUrls.add(website.url));
+        }
+
+        // replaying the snapshot has to produce the same websites without network access
+        CrawlSegmentReader reader = new CrawlSegmentReader(segment);
+        List<String> replayedUrls = new ArrayList<>();
+        reader.crawl(website -> replayedUrls.add(website.url));
+        assertEquals(260, reader.getNumberOfSites());
+        assertEquals(3824, reader.getNumberOfLinks());
+        assertEquals(new HashSet<>(crawledUrls), new HashSet<>(replayedUrls));
+    }
 }
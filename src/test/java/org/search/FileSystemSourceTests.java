@@ -0,0 +1,53 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import search.FileSystemSource;
+import search.WebsiteData;
+
+/**
+ * Unit tests for reading websites from the file system.
+ */
+class FileSystemSourceTests {
+
+    @TempDir
+    Path root;
+
+    private void writePage(String path, String title, String link) throws IOException {
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "<html><head><title>" + title + "</title></head><body><header>" + title
+                + "</header><main>Cheese <a href=\"" + link + "\">link</a></main></body></html>");
+    }
+
+    @Test
+    void mapFilesToUrls() throws IOException {
+        writePage("stilton24.cheesy2/index.html", "Stilton", "http://burrata.cheesy2/");
+        writePage("burrata.cheesy2/index.html", "Burrata", "../stilton24.cheesy2/index.html");
+        writePage("lekiri24.cheesy5/lekiri.cheesy5/index.html", "Kiri", "/");
+        writePage(".well-known/index.html", "Hidden", "/");
+        Files.writeString(root.resolve("stilton24.cheesy2/readme.txt"), "no website");
+
+        FileSystemSource source = new FileSystemSource(root);
+        List<WebsiteData> websites = new ArrayList<>();
+        source.crawl(websites::add);
+
+        assertEquals(3, source.getNumberOfSites());
+        assertEquals(3, source.getNumberOfLinks());
+        // websites are ordered by url and links are resolved against their url
+        assertEquals("http://burrata.cheesy2", websites.get(0).url);
+        assertEquals(List.of("http://burrata.cheesy2/stilton24.cheesy2"), websites.get(0).getOutgoingLinks());
+        assertEquals("http://lekiri24.cheesy5/lekiri.cheesy5", websites.get(1).url);
+        assertEquals(List.of("http://lekiri24.cheesy5"), websites.get(1).getOutgoingLinks());
+        assertEquals("http://stilton24.cheesy2", websites.get(2).url);
+        assertEquals(List.of("http://burrata.cheesy2"), websites.get(2).getOutgoingLinks());
+    }
+}
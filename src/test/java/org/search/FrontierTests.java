@@ -0,0 +1,88 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import search.Frontier;
+import search.UrlNormalizer;
+
+/**
+ * Unit tests for url normalization and the crawl frontier.
+ */
+class FrontierTests {
+
+    @Test
+    void normalizeEquivalentUrls() {
+        String expected = "http://lekiri24.cheesy5";
+        assertEquals(expected, UrlNormalizer.normalize("http://lekiri24.cheesy5"));
+        assertEquals(expected, UrlNormalizer.normalize("http://lekiri24.cheesy5/"));
+        assertEquals(expected, UrlNormalizer.normalize("HTTP://LeKiri24.cheesy5:80/index.html"));
+        assertEquals(expected, UrlNormalizer.normalize("http://lekiri24.cheesy5/#top"));
+    }
+
+    @Test
+    void normalizeRelativeUrls() {
+        assertEquals("http://lekiri24.cheesy5/lekiri.cheesy5",
+                UrlNormalizer.normalize("http://lekiri24.cheesy5/", "lekiri.cheesy5/index.html"));
+        assertEquals("http://lekiri24.cheesy5/lekiri.cheesy5",
+                UrlNormalizer.normalize("http://lekiri24.cheesy5/a/b/", "../../lekiri.cheesy5/"));
+        assertNull(UrlNormalizer.normalize("http://lekiri24.cheesy5", "mailto:cheese@cheesy5"));
+        assertNull(UrlNormalizer.normalize("http://lekiri24.cheesy5", ""));
+    }
+
+    @Test
+    void offerEachUrlOnce() {
+        Frontier frontier = new Frontier(16);
+        assertTrue(frontier.offer("http://burrata.cheesy2"));
+        assertFalse(frontier.offer("http://burrata.cheesy2/"));
+        assertFalse(frontier.offer("http://burrata.cheesy2/index.html"));
+        assertTrue(frontier.offer("http://stilton24.cheesy2"));
+
+        assertEquals(2, frontier.getNumberOfDistinctUrls());
+        assertEquals(2, frontier.getNumberOfDuplicateUrls());
+        assertFalse(frontier.isApproximate());
+        assertEquals("http://burrata.cheesy2", frontier.poll());
+        assertEquals("http://stilton24.cheesy2", frontier.poll());
+        assertNull(frontier.poll());
+    }
+
+    @Test
+    void offerEachUrlOnceWithBloomFilter() {
+        Frontier frontier = new Frontier(2000, true, 1000);
+        for (int i = 0; i < 1000; i++) {
+            frontier.offer("http://cheese" + i + ".cheesy1");
+            assertFalse(frontier.offer("http://cheese" + i + ".cheesy1/"));
+        }
+        // false positives of the bloom filter may only reject a few new urls, which are counted as duplicates
+        assertTrue(frontier.isApproximate());
+        assertTrue(frontier.getNumberOfDistinctUrls() > 990);
+        assertEquals(2000, frontier.getNumberOfDistinctUrls() + frontier.getNumberOfDuplicateUrls());
+    }
+
+    @Test
+    void dropUrlsWhenFull() {
+        Frontier frontier = new Frontier(1);
+        assertTrue(frontier.offer("http://burrata.cheesy2"));
+        assertFalse(frontier.offer("http://stilton24.cheesy2"));
+        assertEquals(1, frontier.getNumberOfDistinctUrls());
+        assertEquals(1, frontier.getNumberOfDroppedUrls());
+        // a dropped url is forgotten, so it is added once there is room again
+        assertEquals("http://burrata.cheesy2", frontier.poll());
+        assertTrue(frontier.offer("http://stilton24.cheesy2"));
+        assertEquals(2, frontier.getNumberOfDistinctUrls());
+    }
+
+    @Test
+    void dropUrlsWhenFullWithBloomFilter() {
+        Frontier frontier = new Frontier(1, true, 100);
+        assertTrue(frontier.offer("http://burrata.cheesy2"));
+        assertFalse(frontier.offer("http://stilton24.cheesy2"));
+        assertEquals("http://burrata.cheesy2", frontier.poll());
+        assertTrue(frontier.offer("http://stilton24.cheesy2"));
+        assertFalse(frontier.offer("http://stilton24.cheesy2"));
+        assertEquals(2, frontier.getNumberOfDistinctUrls());
+    }
+}
@@ -0,0 +1,122 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import search.FrontCodedTerms;
+import search.IndexSnapshot;
+import search.LevenshteinAutomaton;
+import search.SearchQuery;
+import search.SearchResult;
+import search.WebsiteData;
+
+/**
+ * Unit tests for finding terms within an edit distance and searching with misspelled words.
+ */
+class FuzzySearchTests {
+
+    private static IndexSnapshot index;
+
+    @BeforeAll
+    static void createIndex() {
+        // random words over a small alphabet, so many of them are within a few edits of each other
+        index = new RandomCorpus(24, 200, random -> {
+            StringBuilder body = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                int length = 3 + random.nextInt(6);
+                for (int c = 0; c < length; c++) {
+                    body.append((char) ('k' + random.nextInt(4)));
+                }
+                body.append(' ');
+            }
+            return body.toString();
+        }, new WebsiteData("http://camembert.cheesy", "", "", "soft camembert", List.of()),
+                new WebsiteData("http://gruyere.cheesy", "", "", "hard gruyere", List.of())).index;
+    }
+
+    /**
+     * @return edit distance with transpositions of neighbour chars
+     */
+    private static int distance(String a, String b) {
+        int[][] d = new int[a.length() + 1][b.length() + 1];
+        for (int i = 0; i <= a.length(); i++) {
+            for (int j = 0; j <= b.length(); j++) {
+                if (i == 0 || j == 0) {
+                    d[i][j] = i + j;
+                    continue;
+                }
+                d[i][j] = Math.min(Math.min(d[i - 1][j], d[i][j - 1]) + 1,
+                        d[i - 1][j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1));
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    d[i][j] = Math.min(d[i][j], d[i - 2][j - 2] + 1);
+                }
+            }
+        }
+        return d[a.length()][b.length()];
+    }
+
+    @Test
+    void automatonAcceptsTheTermsWithinTheDistance() {
+        FrontCodedTerms terms = index.getSortedTerms();
+        for (String word : List.of("kkll", "lmnk", "mknlmk", "nnnnnnn", "camembetr", "gruyre", "k", "")) {
+            for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+                List<LevenshteinAutomaton.Match> expected = new ArrayList<>();
+                for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+                    int distance = distance(terms.getTerm(ordinal), word);
+                    if (distance <= maxDistance) {
+                        expected.add(new LevenshteinAutomaton.Match(ordinal, distance));
+                    }
+                }
+                assertEquals(expected, new LevenshteinAutomaton(word, maxDistance).match(terms),
+                        word + " " + maxDistance);
+            }
+        }
+    }
+
+    @Test
+    void misspelledWordsFindTheDocuments() throws IOException {
+        assertTrue(SearchQuery.search("camembetr", index).isEmpty());
+        SearchResult camembert = SearchQuery.searchFuzzy("camembetr", index, 10, 0);
+        assertEquals(List.of("http://camembert.cheesy"), camembert.urls());
+        // the lemmas depend on the words around them, so the suggestion is compared to the terms of the document
+        assertEquals(index.getWebsite("http://camembert.cheesy").getTokenList().get(1), camembert.suggestion());
+
+        SearchResult gruyere = SearchQuery.searchFuzzy("soft gruyre", index, 10, 0);
+        assertTrue(gruyere.urls().contains("http://gruyere.cheesy"));
+        assertEquals("soft " + index.getWebsite("http://gruyere.cheesy").getTokenList().get(1), gruyere.suggestion());
+    }
+
+    @Test
+    void correctWordsRankTheExactTermFirst() throws IOException {
+        SearchResult result = SearchQuery.searchFuzzy("camembert", index, 10, 0);
+        assertNull(result.suggestion());
+        assertEquals(List.of("http://camembert.cheesy"), result.urls());
+    }
+
+    @Test
+    void correctWordsAreNotExpanded() throws IOException {
+        FrontCodedTerms terms = index.getSortedTerms();
+        int compared = 0;
+        for (int ordinal = 0; ordinal < terms.size(); ordinal += 7) {
+            String term = terms.getTerm(ordinal);
+            if (!WebsiteData.createQueryTokens(term).equals(List.of(term))) {
+                // the lemma of the word alone isn't the term
+                continue;
+            }
+            // the random words all have neighbours within the distance, they must not change the ranking
+            assertEquals(SearchQuery.searchImpactOrdered(term, index, 10, 0).urls(),
+                    SearchQuery.searchFuzzy(term, index, 10, 0).urls(), term);
+            compared++;
+        }
+        assertTrue(compared > 10);
+        SearchResult mixed = SearchQuery.searchFuzzy("soft gruyre", index, 10, 0);
+        assertEquals("soft", mixed.suggestion().split(" ")[0]);
+    }
+}
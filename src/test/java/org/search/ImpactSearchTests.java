@@ -0,0 +1,77 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import search.ImpactIndex;
+import search.IndexSnapshot;
+import search.PostingsList;
+import search.ReverseIndex;
+import search.SearchQuery;
+import search.SearchResult;
+import search.TermDictionary;
+
+/**
+ * Unit tests for the impact ordered tiers and searching them score at a time.
+ */
+class ImpactSearchTests {
+
+    private static ReverseIndex reverseIndex;
+    private static IndexSnapshot index;
+
+    @BeforeAll
+    static void createIndex() {
+        // documents of different lengths, so the weights of a term spread over several tiers
+        RandomCorpus corpus = new RandomCorpus(7, 150, RandomCorpus.words(RandomCorpus.WORDS, 2, 61));
+        reverseIndex = corpus.reverseIndex;
+        index = corpus.index;
+    }
+
+    @Test
+    void tiersHoldAllPostingsByImpact() {
+        ImpactIndex impacts = ImpactIndex.of(reverseIndex);
+        int termId = TermDictionary.getInstance().lookup("cheese");
+        int numberOfPostings = 0;
+        for (int tier = 0; tier < impacts.getNumberOfTiers(termId); tier++) {
+            float impact = impacts.getImpact(termId, tier);
+            if (tier > 0) {
+                assertTrue(impact < impacts.getImpact(termId, tier - 1));
+            }
+            PostingsList.Cursor cursor = impacts.getTier(termId, tier).cursor();
+            int previous = -1;
+            while (cursor.next()) {
+                assertTrue(cursor.docId() > previous);
+                assertTrue(cursor.weight() <= impact);
+                previous = cursor.docId();
+                numberOfPostings++;
+            }
+        }
+        assertTrue(impacts.getNumberOfTiers(termId) > 1);
+        assertEquals(reverseIndex.getPostings(termId).size(), numberOfPostings);
+    }
+
+    @Test
+    void exactResultsEqualFullSearch() throws IOException {
+        for (String query : RandomCorpus.QUERIES) {
+            for (int k : new int[] {1, 3, 10, 200}) {
+                SearchResult result = SearchQuery.searchImpactOrdered(query, index, k, 0);
+                assertTrue(result.exact(), query);
+                assertEquals(SearchQuery.search(query, index, k), result.urls(), query);
+            }
+        }
+    }
+
+    @Test
+    void budgetMakesResultsApproximate() throws IOException {
+        // the first tier read holds less than 50 documents
+        SearchResult result = SearchQuery.searchImpactOrdered("soft cheese", index, 50, 1);
+        assertFalse(result.exact());
+        assertTrue(result.urls().size() < 50);
+        assertTrue(SearchQuery.searchImpactOrdered("blue", index, 10, Long.MAX_VALUE).exact());
+    }
+}
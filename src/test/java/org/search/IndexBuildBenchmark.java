@@ -0,0 +1,80 @@
+package org.search;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import search.FileSystemSource;
+import search.ReverseIndex;
+import search.WebsiteData;
+
+/**
+ * Measures how long building the reverse index takes on the corpus and on
+ * synthetic corpora of 10 to 100 copies of it, once in the calling thread and
+ * once split in partial indexes on the common fork-join pool. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=org.search.IndexBuildBenchmark -Dexec.classpathScope=test}
+ * or from the IDE, optionally with the corpus directory as argument.
+ * <p>
+ * With a fork-join parallelism of 1 the partial indexes are built one after
+ * another, so the two columns only differ by noise and say nothing about the
+ * speedup, which needs a run on several cores.
+ */
+public class IndexBuildBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path root = Path.of(args.length > 0 ? args[0] : "webserver/www");
+        List<WebsiteData> websites = new FileSystemSource(root).start();
+        // the speedup of the parallel build depends on the cores, so every run records them with the jvm
+        System.out.println(websites.size() + " documents, "
+                + Runtime.getRuntime().availableProcessors() + " processors, fork-join parallelism "
+                + ForkJoinPool.getCommonPoolParallelism() + ", " + System.getProperty("java.vm.name") + " "
+                + System.getProperty("java.runtime.version"));
+
+        for (int scale : new int[] {1, 10, 25, 50, 100}) {
+            // the copies share the analyzed terms, only their urls differ
+            Map<String, WebsiteData> corpus = new HashMap<>();
+            for (int copy = 0; copy < scale; copy++) {
+                for (WebsiteData website : websites) {
+                    corpus.put(copy == 0 ? website.url : website.url + "?copy=" + copy, website);
+                }
+            }
+            long postings = countPostings(ReverseIndex.getReverseIndex(corpus));
+            double sequential = run(corpus, 1);
+            double parallel = run(corpus, Integer.MAX_VALUE);
+            System.out.printf(Locale.ENGLISH, "%4dx %8d docs %10d postings %10.1f ms sequential %10.1f ms parallel%n",
+                    scale, corpus.size(), postings, sequential, parallel);
+        }
+    }
+
+    /**
+     * builds the index a few times and returns the best time in milliseconds
+     */
+    private static double run(Map<String, WebsiteData> corpus, int partitions) {
+        int rounds = corpus.size() > 50_000 ? 3 : 10;
+        double best = Double.MAX_VALUE;
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            if (partitions == Integer.MAX_VALUE) {
+                ReverseIndex.getReverseIndex(corpus);
+            } else {
+                ReverseIndex.getReverseIndex(corpus, partitions);
+            }
+            best = Math.min(best, (System.nanoTime() - start) / 1e6);
+        }
+        return best;
+    }
+
+    private static long countPostings(ReverseIndex reverseIndex) {
+        long postings = 0;
+        for (int termId = 0; termId < reverseIndex.getDimension(); termId++) {
+            if (reverseIndex.contains(termId)) {
+                postings += reverseIndex.getPostings(termId).size();
+            }
+        }
+        return postings;
+    }
+}
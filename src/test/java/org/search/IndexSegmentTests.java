@@ -0,0 +1,98 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import search.ForwardIndex;
+import search.IndexSegment;
+import search.ReverseIndex;
+import search.SearchQuery;
+import search.WebsiteData;
+
+/**
+ * Unit tests for writing index files and opening them again.
+ */
+class IndexSegmentTests {
+
+    @TempDir
+    Path directory;
+    private Path path;
+    private ForwardIndex forwardIndex;
+    private ReverseIndex reverseIndex;
+
+    @BeforeEach
+    void writeIndex() throws IOException {
+        forwardIndex = new ForwardIndex();
+        forwardIndex.addEntries(List.of(
+                new WebsiteData("http://gouda.cheesy1", "Gouda", "Dutch cheese",
+                        "Gouda is a mild cheese from the Netherlands.", List.of("http://brie.cheesy2")),
+                new WebsiteData("http://brie.cheesy2", "Brie", "French cheese",
+                        "Brie is a soft cheese with a white rind. Fromage à pâte molle.",
+                        List.of("http://gouda.cheesy1", "http://stilton.cheesy3")),
+                new WebsiteData("http://stilton.cheesy3", "Stilton", "English blue",
+                        "Stilton is a blue cheese. Blue veins run through the blue Stilton.", List.of())));
+        reverseIndex = ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex());
+        forwardIndex.calculateVector(reverseIndex);
+        forwardIndex.calculatePageRankDamped();
+        path = directory.resolve("search.index");
+        IndexSegment.write(path, forwardIndex, reverseIndex);
+    }
+
+    @Test
+    void openWrittenIndex() throws IOException {
+        IndexSegment segment = IndexSegment.open(path);
+        Map<String, WebsiteData> websites = segment.getForwardIndex().getForwardIndex();
+        ReverseIndex openedIndex = segment.getReverseIndex();
+
+        assertEquals(Files.size(path), segment.getSizeInBytes());
+        assertEquals(3, websites.size());
+        WebsiteData brie = websites.get("http://brie.cheesy2");
+        WebsiteData original = forwardIndex.getForwardIndex().get("http://brie.cheesy2");
+        assertEquals(original.getCompleteContent(), brie.getCompleteContent());
+        assertEquals(original.getOutgoingLinks(), brie.getOutgoingLinks());
+        assertEquals(original.getTokenList(), brie.getTokenList());
+        assertEquals(original.pageRank, brie.pageRank);
+        assertEquals(reverseIndex.getNumberOfTerms(), openedIndex.getNumberOfTerms());
+        assertEquals(reverseIndex.getPostingsSizeInBytes(), openedIndex.getPostingsSizeInBytes());
+        for (String query : List.of("blue", "soft mild", "cheese", "blue cheese")) {
+            assertEquals(SearchQuery.search(query, forwardIndex.getForwardIndex(), reverseIndex),
+                    SearchQuery.search(query, websites, openedIndex));
+            assertEquals(SearchQuery.searchCosine(query, forwardIndex.getForwardIndex(), reverseIndex),
+                    SearchQuery.searchCosine(query, websites, openedIndex));
+            assertEquals(SearchQuery.searchPageRank(query, forwardIndex.getForwardIndex(), reverseIndex),
+                    SearchQuery.searchPageRank(query, websites, openedIndex));
+        }
+    }
+
+    @Test
+    void rejectDamagedIndex() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[] {42}), channel.size() - 10);
+        }
+        // the stored fields are only checked by verify, opening doesn't read them
+        IndexSegment segment = IndexSegment.open(path);
+        assertThrows(IOException.class, segment::verify);
+    }
+
+    @Test
+    void rejectOtherVersionsAndFiles() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(4).putInt(0, 99), 4);
+        }
+        assertThrows(IOException.class, () -> IndexSegment.open(path));
+        Path other = Files.writeString(directory.resolve("other.txt"), "no index");
+        assertThrows(IOException.class, () -> IndexSegment.open(other));
+    }
+}
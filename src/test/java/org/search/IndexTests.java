@@ -0,0 +1,154 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import search.ForwardIndex;
+import search.PostingsList;
+import search.ReverseIndex;
+import search.SearchQuery;
+import search.TermDictionary;
+import search.WebsiteData;
+
+/**
+ * Unit tests for the term dictionary, the reverse index and searching it.
+ */
+class IndexTests {
+
+    private ForwardIndex forwardIndex;
+    private ReverseIndex reverseIndex;
+
+    @BeforeEach
+    void buildIndex() {
+        forwardIndex = new ForwardIndex();
+        forwardIndex.addEntries(List.of(
+                new WebsiteData("http://gouda.cheesy1", "Gouda", "Dutch cheese",
+                        "Gouda is a mild cheese from the Netherlands.", List.of("http://brie.cheesy2")),
+                new WebsiteData("http://brie.cheesy2", "Brie", "French cheese",
+                        "Brie is a soft cheese with a white rind.", List.of("http://gouda.cheesy1")),
+                new WebsiteData("http://stilton.cheesy3", "Stilton", "English blue",
+                        "Stilton is a blue cheese. Blue veins run through the blue Stilton.",
+                        List.of("http://gouda.cheesy1"))));
+        reverseIndex = ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex());
+        forwardIndex.calculateVector(reverseIndex);
+        forwardIndex.calculatePageRankDamped();
+    }
+
+    @Test
+    void termIdsAreDenseAndStable() {
+        TermDictionary dictionary = TermDictionary.getInstance();
+        int id = dictionary.getId("camembert");
+
+        assertEquals(id, dictionary.getId("camembert"));
+        assertEquals(id, dictionary.lookup("camembert"));
+        assertEquals("camembert", dictionary.getTerm(id));
+        assertTrue(id < dictionary.size());
+        assertEquals(TermDictionary.UNKNOWN, dictionary.lookup("no-such-cheese"));
+        assertArrayEquals(new int[] {id}, dictionary.lookup(List.of("no-such-cheese", "camembert")));
+    }
+
+    @Test
+    void reverseIndexMapsTermIdsToDocuments() {
+        int blue = TermDictionary.getInstance().lookup("blue");
+        PostingsList.Cursor documents = reverseIndex.getPostings(blue).cursor();
+
+        assertTrue(documents.next());
+        assertEquals("http://stilton.cheesy3", reverseIndex.getUrl(documents.docId()));
+        assertTrue(documents.weight() > 0);
+        assertFalse(documents.next());
+        // a term of every document has an idf of zero
+        int cheese = TermDictionary.getInstance().lookup("cheese");
+        assertEquals(3, reverseIndex.getPostings(cheese).size());
+        assertEquals(0.0, reverseIndex.getIdf(cheese));
+        assertEquals(Math.log(3), reverseIndex.getIdf(blue));
+        assertFalse(reverseIndex.contains(TermDictionary.getInstance().getId("camembert")));
+        assertNull(reverseIndex.getPostings(TermDictionary.UNKNOWN));
+    }
+
+    @Test
+    void postingsListEncodesGaps() {
+        int[] docIds = {0, 1, 127, 128, 16_511, 2_000_000, Integer.MAX_VALUE};
+        PostingsList.Builder builder = new PostingsList.Builder();
+        for (int docId : docIds) {
+            builder.add(docId, docId / 2f);
+        }
+        PostingsList postings = builder.build();
+
+        assertEquals(docIds.length, postings.size());
+        assertTrue(postings.sizeInBytes() < docIds.length * (Integer.BYTES + Double.BYTES));
+        PostingsList.Cursor cursor = postings.cursor();
+        for (int docId : docIds) {
+            assertTrue(cursor.next());
+            assertEquals(docId, cursor.docId());
+            assertEquals(docId / 2f, cursor.weight());
+        }
+        assertFalse(cursor.next());
+        assertThrows(IllegalArgumentException.class, () -> builder.add(5, 1f));
+    }
+
+    @Test
+    void partialIndexesAreMergedInDocIdOrder() {
+        ReverseIndex partitioned = ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex(), 3);
+
+        assertEquals(reverseIndex.getNumberOfTerms(), partitioned.getNumberOfTerms());
+        for (int termId = 0; termId < reverseIndex.getDimension(); termId++) {
+            PostingsList expected = reverseIndex.getPostings(termId);
+            PostingsList actual = partitioned.getPostings(termId);
+            if (expected == null) {
+                assertNull(actual);
+                continue;
+            }
+            assertEquals(expected.size(), actual.size());
+            PostingsList.Cursor expectedCursor = expected.cursor();
+            PostingsList.Cursor actualCursor = actual.cursor();
+            while (expectedCursor.next()) {
+                assertTrue(actualCursor.next());
+                assertEquals(expectedCursor.docId(), actualCursor.docId());
+                assertEquals(expectedCursor.weight(), actualCursor.weight());
+            }
+        }
+
+        PostingsList.Builder first = new PostingsList.Builder();
+        first.add(3, 1f);
+        PostingsList.Builder second = new PostingsList.Builder();
+        second.add(300, 2f);
+        second.add(70_000, 3f);
+        first.append(second);
+        PostingsList.Cursor cursor = first.build().cursor();
+        assertTrue(cursor.next());
+        assertEquals(3, cursor.docId());
+        assertTrue(cursor.next());
+        assertEquals(300, cursor.docId());
+        assertTrue(cursor.next());
+        assertEquals(70_000, cursor.docId());
+        assertEquals(3f, cursor.weight());
+        assertThrows(IllegalArgumentException.class, () -> second.append(first));
+    }
+
+    @Test
+    void searchRanksMatchingDocuments() throws IOException {
+        Map<String, WebsiteData> websites = forwardIndex.getForwardIndex();
+
+        assertEquals(List.of("http://stilton.cheesy3"), SearchQuery.search("blue", websites, reverseIndex));
+        assertEquals(List.of("http://brie.cheesy2", "http://gouda.cheesy1"),
+                SearchQuery.searchCosine("soft mild", websites, reverseIndex).stream().sorted().toList());
+        assertEquals("http://brie.cheesy2", SearchQuery.searchCosine("soft white", websites, reverseIndex).get(0));
+        assertEquals(List.of(), SearchQuery.search("camembert", websites, reverseIndex));
+        assertNotEquals(List.of(), SearchQuery.searchPageRank("blue cheese", websites, reverseIndex));
+        // terms of the dictionary that aren't in the index don't match
+        TermDictionary.getInstance().getId("camembert");
+        assertEquals(List.of("http://brie.cheesy2"), SearchQuery.searchCosine("soft camembert", websites, reverseIndex));
+        assertEquals(List.of(), SearchQuery.searchPageRank("camembert", websites, reverseIndex));
+    }
+}
@@ -0,0 +1,103 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import search.IndexSnapshot;
+import search.IndexingPipeline;
+import search.MergePolicy;
+import search.SearchQuery;
+import search.SegmentedIndex;
+import search.WebsiteData;
+import search.WebsiteSource;
+
+/**
+ * Unit tests for streaming pages into the index.
+ */
+class IndexingPipelineTests {
+
+    private static final List<WebsiteData> PAGES = List.of(
+            new WebsiteData("http://gouda.cheesy1", "Gouda", "Dutch cheese",
+                    "Gouda is a mild cheese from the Netherlands.", List.of("http://brie.cheesy2")),
+            new WebsiteData("http://brie.cheesy2", "Brie", "French cheese",
+                    "Brie is a soft cheese with a white rind.", List.of("http://gouda.cheesy1")),
+            new WebsiteData("http://stilton.cheesy3", "Stilton", "English blue",
+                    "Stilton is a blue cheese.", List.of("http://gouda.cheesy1")));
+
+    /**
+     * hands the pages to the sink and fails afterwards if a failure is given
+     */
+    private record ListSource(List<WebsiteData> pages, IOException failure) implements WebsiteSource {
+
+        @Override
+        public List<WebsiteData> start() {
+            return pages;
+        }
+
+        @Override
+        public void crawl(Consumer<WebsiteData> sink) throws IOException {
+            pages.forEach(sink);
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        @Override
+        public int getNumberOfSites() {
+            return pages.size();
+        }
+
+        @Override
+        public int getNumberOfLinks() {
+            return 0;
+        }
+
+        @Override
+        public int getNumberOfSkippedSites() {
+            return 0;
+        }
+    }
+
+    @Test
+    void newPagesAreAddedAsSegments() throws IOException, InterruptedException {
+        IndexingPipeline pipeline = new IndexingPipeline(4, 1, 0);
+        List<Integer> completeSizes = new ArrayList<>();
+        try (SegmentedIndex index = new SegmentedIndex(new MergePolicy(16, 0.5), false)) {
+            pipeline.run(new ListSource(PAGES, null), index, (forwardIndex, reverseIndex) ->
+                    completeSizes.add(forwardIndex.getForwardIndex().size()));
+
+            // without a refresh interval every page gets a segment of its own, the earlier ones aren't rebuilt
+            IndexSnapshot snapshot = index.snapshot();
+            assertEquals(3, snapshot.getSegments().size());
+            for (IndexSnapshot.Segment segment : snapshot.getSegments()) {
+                assertEquals(1, segment.getNumberOfDocuments());
+            }
+            assertEquals(List.of("http://stilton.cheesy3"), SearchQuery.search("blue", snapshot));
+            // the complete index is built once at the end
+            assertEquals(List.of(3), completeSizes);
+        }
+    }
+
+    @Test
+    void failingSourceIsNotPublished() {
+        IndexingPipeline pipeline = new IndexingPipeline(4, 2, 0);
+        IOException failure = new IOException("source failed");
+        List<Integer> completeSizes = new ArrayList<>();
+
+        try (SegmentedIndex index = new SegmentedIndex(new MergePolicy(16, 0.5), false)) {
+            IOException thrown = assertThrows(IOException.class, () -> pipeline.run(new ListSource(PAGES, failure),
+                    index, (forwardIndex, reverseIndex) -> completeSizes.add(forwardIndex.getForwardIndex().size())));
+
+            // the pages crawled before the failure are no complete index
+            assertSame(failure, thrown.getCause());
+            assertEquals(List.of(), completeSizes);
+        }
+    }
+}
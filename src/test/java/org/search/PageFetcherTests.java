@@ -0,0 +1,54 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+import search.PageFetcher;
+
+/**
+ * Unit tests for fetching pages.
+ */
+class PageFetcherTests {
+
+    @Test
+    void stalledBodyTimesOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // the server acts as the proxy, it sends the headers and the start of the body and then stalls
+        HttpServer proxy = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        proxy.createContext("/", exchange -> {
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            body.write("<html><title>stilton</title>".getBytes(StandardCharsets.UTF_8));
+            body.flush();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.close();
+        });
+        proxy.setExecutor(Executors.newCachedThreadPool());
+        proxy.start();
+        try {
+            PageFetcher fetcher = new PageFetcher("localhost", proxy.getAddress().getPort(), 1000, 500);
+            long start = System.nanoTime();
+            assertThrows(HttpTimeoutException.class, () -> fetcher.fetch("http://stilton.cheesy2/", null, false));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            assertTrue(millis < 5000, "fetch took " + millis + " ms");
+            assertEquals(1, fetcher.getNumberOfFailedFetches());
+        } finally {
+            release.countDown();
+            proxy.stop(0);
+        }
+    }
+}
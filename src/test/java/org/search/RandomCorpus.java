@@ -0,0 +1,81 @@
+package org.search;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Function;
+
+import search.ForwardIndex;
+import search.IndexSnapshot;
+import search.ReverseIndex;
+import search.WebsiteData;
+
+/**
+ * Index of random documents with the urls http://cheese&lt;i&gt;.cheesy, shared
+ * by the search tests. The same seed always creates the same documents.
+ */
+final class RandomCorpus {
+
+    static final String[] WORDS = {"cheese", "milk", "blue", "soft", "hard", "rind", "goat", "sheep",
+            "cow", "aged", "mild", "sharp", "creamy", "french", "dutch"};
+    static final List<String> QUERIES = List.of("blue", "soft cheese", "goat sheep cow", "aged sharp rind",
+            "creamy creamy french", "cheese", "camembert");
+
+    final ReverseIndex reverseIndex;
+    final IndexSnapshot index;
+
+    /**
+     * @param seed      seed of the random documents
+     * @param size      number of random documents
+     * @param body      creates the body of a random document
+     * @param documents documents added to the random ones
+     */
+    RandomCorpus(long seed, int size, Function<Random, String> body, WebsiteData... documents) {
+        this(seed, size, body, random -> List.of(), documents);
+    }
+
+    /**
+     * @param seed      seed of the random documents
+     * @param size      number of random documents
+     * @param body      creates the body of a random document
+     * @param links     creates the links of a random document after its body
+     * @param documents documents added to the random ones
+     */
+    RandomCorpus(long seed, int size, Function<Random, String> body, Function<Random, List<String>> links,
+                 WebsiteData... documents) {
+        Random random = new Random(seed);
+        List<WebsiteData> websites = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            String content = body.apply(random);
+            websites.add(new WebsiteData("http://cheese" + i + ".cheesy", "", "", content, links.apply(random)));
+        }
+        websites.addAll(List.of(documents));
+        ForwardIndex forwardIndex = new ForwardIndex();
+        forwardIndex.addEntries(websites);
+        reverseIndex = ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex());
+        forwardIndex.calculateVector(reverseIndex);
+        forwardIndex.calculatePageRankDamped();
+        index = IndexSnapshot.of(forwardIndex.getForwardIndex(), reverseIndex);
+    }
+
+    /**
+     * @return bodies of minLength to maxLength random words of the vocabulary
+     */
+    static Function<Random, String> words(String[] vocabulary, int minLength, int maxLength) {
+        return random -> {
+            StringBuilder body = new StringBuilder();
+            int length = minLength + random.nextInt(maxLength - minLength + 1);
+            for (int j = 0; j < length; j++) {
+                body.append(vocabulary[random.nextInt(vocabulary.length)]).append(' ');
+            }
+            return body.toString();
+        };
+    }
+
+    /**
+     * @return a link to one of the first size random documents
+     */
+    static Function<Random, List<String>> links(int size) {
+        return random -> List.of("http://cheese" + random.nextInt(size) + ".cheesy");
+    }
+}
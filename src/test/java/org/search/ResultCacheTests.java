@@ -0,0 +1,112 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import search.ResultCache;
+
+/**
+ * Unit tests for caching search results.
+ */
+class ResultCacheTests {
+
+    private static ResultCache.Key key(String... terms) {
+        return new ResultCache.Key("tfidf", List.of(terms), 30, false);
+    }
+
+    private static ResultCache.Result result(String body) {
+        return new ResultCache.Result(body, true, null);
+    }
+
+    @Test
+    void leastRecentlyUsedResultIsEvicted() {
+        ResultCache cache = new ResultCache(2);
+        AtomicInteger searches = new AtomicInteger();
+        cache.get(key("blue"), 1, () -> result("blue" + searches.incrementAndGet()));
+        cache.get(key("brie"), 1, () -> result("brie" + searches.incrementAndGet()));
+        // blue is used again, so brie is the least recently used one
+        assertEquals("blue1", cache.get(key("blue"), 1, () -> result("blue" + searches.incrementAndGet())).body());
+        cache.get(key("edam"), 1, () -> result("edam" + searches.incrementAndGet()));
+
+        assertEquals("blue1", cache.get(key("blue"), 1, () -> result("blue" + searches.incrementAndGet())).body());
+        assertEquals("brie4", cache.get(key("brie"), 1, () -> result("brie" + searches.incrementAndGet())).body());
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getEvictions());
+        assertEquals(2, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2.0 / 6, cache.getHitRate());
+    }
+
+    @Test
+    void newerIndexVersionInvalidatesResults() {
+        ResultCache cache = new ResultCache(10);
+        cache.get(key("blue"), 1, () -> result("old"));
+        cache.get(key("brie"), 1, () -> result("old"));
+        assertEquals("new", cache.get(key("blue"), 2, () -> result("new")).body());
+        assertEquals(2, cache.getInvalidations());
+        assertEquals(1, cache.size());
+        // a query still reading the old snapshot neither gets nor replaces the new result
+        assertEquals("old", cache.get(key("blue"), 1, () -> result("old")).body());
+        assertEquals("new", cache.get(key("blue"), 2, () -> result("other")).body());
+    }
+
+    @Test
+    void identicalQueriesAreSearchedOnce() throws Exception {
+        ResultCache cache = new ResultCache(10);
+        int threads = 8;
+        AtomicInteger searches = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<ResultCache.Result>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> cache.get(key("blue", "stilton"), 1, () -> {
+                    searches.incrementAndGet();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    return result("blue stilton");
+                })));
+            }
+            // the search only finishes once all other queries wait for it
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cache.getCoalesced() < threads - 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            release.countDown();
+            ResultCache.Result first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<ResultCache.Result> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, searches.get());
+        assertEquals(threads - 1, cache.getCoalesced());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void failedSearchIsNotCached() {
+        ResultCache cache = new ResultCache(10);
+        assertThrows(IllegalStateException.class, () -> cache.get(key("blue"), 1, () -> {
+            throw new IllegalStateException("search failed");
+        }));
+        assertEquals(0, cache.size());
+        assertEquals("blue", cache.get(key("blue"), 1, () -> result("blue")).body());
+        assertEquals(2, cache.getMisses());
+    }
+}
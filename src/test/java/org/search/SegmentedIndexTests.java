@@ -0,0 +1,246 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import search.ForwardIndex;
+import search.FrontCodedTerms;
+import search.IndexSnapshot;
+import search.MergePolicy;
+import search.ReverseIndex;
+import search.SearchQuery;
+import search.SegmentedIndex;
+import search.TermDictionary;
+import search.WebsiteData;
+
+/**
+ * Unit tests for adding, updating and deleting single documents.
+ */
+class SegmentedIndexTests {
+
+    private static final List<String> QUERIES = List.of("blue", "soft mild", "cheese", "blue cheese", "rind", "soft mild rind");
+    private SegmentedIndex index;
+
+    private static WebsiteData gouda() {
+        return new WebsiteData("http://gouda.cheesy1", "Gouda", "Dutch cheese",
+                "Gouda is a mild cheese from the Netherlands.", List.of("http://brie.cheesy2"));
+    }
+
+    private static WebsiteData brie() {
+        return new WebsiteData("http://brie.cheesy2", "Brie", "French cheese",
+                "Brie is a soft cheese with a white rind.", List.of("http://gouda.cheesy1"));
+    }
+
+    private static WebsiteData stilton() {
+        return new WebsiteData("http://stilton.cheesy3", "Stilton", "English blue",
+                "Stilton is a blue cheese. Blue veins run through the blue Stilton.", List.of("http://gouda.cheesy1"));
+    }
+
+    private static WebsiteData edam() {
+        return new WebsiteData("http://edam.cheesy4", "Edam", "Dutch cheese",
+                "Edam is a mild cheese with a red rind.", List.of());
+    }
+
+    @BeforeEach
+    void createIndex() {
+        ForwardIndex forwardIndex = new ForwardIndex();
+        forwardIndex.addEntries(List.of(gouda(), brie()));
+        ReverseIndex reverseIndex = ReverseIndex.getReverseIndex(forwardIndex.getForwardIndex());
+        forwardIndex.calculatePageRankDamped();
+        index = new SegmentedIndex(new MergePolicy(2, 0.5, 0), false);
+        index.reset(forwardIndex, reverseIndex);
+    }
+
+    @AfterEach
+    void closeIndex() {
+        index.close();
+    }
+
+    /**
+     * checks that searching the index gives the same results as a completely rebuilt index
+     */
+    private void assertSameAsRebuilt() throws IOException {
+        // the vector lengths of older segments are only calculated again by maybeMerge
+        index.maybeMerge();
+        Map<String, WebsiteData> websites = new TreeMap<>(index.snapshot().getWebsites());
+        ReverseIndex rebuilt = ReverseIndex.getReverseIndex(websites);
+        for (int termId = 0; termId < rebuilt.getDimension(); termId++) {
+            assertEquals(rebuilt.getIdf(termId), index.snapshot().getIdf(termId), 1e-9);
+        }
+        for (IndexSnapshot.Segment segment : index.snapshot().getSegments()) {
+            for (int docId = 0; docId < segment.getNumberOfDocuments(); docId++) {
+                if (segment.isLive(docId)) {
+                    int rebuiltDocId = rebuilt.getDocId(segment.getWebsite(docId).url);
+                    assertEquals(rebuilt.getNorm(rebuiltDocId), segment.getNorm(docId), 1e-9);
+                }
+            }
+        }
+        for (String query : QUERIES) {
+            assertEquals(SearchQuery.search(query, websites, rebuilt), SearchQuery.search(query, index.snapshot()));
+            assertEquals(SearchQuery.searchCosine(query, websites, rebuilt), SearchQuery.searchCosine(query, index.snapshot()));
+        }
+    }
+
+    @Test
+    void addedDocumentIsFoundWithoutRebuild() throws IOException {
+        assertEquals(List.of(), SearchQuery.search("blue", index.snapshot()));
+
+        index.update(List.of(stilton()));
+
+        assertEquals(3, index.snapshot().getNumberOfDocuments());
+        assertEquals(List.of("http://stilton.cheesy3"), SearchQuery.search("blue", index.snapshot()));
+        assertEquals(0.0, index.snapshot().getIdf(TermDictionary.getInstance().lookup("cheese")));
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    void updatedDocumentReplacesOldVersion() throws IOException {
+        index.update(List.of(new WebsiteData("http://brie.cheesy2", "Brie", "French cheese",
+                "Brie is a creamy cheese with a blue rind.", List.of())));
+
+        assertEquals(2, index.snapshot().getNumberOfDocuments());
+        assertEquals(1, index.snapshot().getNumberOfDeletedDocuments());
+        assertEquals(List.of("http://brie.cheesy2"), SearchQuery.search("blue", index.snapshot()));
+        assertEquals(List.of(), SearchQuery.search("soft", index.snapshot()));
+        assertEquals("Brie is a creamy cheese with a blue rind.", index.snapshot().getWebsite("http://brie.cheesy2").getBody());
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    void cosineRankingFollowsChangedStatistics() throws IOException {
+        assertEquals(List.of("http://brie.cheesy2"), SearchQuery.searchCosine("rind", index.snapshot()));
+
+        // with the vector lengths of the first segment, brie's length leaves out the idf of "cheese"
+        // that is no longer 0 and its score for "rind" stays above edam's
+        index.update(List.of(stilton(), edam()));
+        assertEquals(List.of("http://brie.cheesy2", "http://edam.cheesy4"), SearchQuery.searchCosine("rind", index.snapshot()));
+
+        index.maybeMerge();
+        assertEquals(List.of("http://edam.cheesy4", "http://brie.cheesy2"), SearchQuery.searchCosine("rind", index.snapshot()));
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    void updateCalculatesOnlyNewSegment() throws IOException {
+        IndexSnapshot.Segment first = index.snapshot().getSegments().get(0);
+        int brie = first.getReverseIndex().getDocId("http://brie.cheesy2");
+        double norm = first.getNorm(brie);
+
+        index.update(List.of(stilton(), edam()));
+
+        List<IndexSnapshot.Segment> segments = index.snapshot().getSegments();
+        assertEquals(2, segments.size());
+        assertSame(first, segments.get(0));
+        Map<String, WebsiteData> websites = new TreeMap<>(index.snapshot().getWebsites());
+        ReverseIndex rebuilt = ReverseIndex.getReverseIndex(websites);
+        IndexSnapshot.Segment added = segments.get(1);
+        for (int docId = 0; docId < added.getNumberOfDocuments(); docId++) {
+            int rebuiltDocId = rebuilt.getDocId(added.getWebsite(docId).url);
+            assertEquals(rebuilt.getNorm(rebuiltDocId), added.getNorm(docId), 1e-9);
+        }
+
+        index.maybeMerge();
+
+        IndexSnapshot.Segment refreshed = index.snapshot().getSegments().get(0);
+        assertEquals(first.getId(), refreshed.getId());
+        assertNotEquals(norm, refreshed.getNorm(brie), 1e-9);
+        assertEquals(rebuilt.getNorm(rebuilt.getDocId("http://brie.cheesy2")), refreshed.getNorm(brie), 1e-9);
+    }
+
+    @Test
+    void deleteKeepsVectorLengths() {
+        IndexSnapshot.Segment first = index.snapshot().getSegments().get(0);
+        int brie = first.getReverseIndex().getDocId("http://brie.cheesy2");
+
+        index.delete("http://gouda.cheesy1");
+
+        assertEquals(first.getNorm(brie), index.snapshot().getSegments().get(0).getNorm(brie));
+    }
+
+    @Test
+    void vectorLengthsDriftWithinBound() {
+        MergePolicy policy = new MergePolicy(2, 0.5, 0.1);
+
+        assertFalse(policy.needsNewNorms(10, 100));
+        assertTrue(policy.needsNewNorms(11, 100));
+    }
+
+    @Test
+    void deletedDocumentIsNotFound() throws IOException {
+        assertTrue(index.delete("http://gouda.cheesy1"));
+        assertFalse(index.delete("http://gouda.cheesy1"));
+
+        assertNull(index.snapshot().getWebsite("http://gouda.cheesy1"));
+        assertEquals(List.of(), SearchQuery.search("mild", index.snapshot()));
+        assertFalse(index.snapshot().contains(TermDictionary.getInstance().lookup("netherlands")));
+        assertEquals(List.of("http://brie.cheesy2"), SearchQuery.search("cheese", index.snapshot()));
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    void mergesCompactSegments() throws IOException {
+        index.update(List.of(stilton()));
+        index.update(List.of(edam()));
+        index.delete("http://brie.cheesy2");
+        index.maybeMerge();
+
+        assertTrue(index.snapshot().getSegments().size() <= 2);
+        assertEquals(0, index.snapshot().getNumberOfDeletedDocuments());
+        assertEquals(3, index.snapshot().getNumberOfDocuments());
+        assertSameAsRebuilt();
+    }
+
+    @Test
+    void sortedTermsFollowChanges() {
+        index.update(List.of(stilton()));
+        index.delete("http://gouda.cheesy1");
+        index.update(List.of(edam()));
+        index.maybeMerge();
+
+        // the terms kept in order since the reset give the same suggestions as sorting all terms again
+        IndexSnapshot snapshot = index.snapshot();
+        int[] documentFrequency = new int[TermDictionary.getInstance().size()];
+        for (int termId = 0; termId < documentFrequency.length; termId++) {
+            documentFrequency[termId] = snapshot.getDocumentFrequency(termId);
+        }
+        FrontCodedTerms rebuilt = FrontCodedTerms.of(documentFrequency);
+        FrontCodedTerms terms = snapshot.getSortedTerms();
+        assertEquals(rebuilt.size(), terms.size());
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            assertEquals(rebuilt.getTerm(ordinal), terms.getTerm(ordinal));
+            assertEquals(rebuilt.getWeight(ordinal), terms.getWeight(ordinal));
+        }
+        assertTrue(terms.complete("netherland", 5).isEmpty());
+        assertEquals(List.of("stilton"), terms.complete("stil", 5));
+    }
+
+    @Test
+    void pinnedSnapshotIsNotChanged() throws IOException {
+        IndexSnapshot before = index.snapshot();
+
+        index.update(List.of(stilton()));
+        index.delete("http://gouda.cheesy1");
+        index.maybeMerge();
+
+        IndexSnapshot after = index.snapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(2, before.getNumberOfDocuments());
+        assertEquals(0, before.getNumberOfDeletedDocuments());
+        assertEquals(List.of(), SearchQuery.search("blue", before));
+        assertEquals(List.of("http://gouda.cheesy1"), SearchQuery.search("mild", before));
+        assertEquals(List.of("http://stilton.cheesy3"), SearchQuery.search("blue", after));
+        assertEquals(List.of(), SearchQuery.search("mild", after));
+    }
+}
@@ -0,0 +1,86 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import search.FrontCodedTerms;
+import search.IndexSnapshot;
+import search.SearchQuery;
+import search.TermDictionary;
+import search.WebsiteData;
+
+/**
+ * Unit tests for the front coded terms and completing prefixes to them.
+ */
+class SuggestTests {
+
+    private static IndexSnapshot index;
+    private static List<String> sortedTerms;
+
+    @BeforeAll
+    static void createIndex() {
+        // random words with many shared prefixes, spread over many blocks
+        index = new RandomCorpus(23, 200, random -> {
+            StringBuilder body = new StringBuilder();
+            for (int j = 0; j < 10; j++) {
+                body.append("ch");
+                int length = random.nextInt(6);
+                for (int c = 0; c < length; c++) {
+                    body.append((char) ('a' + random.nextInt(4)));
+                }
+                body.append(' ');
+            }
+            return body.toString();
+        }, new WebsiteData("http://stilton.cheesy", "", "", "blue stilton", List.of())).index;
+        TreeSet<String> terms = new TreeSet<>();
+        for (int termId = 0; termId < TermDictionary.getInstance().size(); termId++) {
+            if (index.contains(termId)) {
+                terms.add(TermDictionary.getInstance().getTerm(termId));
+            }
+        }
+        sortedTerms = new ArrayList<>(terms);
+    }
+
+    @Test
+    void termsAreSortedAndCeilingFindsTheNextTerm() {
+        FrontCodedTerms terms = index.getSortedTerms();
+        assertEquals(sortedTerms.size(), terms.size());
+        assertTrue(terms.size() > 4 * 16);
+        for (int ordinal = 0; ordinal < terms.size(); ordinal++) {
+            assertEquals(sortedTerms.get(ordinal), terms.getTerm(ordinal));
+            assertEquals(index.getDocumentFrequency(terms.getTermId(ordinal)), terms.getWeight(ordinal));
+            assertEquals(ordinal, terms.ceiling(sortedTerms.get(ordinal)));
+            assertEquals(ordinal + 1, terms.ceiling(sortedTerms.get(ordinal) + "\u0000"));
+        }
+        assertEquals(0, terms.ceiling(""));
+        assertEquals(terms.size(), terms.ceiling("zzzz"));
+    }
+
+    @Test
+    void completionsAreTheMostFrequentTermsWithThePrefix() {
+        FrontCodedTerms terms = index.getSortedTerms();
+        Comparator<String> byFrequency = Comparator.<String>comparingInt(
+                term -> index.getDocumentFrequency(TermDictionary.getInstance().lookup(term))).reversed()
+                .thenComparing(Comparator.naturalOrder());
+        for (String prefix : List.of("", "c", "ch", "cha", "chab", "chdd", "chddd", "s", "x")) {
+            for (int k : new int[] {1, 5, 1000}) {
+                List<String> expected = sortedTerms.stream().filter(term -> term.startsWith(prefix))
+                        .sorted(byFrequency).limit(k).toList();
+                assertEquals(expected, terms.complete(prefix, k), prefix);
+            }
+        }
+    }
+
+    @Test
+    void lastWordOfTheQueryIsCompleted() {
+        assertEquals(List.of("stilton"), SearchQuery.suggest("Blue STIL", index, 10));
+        assertEquals(List.of(), SearchQuery.suggest("blue ", index, 10));
+    }
+}
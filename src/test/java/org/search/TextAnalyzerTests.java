@@ -0,0 +1,159 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import search.FileSystemSource;
+import search.LemmaCache;
+import search.LemmaDictionary;
+import search.ParallelAnalyzer;
+import search.TextAnalyzer;
+import search.WebsiteData;
+
+/**
+ * Unit tests for the shared text analyzer.
+ */
+class TextAnalyzerTests {
+
+    private static final String TEXT = "The cheeses were ripening in the caves, and the cheesemakers are tasting them.";
+
+    @Test
+    void analyzeRemovesStopWordsAndLemmatizes() {
+        List<String> tokens = TextAnalyzer.getInstance().analyze(TEXT);
+
+        assertFalse(tokens.contains("the"));
+        assertFalse(tokens.contains("and"));
+        assertEquals(List.of("cheese", "ripen", "cave", "cheesemaker", "taste"), tokens);
+        assertEquals(tokens, WebsiteData.createTokens(TEXT));
+        assertSame(TextAnalyzer.getInstance(), TextAnalyzer.getInstance());
+    }
+
+    @Test
+    void tokenizeSplitsOnAllWhitespace() {
+        List<String> tokens = TextAnalyzer.getInstance().tokenize("Gouda,\tBRIE\nand  Feta's\r\n(42)");
+
+        assertEquals(List.of("gouda", "brie", "fetas", "42"), tokens);
+    }
+
+    @Test
+    void analyzeConcurrently() throws Exception {
+        List<String> expected = TextAnalyzer.getInstance().analyze(TEXT);
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            List<Future<List<String>>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> TextAnalyzer.getInstance().analyze(TEXT)));
+            }
+            for (Future<List<String>> result : results) {
+                assertEquals(expected, result.get());
+            }
+        }
+    }
+
+    @Test
+    void dictionaryLemmatizesKnownTokens() {
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        WebsiteData website = new WebsiteData("http://gouda.cheesy1", "Cheeses", "Caves", TEXT, List.of());
+        LemmaDictionary dictionary = LemmaDictionary.build(List.of(website), analyzer);
+        try {
+            analyzer.setDictionary(dictionary);
+            long hits = analyzer.getDictionaryHits();
+            long misses = analyzer.getDictionaryMisses();
+
+            assertEquals(List.of("cave", "cheese"), analyzer.analyzeQuery("caves cheeses"));
+            assertEquals(hits + 1, analyzer.getDictionaryHits());
+            analyzer.analyzeQuery("caves with blue cheeses");
+            assertEquals(misses + 1, analyzer.getDictionaryMisses());
+            // documents are always tagged
+            analyzer.analyze("caves cheeses");
+            assertEquals(hits + 1, analyzer.getDictionaryHits());
+            assertEquals(misses + 1, analyzer.getDictionaryMisses());
+        } finally {
+            analyzer.setDictionary(null);
+        }
+    }
+
+    @Test
+    void lemmaCacheTagsOnlyUnknownTokens() {
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        LemmaCache cache = new LemmaCache(2);
+        try {
+            analyzer.setLemmaCache(cache);
+
+            List<String> lemmas = analyzer.analyze("cheeses caves cheesemakers");
+            assertEquals(List.of("cheese", "cave", "cheesemaker"), lemmas);
+            assertEquals(0, cache.getHits());
+            // the cache is bounded, the least recently used token was evicted for the third one
+            assertEquals(2, cache.size());
+            assertEquals(1, cache.getEvictions());
+
+            assertEquals(lemmas, analyzer.analyze("cheeses caves cheesemakers"));
+            assertEquals(2, cache.getHits());
+            assertEquals(2, cache.getEvictions());
+            assertNotEquals(0, cache.getHitRate());
+        } finally {
+            analyzer.setLemmaCache(null);
+        }
+    }
+
+    @Test
+    void stripedLemmaCacheStaysBounded() {
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        LemmaCache cache = new LemmaCache(4, 2);
+        String text = "cheeses caves cheesemakers farms goats cows milks rinds";
+        try {
+            analyzer.setLemmaCache(cache);
+
+            List<String> lemmas = analyzer.analyze(text);
+            // every stripe evicts its own least recently used tokens, together they hold at most the capacity
+            assertEquals(2, cache.getStripes());
+            assertTrue(cache.size() <= 4);
+            assertEquals(8 - cache.size(), cache.getEvictions());
+            assertEquals(lemmas, analyzer.analyze(text));
+        } finally {
+            analyzer.setLemmaCache(null);
+        }
+        assertEquals(16, new LemmaCache(4096).getStripes());
+        assertEquals(1, new LemmaCache(2).getStripes());
+    }
+
+    @Test
+    void parallelAnalyzerOrdersByUrl(@TempDir Path root) throws IOException {
+        for (int i = 1; i <= 20; i++) {
+            Path page = root.resolve("cheese" + i + ".cheesy1").resolve("index.html");
+            Files.createDirectories(page.getParent());
+            Files.writeString(page, "<html><head><title>Cheese " + i + "</title></head><body><header>Caves</header>"
+                    + "<main>" + TEXT + "</main></body></html>");
+        }
+        List<WebsiteData> websites = new ArrayList<>();
+        new FileSystemSource(root).crawl(websites::add);
+        Collections.reverse(websites);
+
+        List<WebsiteData> analyzed;
+        try (ParallelAnalyzer analyzer = new ParallelAnalyzer(4)) {
+            analyzed = analyzer.analyze(websites);
+        }
+
+        assertEquals(20, analyzed.size());
+        for (int i = 1; i < analyzed.size(); i++) {
+            assertTrue(analyzed.get(i - 1).url.compareTo(analyzed.get(i).url) < 0);
+        }
+        for (WebsiteData website : analyzed) {
+            assertEquals(WebsiteData.createTokens(website.getCompleteContent()), website.getTokenList());
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.search;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Function;
+
+import search.FileSystemSource;
+import search.TextAnalyzer;
+import search.WebsiteData;
+
+/**
+ * Compares the throughput of the single pass tokenizer with the former regex
+ * based tokenizer on the whole corpus. Run with
+ * {@code mvn test-compile exec:java -Dexec.mainClass=org.search.TokenizerBenchmark -Dexec.classpathScope=test}
+ * or from the IDE, optionally with the corpus directory as argument.
+ */
+public class TokenizerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Path root = Path.of(args.length > 0 ? args[0] : "webserver/www");
+        List<String> documents = new ArrayList<>();
+        new FileSystemSource(root).crawl(website -> documents.add(website.getCompleteContent()));
+        long characters = documents.stream().mapToLong(String::length).sum();
+        System.out.println(documents.size() + " documents, " + characters + " characters");
+
+        List<String> stopWords = Arrays.asList(readStopWords().split(","));
+        TextAnalyzer analyzer = TextAnalyzer.getInstance();
+        run("regex tokenizer", documents, characters, 5, 20, text -> regexTokenize(text, stopWords));
+        run("single pass tokenizer", documents, characters, 5, 20, analyzer::tokenize);
+        // lemmatizing dominates the full analysis, so it gets fewer rounds
+        run("regex createTokens", documents, characters, 1, 2,
+                text -> analyzer.lemmatize(regexTokenize(text, stopWords)));
+        run("createTokens", documents, characters, 1, 2, WebsiteData::createTokens);
+    }
+
+    /**
+     * runs a tokenizer over all documents and prints documents and megabytes per second
+     */
+    private static void run(String name, List<String> documents, long characters, int warmupRounds, int rounds,
+                            Function<String, List<String>> tokenizer) {
+        long tokens = 0;
+        for (int i = 0; i < warmupRounds; i++) {
+            tokens = tokenizeAll(documents, tokenizer);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            tokenizeAll(documents, tokenizer);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(Locale.ENGLISH, "%-24s %10.0f docs/s %8.2f MB/s %8d tokens%n", name,
+                documents.size() * rounds / seconds, characters * rounds / seconds / 1e6, tokens);
+    }
+
+    private static long tokenizeAll(List<String> documents, Function<String, List<String>> tokenizer) {
+        long tokens = 0;
+        for (String document : documents) {
+            tokens += tokenizer.apply(document).size();
+        }
+        return tokens;
+    }
+
+    /**
+     * tokenizer as it was before the single pass tokenizer
+     */
+    private static List<String> regexTokenize(String input, List<String> stopWords) {
+        String tempString = input.replaceAll("[^\\sa-zA-Z0-9]", "").toLowerCase(Locale.ENGLISH);
+        List<String> tokenizedList = new ArrayList<>();
+        for (String string : tempString.split(" ")) {
+            if (!string.isEmpty()) {
+                tokenizedList.add(string);
+            }
+        }
+        tokenizedList.removeAll(stopWords);
+        return tokenizedList;
+    }
+
+    private static String readStopWords() throws IOException {
+        try (InputStream inputStream = TokenizerBenchmark.class.getClassLoader().getResourceAsStream("stopWords.txt")) {
+            return new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
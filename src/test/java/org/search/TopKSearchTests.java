@@ -0,0 +1,58 @@
+package org.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import search.IndexSnapshot;
+import search.SearchQuery;
+
+/**
+ * Unit tests for searching only the best k documents.
+ */
+class TopKSearchTests {
+
+    private static IndexSnapshot index;
+
+    @BeforeAll
+    static void createIndex() {
+        // documents made of random words, so many of them have similar scores
+        index = new RandomCorpus(42, 120, RandomCorpus.words(RandomCorpus.WORDS, 3, 22), RandomCorpus.links(120)).index;
+    }
+
+    private static List<String> first(List<String> urls, int k) {
+        return urls.subList(0, Math.min(k, urls.size()));
+    }
+
+    @Test
+    void topKIsPrefixOfAllResults() throws IOException {
+        for (String query : RandomCorpus.QUERIES) {
+            List<String> tfidf = SearchQuery.search(query, index);
+            List<String> cosine = SearchQuery.searchCosine(query, index);
+            List<String> pageRank = SearchQuery.searchPageRank(query, index, Integer.MAX_VALUE);
+            for (int k : new int[] {1, 3, 10, 50}) {
+                assertEquals(first(tfidf, k), SearchQuery.search(query, index, k), query);
+                assertEquals(first(cosine, k), SearchQuery.searchCosine(query, index, k), query);
+                assertEquals(first(pageRank, k), SearchQuery.searchPageRank(query, index, k), query);
+            }
+            assertEquals(first(pageRank, 30), SearchQuery.searchPageRank(query, index), query);
+        }
+    }
+
+    @Test
+    void allMatchingDocumentsAreFound() throws IOException {
+        assertEquals(0, SearchQuery.search("camembert", index).size());
+        List<String> blue = SearchQuery.search("blue", index);
+        List<String> expected = new ArrayList<>();
+        for (String url : index.getWebsites().keySet()) {
+            if (index.getWebsite(url).getBody().contains("blue")) {
+                expected.add(url);
+            }
+        }
+        assertEquals(expected, blue.stream().sorted().toList());
+    }
+}